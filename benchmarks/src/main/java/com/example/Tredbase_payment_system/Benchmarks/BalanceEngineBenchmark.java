@@ -0,0 +1,67 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Engine.InMemorySettlement;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+  Payments/sec through PaymentService.processPayment with the JPA-only path ("jpa") against the
+  in-memory balance engine ("engine", payment.engine.enabled=true). The engine path includes
+  its share of the periodic checkpoints, which run on their own thread at the default interval.
+  Run with -t N to compare under concurrent payers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BalanceEngineBenchmark {
+
+    private static final long ONE_CENT = 1L;
+
+    @Param({"jpa", "engine"})
+    public String settlement;
+
+    // Number of families (two parents, one unique and one shared student each)
+    @Param({"10000"})
+    public int datasetSize;
+
+    private ConfigurableApplicationContext context;
+    private PaymentService paymentService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean engine = "engine".equals(settlement);
+        context = BenchmarkApplication.start("balance_engine_" + settlement,
+                "jdbc:h2:mem:bench_balance_engine_" + settlement, "--payment.engine.enabled=" + engine);
+        BenchmarkApplication.seedFamilies(context, datasetSize);
+        if (engine) {
+            // The engine loaded the import.sql rows at startup
+            context.getBean(InMemorySettlement.class).reload();
+        }
+        paymentService = context.getBean(PaymentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void processPaymentUniqueStudent() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        paymentService.processPayment(BenchmarkApplication.firstParent(family),
+                BenchmarkApplication.uniqueStudent(family), ONE_CENT);
+    }
+
+    @Benchmark
+    public void processPaymentSharedStudent() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        paymentService.processPayment(BenchmarkApplication.firstParent(family),
+                BenchmarkApplication.sharedStudent(family), ONE_CENT);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Service.FamilyGraphCache;
+import com.example.Tredbase_payment_system.TredbasePaymentSystemApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  Boots the payment application without the web layer and seeds a synthetic dataset.
+  Family f has two parents (firstParent, secondParent), a student unique to the first parent
+  and a student shared by both, so every benchmark can pick either shape at random.
+ */
+final class BenchmarkApplication {
+
+    // Large enough that no benchmark run drains a parent
+    private static final BigDecimal PARENT_BALANCE = new BigDecimal("1000000000000.00");
+    private static final int BATCH_SIZE = 1000;
+
+    private BenchmarkApplication() {
+    }
+
+    static ConfigurableApplicationContext start(String name) {
+        return start(name, "jdbc:h2:mem:bench_" + name);
+    }
+
+    /*
+      Same with another database, e.g. a file database for datasets larger than the heap,
+      and optional extra properties such as "--payment.engine.enabled=true"
+     */
+    static ConfigurableApplicationContext start(String name, String datasourceUrl, String... extraArgs) {
+        List<String> args = new ArrayList<>(List.of("--spring.datasource.url=" + datasourceUrl,
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security=WARN",
+                "--payment.journal.enabled=false"));
+        args.addAll(List.of(extraArgs));
+        return new SpringApplicationBuilder(TredbasePaymentSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(args.toArray(String[]::new));
+    }
+
+    // Replaces the import.sql rows with the given number of families
+    static void seedFamilies(ConfigurableApplicationContext context, int families) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        for (String table : List.of("payment", "daily_payment_rollup", "account_payment_total",
+                "parent_student", "student", "parent")) {
+            jdbc.update("DELETE FROM " + table);
+        }
+
+        List<Object[]> parents = new ArrayList<>();
+        List<Object[]> students = new ArrayList<>();
+        List<Object[]> links = new ArrayList<>();
+        for (int f = 0; f < families; f++) {
+            parents.add(new Object[]{firstParent(f), "Parent " + firstParent(f), PARENT_BALANCE});
+            parents.add(new Object[]{secondParent(f), "Parent " + secondParent(f), PARENT_BALANCE});
+            students.add(new Object[]{uniqueStudent(f), "Student " + uniqueStudent(f)});
+            students.add(new Object[]{sharedStudent(f), "Student " + sharedStudent(f)});
+            links.add(new Object[]{uniqueStudent(f), firstParent(f)});
+            links.add(new Object[]{sharedStudent(f), firstParent(f)});
+            links.add(new Object[]{sharedStudent(f), secondParent(f)});
+        }
+        batch(jdbc, "INSERT INTO parent (id, name, balance, version) VALUES (?, ?, ?, 0)", parents);
+        batch(jdbc, "INSERT INTO student (student_id, student_name, balance, version) VALUES (?, ?, 0.0, 0)", students);
+        batch(jdbc, "INSERT INTO parent_student (student_id, parent_id) VALUES (?, ?)", links);
+        context.getBean(FamilyGraphCache.class).invalidateAll();
+    }
+
+    static int randomFamily(int families) {
+        return ThreadLocalRandom.current().nextInt(families);
+    }
+
+    static long firstParent(int family) {
+        return 2L * family + 1;
+    }
+
+    static long secondParent(int family) {
+        return 2L * family + 2;
+    }
+
+    static long uniqueStudent(int family) {
+        return 2L * family + 1;
+    }
+
+    static long sharedStudent(int family) {
+        return 2L * family + 2;
+    }
+
+    private static void batch(JdbcTemplate jdbc, String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbc.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Entity.FeeRule;
+import com.example.Tredbase_payment_system.Service.FeeRuleSet;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Fee rate lookup for one payment against thousands of rules.
+  compiled is FeeRuleSet as FeeRuleEngine uses it; linearScan evaluates the same rules straight
+  from the entity list, the way a rule table is usually read. Every school has a tier rule and a
+  school-wide rule per term, plus a few global rules. Run with -prof gc: compiled allocates nothing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FeeEngineBenchmark {
+
+    private static final String[] TIERS = {"basic", "standard", "premium", "boarding"};
+    private static final int TERMS = 3;
+    private static final LocalDate TERM_START = LocalDate.of(2025, 9, 1);
+    private static final int TERM_DAYS = 120;
+    private static final int LOOKUPS = 1024;
+
+    @Param({"1000", "10000"})
+    public int ruleCount;
+
+    private List<FeeRule> rules;
+    private FeeRuleSet compiled;
+    private String[] schools;
+    private String[] tiers;
+    private long[] days;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int schoolCount = Math.max(1, ruleCount / (TERMS * (TIERS.length + 1)));
+        rules = new ArrayList<>(ruleCount);
+        for (int s = 0; s < schoolCount && rules.size() < ruleCount; s++) {
+            for (int term = 0; term < TERMS; term++) {
+                LocalDate from = TERM_START.plusDays((long) term * TERM_DAYS);
+                LocalDate to = from.plusDays(TERM_DAYS - 1);
+                rules.add(new FeeRule(null, "school-" + s, null, from, to, 300 + term, 0));
+                for (String tier : TIERS) {
+                    rules.add(new FeeRule(null, "school-" + s, tier, from, to, 200 + term, 0));
+                }
+            }
+        }
+        for (String tier : TIERS) {
+            rules.add(new FeeRule(null, null, tier, null, null, 450, 0));
+        }
+        compiled = FeeRuleSet.compile(rules, 500);
+
+        // Request keys are built up front, as they arrive on the Student entity
+        schools = new String[LOOKUPS];
+        tiers = new String[LOOKUPS];
+        days = new long[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int school = BenchmarkApplication.randomFamily(schoolCount + schoolCount / 10);
+            schools[i] = new String("school-" + school);
+            tiers[i] = new String(TIERS[i % TIERS.length]);
+            days[i] = TERM_START.toEpochDay() + BenchmarkApplication.randomFamily(TERMS * TERM_DAYS + 30);
+        }
+    }
+
+    @Benchmark
+    public long compiled() {
+        int i = next++ & (LOOKUPS - 1);
+        return compiled.rateBasisPoints(schools[i], tiers[i], days[i]);
+    }
+
+    @Benchmark
+    public long linearScan() {
+        int i = next++ & (LOOKUPS - 1);
+        String school = schools[i];
+        String tier = tiers[i];
+        long day = days[i];
+        FeeRule best = null;
+        int bestSpecificity = -1;
+        for (FeeRule rule : rules) {
+            if (rule.getSchool() != null && !rule.getSchool().equals(school)
+                    || rule.getTier() != null && !rule.getTier().equals(tier)
+                    || rule.getValidFrom() != null && rule.getValidFrom().toEpochDay() > day
+                    || rule.getValidTo() != null && rule.getValidTo().toEpochDay() < day) {
+                continue;
+            }
+            int specificity = (rule.getSchool() != null ? 2 : 0) + (rule.getTier() != null ? 1 : 0);
+            if (specificity > bestSpecificity
+                    || specificity == bestSpecificity && rule.getPriority() > Objects.requireNonNull(best).getPriority()) {
+                best = rule;
+                bestSpecificity = specificity;
+            }
+        }
+        return best == null ? 500 : best.getRateBasisPoints();
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Dto.PageResponse;
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Utils.Money;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+  JSON (de)serialization of the API payloads with an ObjectMapper configured like Spring Boot's.
+  datasetSize is the number of payments in the serialized page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JsonBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int datasetSize;
+
+    private ObjectMapper objectMapper;
+    private PaymentRequest request;
+    private String requestJson;
+    private Payment payment;
+    private String paymentJson;
+    private PageResponse<Payment> page;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        objectMapper = Jackson2ObjectMapperBuilder.json()
+                .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .build();
+
+        request = new PaymentRequest();
+        request.setParentId(1L);
+        request.setStudentId(2L);
+        request.setPaymentAmount(Money.of("100.00"));
+        requestJson = objectMapper.writeValueAsString(request);
+
+        payment = payment(1);
+        paymentJson = objectMapper.writeValueAsString(payment);
+
+        List<Payment> items = new ArrayList<>(datasetSize);
+        for (int i = 1; i <= datasetSize; i++) {
+            items.add(payment(i));
+        }
+        page = new PageResponse<>(items, (long) datasetSize);
+    }
+
+    @Benchmark
+    public String writePaymentRequest() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(request);
+    }
+
+    @Benchmark
+    public PaymentRequest readPaymentRequest() throws JsonProcessingException {
+        return objectMapper.readValue(requestJson, PaymentRequest.class);
+    }
+
+    @Benchmark
+    public String writePayment() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(payment);
+    }
+
+    @Benchmark
+    public Payment readPayment() throws JsonProcessingException {
+        return objectMapper.readValue(paymentJson, Payment.class);
+    }
+
+    @Benchmark
+    public byte[] writePaymentPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    private static Payment payment(long id) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setParentId(1L);
+        payment.setStudentId(2L);
+        payment.setAmount(Money.of("100.00"));
+        payment.setStatus(TransactionStatus.SUCCESS);
+        payment.setPaymentDate(LocalDateTime.of(2026, 1, 2, 3, 4, 5));
+        payment.setDescription("Payment processed successfully.");
+        return payment;
+    }
+}
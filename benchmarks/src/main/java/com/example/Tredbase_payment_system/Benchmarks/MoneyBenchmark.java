@@ -0,0 +1,84 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Dto.Guardians;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Service.PaymentSplitter;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Money arithmetic of one shared-student settlement step as batch settlement runs it: fee,
+  split and the two balance updates. legacyDouble reproduces the former boxed-Double path
+  (Map<Long, Double> debits, Double::sum merges); minorUnits is the current long path.
+  Run with -prof gc to compare allocation per operation as well as time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MoneyBenchmark {
+
+    private static final long[] EQUAL_SHARES = {1, 1};
+
+    @Param({"100", "10000"})
+    public int datasetSize;
+
+    private Map<Long, Double> doubleBalances;
+    private Map<Long, Long> minorBalances;
+    private long amount;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        doubleBalances = new HashMap<>();
+        minorBalances = new HashMap<>();
+        for (int f = 0; f < datasetSize; f++) {
+            for (long parentId : new long[]{BenchmarkApplication.firstParent(f), BenchmarkApplication.secondParent(f)}) {
+                doubleBalances.put(parentId, 1_000_000_000.0);
+                minorBalances.put(parentId, Money.ofMajor(1_000_000_000));
+            }
+        }
+    }
+
+    @Benchmark
+    public Map<Long, Double> legacyDouble() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        long first = BenchmarkApplication.firstParent(family);
+        long second = BenchmarkApplication.secondParent(family);
+        double adjusted = 10.01 * (1 + 0.05);
+        double half = adjusted / 2;
+        Map<Long, Double> debits = new LinkedHashMap<>();
+        debits.put(first, half);
+        debits.put(second, half);
+        debits.forEach((parentId, debit) -> doubleBalances.merge(parentId, -debit, Double::sum));
+        return debits;
+    }
+
+    @Benchmark
+    public ParentDebits minorUnits() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        long first = BenchmarkApplication.firstParent(family);
+        long[] parents = {first, BenchmarkApplication.secondParent(family)};
+        long adjusted = Money.plusRate(1_001, 500);
+        ParentDebits debits = PaymentSplitter.split(first, new Guardians(parents, EQUAL_SHARES), adjusted,
+                minorBalances::get);
+        for (int i = 0; i < debits.size(); i++) {
+            minorBalances.merge(debits.parentId(i), -debits.amount(i), Long::sum);
+        }
+        return debits;
+    }
+
+    // Cost paid at the edges only (JSON, database columns): minor units <-> BigDecimal
+    @Benchmark
+    public long decimalRoundTrip() {
+        BigDecimal decimal = Money.toDecimal(++amount);
+        return Money.fromDecimal(decimal);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Dto.PageResponse;
+import com.example.Tredbase_payment_system.Dto.PaymentFilter;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+  "Last 50 payments of this parent" against paymentRows payments spread evenly over PARENTS parents.
+  firstPage and nextPage use the per-parent history (idx_payment_parent_date, newest first);
+  filteredListing is the former way, /payments?parentId=, which walks the table in id order.
+  indexed=false drops the history indexes to show what the same queries cost without them.
+  The data lives in a file database (target/bench-history) because 10M rows do not fit in the heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PaymentHistoryBenchmark {
+
+    private static final int PARENTS = 20_000;
+    private static final int PAGE = 50;
+
+    @Param({"1000000", "10000000"})
+    public int paymentRows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private ConfigurableApplicationContext context;
+    private PaymentService paymentService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("history",
+                "jdbc:h2:file:./target/bench-history/payments;CACHE_SIZE=524288");
+        BenchmarkApplication.seedFamilies(context, PARENTS / 2);
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        jdbc.update("DROP INDEX idx_payment_parent_date");
+        jdbc.update("DROP INDEX idx_payment_student_date");
+        // Payment x belongs to parent (x mod PARENTS) + 1 and is one second newer than payment x - 1
+        jdbc.update("INSERT INTO payment (id, parent_id, student_id, amount, status, payment_date)"
+                + " SELECT x, MOD(x, " + PARENTS + ") + 1, MOD(x, " + PARENTS + ") + 1, 10.50, 'SUCCESS',"
+                + " DATEADD(SECOND, x, TIMESTAMP '2020-01-01 00:00:00') FROM SYSTEM_RANGE(1, " + paymentRows + ")");
+        if (indexed) {
+            jdbc.update("CREATE INDEX idx_payment_parent_date ON payment (parent_id, payment_date, id)");
+            jdbc.update("CREATE INDEX idx_payment_student_date ON payment (student_id, payment_date, id)");
+        }
+        jdbc.update("ANALYZE");
+        paymentService = context.getBean(PaymentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.getBean(JdbcTemplate.class).update("DROP ALL OBJECTS DELETE FILES");
+        context.close();
+    }
+
+    @Benchmark
+    public PageResponse<Payment> firstPage() {
+        return paymentService.getParentPayments(randomParent(), null, PAGE);
+    }
+
+    // A page from the middle of a parent's history, continuing below one of its payments
+    @Benchmark
+    public PageResponse<Payment> nextPage() {
+        long parentId = randomParent();
+        long perParent = paymentRows / PARENTS;
+        long cursor = (parentId - 1) + (perParent / 2 + 1) * PARENTS;
+        return paymentService.getParentPayments(parentId, cursor, PAGE);
+    }
+
+    @Benchmark
+    public PageResponse<Payment> filteredListing() {
+        PaymentFilter filter = new PaymentFilter();
+        filter.setParentId(randomParent());
+        return paymentService.getPayments(filter, null, PAGE);
+    }
+
+    private static long randomParent() {
+        return ThreadLocalRandom.current().nextInt(PARENTS) + 1;
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.OutputStreamAppender;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import com.example.Tredbase_payment_system.Service.PaymentEvents;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Logging cost a request thread pays per payment. legacy* reproduce the former PaymentService
+  calls on a synchronous appender: five to six formatted info lines per shared-student payment,
+  and a formatted error plus a second error with the stack trace per rejection. structured* are
+  the PaymentEvents calls on the AsyncAppender configured like logback-spring.xml.
+  sink "discard" isolates formatting from I/O; "file" writes to a temporary file. With the async
+  appender the writing happens on its worker thread (and, once the queue is full, events are
+  dropped rather than waited for), so this measures the caller's latency, not log throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PaymentLoggingBenchmark {
+
+    private static final String PATTERN = "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p [%15.15t] %-40.40logger{39} : %m %kvp%n%ex";
+    private static final Logger legacy = LoggerFactory.getLogger("com.example.Tredbase_payment_system.Service.PaymentService");
+
+    @Param({"discard", "file"})
+    public String sink;
+
+    private final long parentId = 1;
+    private final long coParentId = 2;
+    private final long studentId = 3;
+    private final long amount = Money.of("100.00");
+    private final long charged = Money.of("105.00");
+    private Payment payment;
+    private ParentDebits debits;
+    private File logFile;
+    private LoggerContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        payment = new Payment();
+        payment.setId(42L);
+        payment.setParentId(parentId);
+        payment.setStudentId(studentId);
+        payment.setAmount(amount);
+        debits = new ParentDebits(new long[]{parentId, coParentId}, new long[]{charged / 2, charged / 2});
+
+        context = (LoggerContext) LoggerFactory.getILoggerFactory();
+        context.reset();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).setLevel(ch.qos.logback.classic.Level.OFF);
+
+        ch.qos.logback.classic.Logger legacyLogger = context.getLogger(legacy.getName());
+        legacyLogger.setLevel(ch.qos.logback.classic.Level.INFO);
+        legacyLogger.setAdditive(false);
+        legacyLogger.addAppender(sinkAppender("LEGACY"));
+
+        AsyncAppender async = new AsyncAppender();
+        async.setContext(context);
+        async.setName("ASYNC");
+        async.setQueueSize(8192);
+        async.setNeverBlock(true);
+        async.setIncludeCallerData(false);
+        async.addAppender(sinkAppender("EVENTS"));
+        async.start();
+        ch.qos.logback.classic.Logger eventsLogger = context.getLogger(PaymentEvents.class);
+        eventsLogger.setLevel(ch.qos.logback.classic.Level.INFO);
+        eventsLogger.setAdditive(false);
+        eventsLogger.addAppender(async);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.stop();
+        if (logFile != null) {
+            logFile.delete();
+        }
+    }
+
+    @Benchmark
+    public void legacySuccess() {
+        legacy.info("Payment request: parentId={}, studentId={}, paymentAmount={}, adjustedAmount={}",
+                parentId, studentId, Money.format(amount), Money.format(charged));
+        for (int i = 0; i < debits.size(); i++) {
+            legacy.info("Deducted {} from Parent (ID={})", Money.format(debits.amount(i)), debits.parentId(i));
+        }
+        legacy.info("Updated Student (ID={}) balance from {} to {}",
+                studentId, Money.format(0L), Money.format(amount));
+        legacy.info("Payment processed successfully. Payment record created with ID={}", payment.getId());
+    }
+
+    @Benchmark
+    public void structuredSuccess() {
+        PaymentEvents.succeeded(payment, charged, debits);
+    }
+
+    @Benchmark
+    public void legacyRejection() {
+        String msg = String.format("Parent (ID=%d) not associated with Student (ID=%d).", coParentId, studentId);
+        legacy.error(msg);
+        PaymentException ex = new PaymentException(PaymentFailureReason.NOT_ASSOCIATED, msg);
+        legacy.error("Payment processing failed. Reason: {}", ex.getMessage(), ex);
+    }
+
+    @Benchmark
+    public void structuredRejection() {
+        PaymentException ex = new PaymentException(PaymentFailureReason.NOT_ASSOCIATED,
+                "Parent (ID=" + coParentId + ") not associated with Student (ID=" + studentId + ").");
+        PaymentEvents.unsuccessful(coParentId, studentId, amount, ex);
+    }
+
+    private Appender<ILoggingEvent> sinkAppender(String name) throws IOException {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(PATTERN);
+        encoder.start();
+
+        OutputStreamAppender<ILoggingEvent> appender;
+        if ("file".equals(sink)) {
+            if (logFile == null) {
+                logFile = File.createTempFile("payment-logging", ".log");
+            }
+            FileAppender<ILoggingEvent> file = new FileAppender<>();
+            file.setFile(logFile.getPath());
+            appender = file;
+        } else {
+            appender = new OutputStreamAppender<>();
+            appender.setOutputStream(OutputStream.nullOutputStream());
+        }
+        appender.setContext(context);
+        appender.setName(name);
+        appender.setEncoder(encoder);
+        appender.start();
+        return appender;
+    }
+}
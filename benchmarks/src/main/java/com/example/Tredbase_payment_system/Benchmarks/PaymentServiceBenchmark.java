@@ -0,0 +1,57 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+  End-to-end PaymentService.processPayment: locking, transaction, entity loads and saves,
+  payment row and aggregates. Run with -t N to add concurrent payers; with several threads,
+  shared-student payments also exercise the version-conflict retry path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PaymentServiceBenchmark {
+
+    // Payment amount in minor units, small enough that the seeded balances never run out
+    private static final long ONE_CENT = 1L;
+
+    // Number of families (two parents, one unique and one shared student each)
+    @Param({"100", "10000"})
+    public int datasetSize;
+
+    private ConfigurableApplicationContext context;
+    private PaymentService paymentService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("payment_service");
+        BenchmarkApplication.seedFamilies(context, datasetSize);
+        paymentService = context.getBean(PaymentService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void processPaymentUniqueStudent() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        paymentService.processPayment(BenchmarkApplication.firstParent(family),
+                BenchmarkApplication.uniqueStudent(family), ONE_CENT);
+    }
+
+    @Benchmark
+    public void processPaymentSharedStudent() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        paymentService.processPayment(BenchmarkApplication.firstParent(family),
+                BenchmarkApplication.sharedStudent(family), ONE_CENT);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Service.PaymentRateLimiter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Cost of PaymentRateLimiter.tryAcquire, the check every payment request now pays before
+  PaymentService. spreadParents draws from 100,000 parents that stay within their limits (the
+  global bucket is effectively unlimited here); hotParent is one flooding parent whose requests
+  are nearly all rejected. Run with -t N to see CAS contention on the shared buckets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RateLimiterBenchmark {
+
+    private static final int PARENTS = 100_000;
+
+    private ConfigurableApplicationContext context;
+    private PaymentRateLimiter rateLimiter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("rate_limiter", "jdbc:h2:mem:bench_rate_limiter",
+                "--payment.rate-limit.global.rate-per-second=1000000000",
+                "--payment.rate-limit.global.burst=1000000000",
+                "--payment.rate-limit.parent.rate-per-second=1000",
+                "--payment.rate-limit.max-parents=" + PARENTS);
+        rateLimiter = context.getBean(PaymentRateLimiter.class);
+        // The hot parent uses up its burst once; after that all but one request per millisecond is rejected
+        while (rateLimiter.tryAcquire(0L) == 0) {
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long spreadParents() {
+        return rateLimiter.tryAcquire(1L + ThreadLocalRandom.current().nextInt(PARENTS));
+    }
+
+    @Benchmark
+    public long hotParent() {
+        return rateLimiter.tryAcquire(0L);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Dto.ReconciliationReport;
+import com.example.Tredbase_payment_system.Service.ReconciliationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+  One reconciliation run over paymentRows SUCCESS payments of 10.00 (+0.50 fee) spread over the
+  unique students of FAMILIES families, with consistent balances and aggregate totals.
+  fullRun streams every payment, student and parent; incrementalRun starts from a watermark that
+  leaves the newest NEW_PAYMENTS payments to check, as a nightly run after a day of traffic would.
+  parallelism is the ForkJoinPool size; it only pays off with as many cores (and pool connections).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ReconciliationBenchmark {
+
+    private static final int FAMILIES = 50_000;
+    private static final int NEW_PAYMENTS = 10_000;
+
+    @Param({"1000000"})
+    public int paymentRows;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbc;
+    private ReconciliationService reconciliation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("reconciliation_" + parallelism,
+                "jdbc:h2:mem:bench_reconciliation_" + parallelism,
+                "--payment.reconciliation.parallelism=" + parallelism,
+                "--payment.reconciliation.settle-seconds=0");
+        BenchmarkApplication.seedFamilies(context, FAMILIES);
+        jdbc = context.getBean(JdbcTemplate.class);
+        // Payment x goes to the unique student of family (x mod FAMILIES), paid by that family's first parent
+        jdbc.update("INSERT INTO payment (id, parent_id, student_id, amount, fee, status, payment_date)"
+                + " SELECT x, 2 * MOD(x, " + FAMILIES + ") + 1, 2 * MOD(x, " + FAMILIES + ") + 1, 10.00, 0.50, 'SUCCESS',"
+                + " DATEADD(SECOND, x, TIMESTAMP '2020-01-01 00:00:00') FROM SYSTEM_RANGE(1, " + paymentRows + ")");
+        jdbc.update("INSERT INTO account_payment_total (account_type, account_id, payment_count, total_amount)"
+                + " SELECT 'STUDENT', student_id, COUNT(*), SUM(amount) FROM payment GROUP BY student_id");
+        jdbc.update("INSERT INTO account_payment_total (account_type, account_id, payment_count, total_amount)"
+                + " SELECT 'PARENT', parent_id, COUNT(*), SUM(amount + fee) FROM payment GROUP BY parent_id");
+        jdbc.update("UPDATE student s SET balance = COALESCE((SELECT total_amount FROM account_payment_total t"
+                + " WHERE t.account_type = 'STUDENT' AND t.account_id = s.student_id), 0)");
+        jdbc.update("UPDATE parent p SET balance = balance - COALESCE((SELECT total_amount FROM account_payment_total t"
+                + " WHERE t.account_type = 'PARENT' AND t.account_id = p.id), 0)");
+        jdbc.update("ANALYZE");
+        reconciliation = context.getBean(ReconciliationService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Setup(Level.Invocation)
+    public void rewindWatermark() {
+        long covered = paymentRows - NEW_PAYMENTS;
+        jdbc.update("MERGE INTO reconciliation_watermark (name, last_payment_id, payment_count, credited_amount, fee_amount)"
+                + " KEY (name) VALUES ('ledger', ?, ?, ?, ?)", covered, covered, covered * 10, covered / 2.0);
+    }
+
+    @Benchmark
+    public ReconciliationReport fullRun() {
+        return check(reconciliation.reconcile(true));
+    }
+
+    @Benchmark
+    public ReconciliationReport incrementalRun() {
+        return check(reconciliation.reconcile(false));
+    }
+
+    private static ReconciliationReport check(ReconciliationReport report) {
+        if (report.getDiscrepancyCount() != 0) {
+            throw new IllegalStateException("Seeded ledger does not reconcile: " + report.getDiscrepancies());
+        }
+        return report;
+    }
+}
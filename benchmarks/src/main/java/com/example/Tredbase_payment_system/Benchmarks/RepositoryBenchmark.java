@@ -0,0 +1,88 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Entity.Parent;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Repository.ParentRepository;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Entity load and save through the Spring Data repositories, each in its own transaction,
+  as the payment path does it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RepositoryBenchmark {
+
+    private static final int STUDENTS_PER_LOAD = 100;
+
+    @Param({"100", "10000"})
+    public int datasetSize;
+
+    private ConfigurableApplicationContext context;
+    private ParentRepository parentRepo;
+    private StudentRepository studentRepo;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start("repository");
+        BenchmarkApplication.seedFamilies(context, datasetSize);
+        parentRepo = context.getBean(ParentRepository.class);
+        studentRepo = context.getBean(StudentRepository.class);
+        readWrite = context.getBean(TransactionTemplate.class);
+        readOnly = new TransactionTemplate(readWrite.getTransactionManager());
+        readOnly.setReadOnly(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Parent findParent() {
+        long parentId = BenchmarkApplication.firstParent(BenchmarkApplication.randomFamily(datasetSize));
+        return readOnly.execute(status -> parentRepo.findById(parentId).orElseThrow());
+    }
+
+    @Benchmark
+    public Parent loadAndSaveParent() {
+        long parentId = BenchmarkApplication.firstParent(BenchmarkApplication.randomFamily(datasetSize));
+        try {
+            return readWrite.execute(status -> {
+                Parent parent = parentRepo.findById(parentId).orElseThrow();
+                parent.setBalance(parent.getBalance() - 1);
+                return parentRepo.save(parent);
+            });
+        } catch (ConcurrencyFailureException ex) {
+            // Two threads picked the same parent; the loser's work is still representative
+            return null;
+        }
+    }
+
+    @Benchmark
+    public List<Student> loadStudentsWithParents() {
+        List<Long> studentIds = new ArrayList<>(STUDENTS_PER_LOAD);
+        for (int i = 0; i < STUDENTS_PER_LOAD; i++) {
+            studentIds.add(BenchmarkApplication.sharedStudent(BenchmarkApplication.randomFamily(datasetSize)));
+        }
+        return readOnly.execute(status -> {
+            List<Student> students = studentRepo.findAllWithParentsByStudentIdIn(studentIds);
+            students.forEach(student -> student.getParents().size());
+            return students;
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Engine.ShardedBalanceEngine;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+  Cost of one ShardedBalanceEngine access from a request thread, without Spring or a database:
+  a balance read, a transfer whose parent and student share a shard, and a three-parent transfer
+  that spans shards. Every access is handed to the owning shard's thread, so this is mostly the
+  handoff. Debits are one cent from balances that cannot run out during a run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ShardedEngineBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final Runnable NOTHING = () -> { };
+
+    @Param({"4"})
+    public int shards;
+
+    private ShardedBalanceEngine engine;
+    // Parent/student pairs on the same shard, and parent triples spread over shards
+    private long[][] sameShard;
+    private long[][] crossShard;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new ShardedBalanceEngine(shards, ACCOUNTS * 2);
+        for (long id = 1; id <= ACCOUNTS; id++) {
+            engine.load(ShardedBalanceEngine.key(id, ShardedBalanceEngine.PARENT), Long.MAX_VALUE / 4);
+            engine.load(ShardedBalanceEngine.key(id, ShardedBalanceEngine.STUDENT), 0);
+        }
+        sameShard = new long[1024][];
+        crossShard = new long[1024][];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < sameShard.length; i++) {
+            long parent = ShardedBalanceEngine.key(random.nextLong(1, ACCOUNTS + 1), ShardedBalanceEngine.PARENT);
+            sameShard[i] = new long[]{parent, parent + 1};
+            crossShard[i] = new long[]{
+                    ShardedBalanceEngine.key(random.nextLong(1, ACCOUNTS / 3), ShardedBalanceEngine.PARENT),
+                    ShardedBalanceEngine.key(random.nextLong(ACCOUNTS / 3, 2 * ACCOUNTS / 3), ShardedBalanceEngine.PARENT),
+                    ShardedBalanceEngine.key(random.nextLong(2 * ACCOUNTS / 3, ACCOUNTS + 1), ShardedBalanceEngine.PARENT),
+                    ShardedBalanceEngine.key(random.nextLong(1, ACCOUNTS + 1), ShardedBalanceEngine.STUDENT)};
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        engine.close();
+    }
+
+    @Benchmark
+    public long balance() {
+        return engine.balance(sameShard[ThreadLocalRandom.current().nextInt(sameShard.length)][0]);
+    }
+
+    // One parent paying its own student (parent and student keys of one id may still differ in shard)
+    @Benchmark
+    public int transferOneParent() {
+        long[] accounts = sameShard[ThreadLocalRandom.current().nextInt(sameShard.length)];
+        return engine.transfer(new long[]{accounts[0]}, new long[]{1}, accounts[1], 1, NOTHING);
+    }
+
+    @Benchmark
+    public int transferThreeParents() {
+        long[] accounts = crossShard[ThreadLocalRandom.current().nextInt(crossShard.length)];
+        return engine.transfer(new long[]{accounts[0], accounts[1], accounts[2]}, new long[]{1, 1, 1}, accounts[3], 3, NOTHING);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.Tredbase_payment_system.Benchmarks;
+
+import com.example.Tredbase_payment_system.Dto.Guardians;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Service.PaymentSplitter;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+  The split-deduction rule on its own, against an in-memory balance map of datasetSize families
+  (the same shape batch settlement uses), without any database work.
+  blendedFamily charges four guardians weighted 3:3:2:2 (two neighbouring families' parents).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SplitDeductionBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    public int datasetSize;
+
+    private static final long ADJUSTED_AMOUNT = Money.of("105.00");
+
+    private Map<Long, Long> parentBalances;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        parentBalances = new HashMap<>();
+        for (int f = 0; f < datasetSize; f++) {
+            parentBalances.put(BenchmarkApplication.firstParent(f), Money.ofMajor(1_000_000));
+            parentBalances.put(BenchmarkApplication.secondParent(f), Money.ofMajor(1_000_000));
+        }
+    }
+
+    @Benchmark
+    public ParentDebits uniqueStudent() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        long parentId = BenchmarkApplication.firstParent(family);
+        return PaymentSplitter.split(parentId, new Guardians(new long[]{parentId}, new long[]{1}),
+                ADJUSTED_AMOUNT, parentBalances::get);
+    }
+
+    @Benchmark
+    public ParentDebits sharedStudent() {
+        int family = BenchmarkApplication.randomFamily(datasetSize);
+        long parentId = BenchmarkApplication.firstParent(family);
+        Guardians guardians = new Guardians(new long[]{parentId, BenchmarkApplication.secondParent(family)},
+                new long[]{1, 1});
+        return PaymentSplitter.split(parentId, guardians, ADJUSTED_AMOUNT, parentBalances::get);
+    }
+
+    @Benchmark
+    public ParentDebits blendedFamily() {
+        int family = BenchmarkApplication.randomFamily(datasetSize - 1);
+        long parentId = BenchmarkApplication.firstParent(family);
+        Guardians guardians = new Guardians(new long[]{parentId, BenchmarkApplication.secondParent(family),
+                BenchmarkApplication.firstParent(family + 1), BenchmarkApplication.secondParent(family + 1)},
+                new long[]{3, 3, 2, 2});
+        return PaymentSplitter.split(parentId, guardians, ADJUSTED_AMOUNT, parentBalances::get);
+    }
+}
@@ -0,0 +1,40 @@
+#!/usr/bin/env bash
+# Starts the payment service with the "prod" profile and an AppCDS archive of its classes.
+#
+#   scripts/fast-boot.sh prepare     extract the jar and record the archive (a training run
+#                                     that stops once the context is refreshed)
+#   scripts/fast-boot.sh run [args]  start from the extracted jar with the archive
+#
+# Run `mvn package` first; prepare again after every build. With -Paot the jar also carries
+# the AOT-generated bean definitions, which run adds -Dspring.aot.enabled=true for.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+JAR=$(ls target/*-exec.jar)
+OUT=target/fast-boot
+APP="$OUT/$(basename "$JAR")"
+ARCHIVE="$OUT/application.jsa"
+
+aot_flag() {
+  if unzip -l "$APP" 2>/dev/null | grep -q '__BeanFactoryRegistrations.class'; then
+    echo "-Dspring.aot.enabled=true"
+  fi
+}
+
+case "${1:-run}" in
+  prepare)
+    rm -rf "$OUT"
+    java -Djarmode=tools -jar "$JAR" extract --destination "$OUT"
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" -Xlog:cds=off -Dspring.context.exit=onRefresh $(aot_flag) \
+      -jar "$APP" --spring.profiles.active=prod
+    ;;
+  run)
+    shift || true
+    exec java -XX:SharedArchiveFile="$ARCHIVE" -Xshare:auto $(aot_flag) \
+      -jar "$APP" --spring.profiles.active=prod "$@"
+    ;;
+  *)
+    echo "usage: $0 prepare | run [application args]" >&2
+    exit 2
+    ;;
+esac
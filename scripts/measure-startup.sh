@@ -0,0 +1,56 @@
+#!/usr/bin/env bash
+# Compares startup time, time to first payment and resident memory of the default
+# configuration, the prod profile alone and the fast boot (prod profile + AppCDS, see fast-boot.sh).
+#
+#   scripts/measure-startup.sh [runs]
+#
+# startup:        JVM uptime when Spring Boot logs "Started" (includes the warm-up runner in prod)
+# first payment:  launch until the first POST /api/payment returns 200
+# rss:            VmRSS of the process right after that payment
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-3}
+PORT=${PORT:-18080}
+JAR=$(ls target/*-exec.jar)
+[ -f target/fast-boot/application.jsa ] || scripts/fast-boot.sh prepare > /dev/null
+
+measure() {
+  local name=$1; shift
+  local log
+  log=$(mktemp)
+  local launched
+  launched=$(date +%s%N)
+  "$@" --server.port="$PORT" > "$log" 2>&1 &
+  local pid=$!
+  local code=000
+  until [ "$code" = 200 ]; do
+    if ! kill -0 "$pid" 2>/dev/null; then
+      echo "$name: the application exited, see $log" >&2
+      return 1
+    fi
+    sleep 0.02
+    code=$(curl -s -o /dev/null -w '%{http_code}' -u admin:adminPass -H 'Content-Type: application/json' \
+      -d '{"parentId":1,"studentId":2,"paymentAmount":1.00}' "http://localhost:$PORT/api/payment" || true)
+  done
+  local firstPayment=$(( ($(date +%s%N) - launched) / 1000000 ))
+  local rss
+  rss=$(awk '/VmRSS/ {print int($2 / 1024)}' "/proc/$pid/status")
+  # The line is written when ApplicationReadyEvent fires, just after the payment may have gone through
+  local startup=""
+  for _ in $(seq 100); do
+    startup=$(sed -n 's/.*Started .* (process running for \([0-9.]*\)).*/\1/p' "$log")
+    [ -n "$startup" ] && break
+    sleep 0.05
+  done
+  kill "$pid"
+  wait "$pid" 2>/dev/null || true
+  rm -f "$log"
+  printf '%-10s startup %6ss   first payment %6d ms   rss %5d MB\n' "$name" "$startup" "$firstPayment" "$rss"
+}
+
+for run in $(seq "$RUNS"); do
+  measure default java -jar "$JAR"
+  measure prod java -jar "$JAR" --spring.profiles.active=prod
+  measure fast scripts/fast-boot.sh run
+done
@@ -0,0 +1,123 @@
+package com.example.Tredbase_payment_system.Config;
+
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Remembers recently verified HTTP Basic credentials so a client sending the same username and
+  password on every request pays for BCrypt once per ttl instead of once per request.
+  Only an HMAC-SHA256 of "username:password" under a random per-process key is kept (never the
+  password), together with the principal and authorities the delegate returned, so role checks
+  are unchanged. Failed attempts are never cached: a wrong password always costs a full BCrypt
+  check. A changed or revoked credential keeps working for at most ttl.
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider {
+
+    private final AuthenticationProvider delegate;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Mac prototype;
+    private final ConcurrentHashMap<String, Verified> verified = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, long ttlSeconds, int maxSize) {
+        this.delegate = delegate;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.maxSize = maxSize;
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        try {
+            prototype = Mac.getInstance("HmacSHA256");
+            prototype.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("HmacSHA256 is not available", ex);
+        }
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!(authentication.getCredentials() instanceof String password)) {
+            return delegate.authenticate(authentication);
+        }
+        String key = digest(authentication.getName(), password);
+        long now = System.nanoTime();
+        Verified entry = verified.get(key);
+        if (entry != null && entry.expiresAt - now > 0) {
+            hits.increment();
+            // A fresh token per request: the caller attaches its own request details to it
+            return UsernamePasswordAuthenticationToken.authenticated(entry.principal, null, entry.authorities);
+        }
+        misses.increment();
+        Authentication result = delegate.authenticate(authentication);
+        if (result != null && result.isAuthenticated()) {
+            put(key, new Verified(result.getPrincipal(), result.getAuthorities(), now + ttlNanos));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    public void invalidateAll() {
+        verified.clear();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return verified.size();
+    }
+
+    private void put(String key, Verified entry) {
+        verified.put(key, entry);
+        if (verified.size() > maxSize) {
+            // Over capacity: drop expired entries, then arbitrary ones (hash order) until back under the bound
+            long now = System.nanoTime();
+            verified.values().removeIf(other -> other.expiresAt - now <= 0);
+            Iterator<String> keys = verified.keySet().iterator();
+            while (verified.size() > maxSize && keys.hasNext()) {
+                if (!keys.next().equals(key)) {
+                    keys.remove();
+                }
+            }
+        }
+    }
+
+    private String digest(String username, String password) {
+        try {
+            Mac mac = (Mac) prototype.clone();
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) ':');
+            return HexFormat.of().formatHex(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private record Verified(Object principal, Collection<? extends GrantedAuthority> authorities, long expiresAt) {
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.Tredbase_payment_system.Config;
+
+import com.example.Tredbase_payment_system.TredbasePaymentSystemApplication;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/*
+  Startup settings shared by every profile; the "prod" profile (application-prod.properties)
+  turns on spring.main.lazy-initialization.
+ */
+@Configuration
+public class StartupConfig {
+
+    /*
+      Lazy initialization only defers framework beans nobody asks for at startup. The application's
+      own beans stay eager: journal recovery, the audit and async workers, the balance engine and the
+      metric bindings must not wait for a first request.
+     */
+    @Bean
+    static LazyInitializationExcludeFilter applicationBeansStayEager() {
+        String applicationPackage = TredbasePaymentSystemApplication.class.getPackageName();
+        return (beanName, beanDefinition, beanType) ->
+                beanType != null && beanType.getPackageName().startsWith(applicationPackage);
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.Tredbase_payment_system.Config;
+
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Repository.ParentRepository;
+import com.example.Tredbase_payment_system.Repository.PaymentRepository;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+  With payment.warmup.enabled, runs the payment path's reads before the application reports
+  ready (runners finish before ApplicationReadyEvent, which flips the readiness probe).
+  The first real payment then finds Hibernate's query plans and statement caches, the
+  connection pool and the Jackson serializers built, and the hot code already compiled.
+  Only reads of an id that cannot exist (0) are made, so no data or metric changes.
+ */
+@Component
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private static final long NO_ID = 0L;
+    private static final String PAYMENT_REQUEST = "{\"parentId\":1,\"studentId\":1,\"paymentAmount\":1.00}";
+
+    @Autowired
+    private ParentRepository parentRepository;
+    @Autowired
+    private StudentRepository studentRepository;
+    @Autowired
+    private PaymentRepository paymentRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${payment.warmup.enabled:false}")
+    private boolean enabled;
+    @Value("${payment.warmup.iterations:50}")
+    private int iterations;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        for (int i = 0; i < iterations; i++) {
+            readOnly.executeWithoutResult(status -> {
+                parentRepository.findById(NO_ID);
+                studentRepository.findById(NO_ID);
+                studentRepository.findGuardians(NO_ID);
+                paymentRepository.findByIdempotencyKey("");
+            });
+            PaymentRequest request = objectMapper.readValue(PAYMENT_REQUEST, PaymentRequest.class);
+            Payment payment = new Payment();
+            payment.setParentId(request.getParentId());
+            payment.setStudentId(request.getStudentId());
+            payment.setAmount(request.getPaymentAmount());
+            objectMapper.writeValueAsString(payment);
+        }
+        logger.info("Warmed up the payment path ({} iterations) in {} ms", iterations,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -1,7 +1,13 @@
 package com.example.Tredbase_payment_system.Config;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -34,7 +40,8 @@ public class WebSecurityConfig {
         return http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(authorize -> authorize
-                        .requestMatchers("/api/payment").hasRole("ADMIN")
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/api/payment", "/api/payments/**").hasRole("ADMIN")
                         .anyRequest().authenticated())
                 .httpBasic(Customizer.withDefaults())
                 .sessionManagement(session -> session
@@ -42,6 +49,36 @@ public class WebSecurityConfig {
                 .build();
     }
 
+    /*
+      The only AuthenticationProvider, so the global AuthenticationManager uses it for HTTP Basic.
+      BCrypt verification runs in DaoAuthenticationProvider; with security.auth-cache.enabled it is
+      wrapped in CachingAuthenticationProvider so a repeated username/password skips BCrypt for ttl-seconds.
+     */
+    @Bean
+    public AuthenticationProvider authenticationProvider(
+            UserDetailsService userDetailsService,
+            MeterRegistry meterRegistry,
+            @Value("${security.auth-cache.enabled:true}") boolean cacheEnabled,
+            @Value("${security.auth-cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${security.auth-cache.max-size:10000}") int maxSize) {
+        DaoAuthenticationProvider bcrypt = new DaoAuthenticationProvider(passwordEncoder());
+        bcrypt.setUserDetailsService(userDetailsService);
+        if (!cacheEnabled) {
+            return bcrypt;
+        }
+        CachingAuthenticationProvider cached = new CachingAuthenticationProvider(bcrypt, ttlSeconds, maxSize);
+        FunctionCounter.builder("cache.gets", cached, CachingAuthenticationProvider::hits)
+                .tags("cache", "credentials", "result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("cache.gets", cached, CachingAuthenticationProvider::misses)
+                .tags("cache", "credentials", "result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("cache.size", cached, CachingAuthenticationProvider::size)
+                .tag("cache", "credentials")
+                .register(meterRegistry);
+        return cached;
+    }
+
     // This method sets up an in-memory user details manager with a single admin user.
     @Bean
     public UserDetailsService userDetailsService() {
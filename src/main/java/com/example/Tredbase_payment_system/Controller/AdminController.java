@@ -0,0 +1,63 @@
+package com.example.Tredbase_payment_system.Controller;
+
+import com.example.Tredbase_payment_system.Dto.CacheStats;
+import com.example.Tredbase_payment_system.Dto.ReconciliationReport;
+import com.example.Tredbase_payment_system.Service.FamilyGraphCache;
+import com.example.Tredbase_payment_system.Service.FeeRuleEngine;
+import com.example.Tredbase_payment_system.Service.ReconciliationService;
+import org.springframework.http.HttpStatus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping(path = "/admin")
+@PreAuthorize("hasRole('ADMIN')")
+public class AdminController {
+
+    @Autowired
+    private FamilyGraphCache familyGraphCache;
+    @Autowired
+    private FeeRuleEngine feeRuleEngine;
+    @Autowired
+    private ReconciliationService reconciliationService;
+
+    @GetMapping(path = "/cache/family-graph")
+    public CacheStats familyGraphStats() {
+        return familyGraphCache.stats();
+    }
+
+    // Drops one student's cached parents, or the whole graph when no studentId is given
+    @PostMapping(path = "/cache/family-graph/invalidate")
+    public ResponseEntity<String> invalidateFamilyGraph(@RequestParam(required = false) Long studentId) {
+        if (studentId == null) {
+            familyGraphCache.invalidateAll();
+            return ResponseEntity.ok("Family graph cache cleared");
+        }
+        familyGraphCache.invalidate(studentId);
+        return ResponseEntity.ok("Family graph cache entry removed for student " + studentId);
+    }
+
+    // Recompiles the fee rules after the fee_rule table was edited; payments switch over atomically
+    @PostMapping(path = "/fees/reload")
+    public ResponseEntity<String> reloadFeeRules() {
+        try {
+            int rules = feeRuleEngine.reload();
+            return ResponseEntity.ok("Fee rules reloaded: " + rules);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
+    // Verifies the ledger invariants from the last watermark, or over every payment and account when full
+    @PostMapping(path = "/reconciliation")
+    public ResponseEntity<?> reconcile(@RequestParam(defaultValue = "false") boolean full) {
+        try {
+            ReconciliationReport report = reconciliationService.reconcile(full);
+            return ResponseEntity.ok(report);
+        } catch (IllegalStateException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+        }
+    }
+}
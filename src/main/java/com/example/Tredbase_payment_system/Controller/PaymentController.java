@@ -1,23 +1,54 @@
 package com.example.Tredbase_payment_system.Controller;
 
 
+import com.example.Tredbase_payment_system.Dto.PageResponse;
+import com.example.Tredbase_payment_system.Dto.PaymentFilter;
 import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Dto.PaymentSubmission;
 import com.example.Tredbase_payment_system.Entity.Payment;
 import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Service.PaymentRateLimiter;
 import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Service.PaymentSubmissionService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 public class PaymentController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private PaymentSubmissionService submissionService;
+
+    @Autowired
+    private PaymentRateLimiter rateLimiter;
+
+    // Bounds the transaction and the result list one batch request can build
+    @Value("${payment.batch.max-size:1000}")
+    private int maxBatchSize;
+
     @GetMapping(path = "/")
     public String Welcome() {
         return "Payment Service is running";
@@ -25,29 +56,148 @@ public class PaymentController {
 
     @PreAuthorize("hasRole('ADMIN')")
     @PostMapping(path = "/api/payment")
-    public ResponseEntity<String> processPayment(@RequestBody PaymentRequest paymentRequest) {
+    public ResponseEntity<String> processPayment(@RequestBody PaymentRequest paymentRequest,
+                                                 @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        long wait = rateLimiter.tryAcquire(paymentRequest.getParentId());
+        if (wait > 0) {
+            return tooManyRequests(wait);
+        }
         try {
+            // A retry carrying the same Idempotency-Key gets the same answer without a second charge
             paymentService.processPayment(
                     paymentRequest.getParentId(),
                     paymentRequest.getStudentId(),
-                    paymentRequest.getPaymentAmount()
+                    paymentRequest.getPaymentAmount(),
+                    idempotencyKey
             );
             return ResponseEntity.ok("Payment processed successfully");
         } catch (IllegalArgumentException ex){
             return ResponseEntity.badRequest().body("Payment failed: " + ex.getMessage());
+        } catch (ConcurrencyFailureException ex) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Payment failed: concurrent update conflict, please retry.");
+        }
+    }
+
+    // Queues the payment and answers 202 right away; follow the Location header for its outcome
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping(path = "/api/payments/async")
+    public ResponseEntity<?> submitPayment(@RequestBody PaymentRequest paymentRequest,
+                                           @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        long wait = rateLimiter.tryAcquire(paymentRequest.getParentId());
+        if (wait > 0) {
+            return tooManyRequests(wait);
+        }
+        try {
+            PaymentSubmission submission = submissionService.submit(paymentRequest, idempotencyKey);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/payments/async/" + submission.getId()))
+                    .body(submission);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body("Payment failed: " + ex.getMessage());
+        } catch (RejectedExecutionException ex) {
+            // Load shedding: the queue is full, nothing was queued
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body("Payment queue is full, please retry.");
+        }
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/api/payments/async/{id}")
+    public ResponseEntity<PaymentSubmission> getSubmission(@PathVariable String id) {
+        PaymentSubmission submission = submissionService.find(id);
+        return submission == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(submission);
+    }
+
+    // Server-sent "status" events until the payment succeeds or fails
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/api/payments/async/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamSubmission(@PathVariable String id) {
+        SseEmitter emitter = submissionService.subscribe(id);
+        return emitter == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(emitter);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @PostMapping(path = "/api/payments/batch")
+    public ResponseEntity<?> processBatch(@RequestBody List<PaymentRequest> paymentRequests) {
+        if (paymentRequests.size() > maxBatchSize) {
+            return ResponseEntity.badRequest().body("Payment failed: a batch holds at most " + maxBatchSize + " payments.");
+        }
+        // Each item counts against its parent's bucket and the global bucket, as a single payment would
+        Map<Long, Integer> itemsByParent = new HashMap<>();
+        for (PaymentRequest request : paymentRequests) {
+            if (request.getParentId() != null) {
+                itemsByParent.merge(request.getParentId(), 1, Integer::sum);
+            }
+        }
+        if (!rateLimiter.admits(itemsByParent, paymentRequests.size())) {
+            // Retrying cannot help: it has to be split up
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body("Batch exceeds the payment rate limit burst, please split it.");
+        }
+        long wait = rateLimiter.tryAcquireBatch(itemsByParent, paymentRequests.size());
+        if (wait > 0) {
+            return tooManyRequests(wait);
+        }
+        try {
+            return ResponseEntity.ok(paymentService.processBatch(paymentRequests));
+        } catch (ConcurrencyFailureException ex) {
+            // Still conflicting after PaymentService's retries; nothing was written
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Payment failed: concurrent update conflict, please retry.");
         }
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping(path = "/students")
-    public List<Student> getStudents() {
-        return paymentService.getStudents();
+    public PageResponse<Student> getStudents(@RequestParam(required = false) Long after,
+                                             @RequestParam(defaultValue = "100") int limit) {
+        return paymentService.getStudents(after, limit);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/students/export", produces = NDJSON)
+    public void exportStudents(HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        paymentService.exportStudents(response.getOutputStream());
+    }
+
+    // Newest first; pass nextCursor as "before" for the next page
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/parents/{parentId}/payments")
+    public PageResponse<Payment> getParentPayments(@PathVariable Long parentId,
+                                                   @RequestParam(required = false) Long before,
+                                                   @RequestParam(defaultValue = "50") int limit) {
+        return paymentService.getParentPayments(parentId, before, limit);
+    }
+
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/students/{studentId}/payments")
+    public PageResponse<Payment> getStudentPayments(@PathVariable Long studentId,
+                                                    @RequestParam(required = false) Long before,
+                                                    @RequestParam(defaultValue = "50") int limit) {
+        return paymentService.getStudentPayments(studentId, before, limit);
     }
 
     @PreAuthorize("hasRole('ADMIN')")
     @GetMapping(path = "/payments")
-    public List<Payment> getPayments() {
-        return paymentService.getPayments();
+    public PageResponse<Payment> getPayments(PaymentFilter filter,
+                                             @RequestParam(required = false) Long after,
+                                             @RequestParam(defaultValue = "100") int limit) {
+        return paymentService.getPayments(filter, after, limit);
     }
 
+    @PreAuthorize("hasRole('ADMIN')")
+    @GetMapping(path = "/payments/export", produces = NDJSON)
+    public void exportPayments(PaymentFilter filter, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        paymentService.exportPayments(filter, response.getOutputStream());
+    }
+
+    // 429 before any database work; Retry-After is in whole seconds, rounded up
+    private static ResponseEntity<String> tooManyRequests(long waitNanos) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds))
+                .body("Too many payment requests, please retry.");
+    }
 }
@@ -0,0 +1,39 @@
+package com.example.Tredbase_payment_system.Controller;
+
+import com.example.Tredbase_payment_system.Dto.DailyPaymentSummary;
+import com.example.Tredbase_payment_system.Entity.AccountPaymentTotal;
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Service.LedgerAggregateService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Reporting endpoints served from the incrementally maintained aggregate tables
+@RestController
+@RequestMapping(path = "/reports")
+@PreAuthorize("hasRole('ADMIN')")
+public class ReportController {
+
+    @Autowired
+    private LedgerAggregateService ledgerAggregates;
+
+    @GetMapping(path = "/daily")
+    public List<DailyPaymentSummary> daily(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ledgerAggregates.dailySummary(from, to);
+    }
+
+    @GetMapping(path = "/parents/{id}")
+    public AccountPaymentTotal parentTotal(@PathVariable Long id) {
+        return ledgerAggregates.accountTotal(AccountType.PARENT, id);
+    }
+
+    @GetMapping(path = "/students/{id}")
+    public AccountPaymentTotal studentTotal(@PathVariable Long id) {
+        return ledgerAggregates.accountTotal(AccountType.STUDENT, id);
+    }
+}
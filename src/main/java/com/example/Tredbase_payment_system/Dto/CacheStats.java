@@ -0,0 +1,15 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import lombok.*;
+
+
+@Data
+@AllArgsConstructor
+public class CacheStats {
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+    private int size;
+    private int maxSize;
+}
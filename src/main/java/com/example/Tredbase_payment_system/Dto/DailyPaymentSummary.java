@@ -0,0 +1,25 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.Money;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+
+@Data
+@AllArgsConstructor
+public class DailyPaymentSummary {
+    private LocalDate date;
+    private TransactionStatus status;
+    private Long paymentCount;
+    @JsonMoney
+    private long totalAmount;
+
+    // JPQL sum() over the DECIMAL column yields the column type, not the converted attribute type
+    public DailyPaymentSummary(LocalDate date, TransactionStatus status, Long paymentCount, BigDecimal totalAmount) {
+        this(date, status, paymentCount, Money.fromDecimal(totalAmount));
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Enums.ReconciliationCheck;
+import lombok.*;
+
+import java.math.BigDecimal;
+
+/*
+  One failed invariant. accountType and accountId are null for ledger-wide checks. INVALID_PAYMENT
+  names the payment instead of expected and actual values, which are otherwise amounts or counts.
+ */
+@Data
+@AllArgsConstructor
+public class Discrepancy {
+    private ReconciliationCheck check;
+    private AccountType accountType;
+    private Long accountId;
+    private Long paymentId;
+    private BigDecimal expected;
+    private BigDecimal actual;
+}
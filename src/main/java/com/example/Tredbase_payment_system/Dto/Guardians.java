@@ -0,0 +1,17 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import java.util.Arrays;
+
+// A student's parents (sorted ids) and the weight of each in a shared payment, index-aligned
+public record Guardians(long[] parentIds, long[] weights) {
+
+    public static final Guardians NONE = new Guardians(new long[0], new long[0]);
+
+    public int size() {
+        return parentIds.length;
+    }
+
+    public boolean includes(long parentId) {
+        return Arrays.binarySearch(parentIds, parentId) >= 0;
+    }
+}
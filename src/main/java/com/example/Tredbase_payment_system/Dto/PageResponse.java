@@ -0,0 +1,14 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import lombok.*;
+
+import java.util.List;
+
+
+// One page of a keyset-paginated listing; pass nextCursor as "after" to get the next page (null on the last page)
+@Data
+@AllArgsConstructor
+public class PageResponse<T> {
+    private List<T> items;
+    private Long nextCursor;
+}
@@ -0,0 +1,38 @@
+package com.example.Tredbase_payment_system.Dto;
+
+// Parent ids and the minor units debited from each by one payment, index-aligned
+public record ParentDebits(long[] parentIds, long[] amounts) {
+
+    public int size() {
+        return parentIds.length;
+    }
+
+    public long parentId(int i) {
+        return parentIds[i];
+    }
+
+    public long amount(int i) {
+        return amounts[i];
+    }
+
+    public long total() {
+        long total = 0;
+        for (long amount : amounts) {
+            total += amount;
+        }
+        return total;
+    }
+
+    // "parentId=amount" pairs in minor units, e.g. "1=2100 2=2100"; only built when a log event is written
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(16 * parentIds.length);
+        for (int i = 0; i < parentIds.length; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(parentIds[i]).append('=').append(amounts[i]);
+        }
+        return text.toString();
+    }
+}
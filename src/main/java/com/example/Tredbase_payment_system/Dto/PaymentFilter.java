@@ -0,0 +1,20 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import lombok.*;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+
+// Optional filters for payment listing and export; null fields are not applied
+@Data
+public class PaymentFilter {
+    private TransactionStatus status;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime from;
+    @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME)
+    private LocalDateTime to;
+    private Long parentId;
+    private Long studentId;
+}
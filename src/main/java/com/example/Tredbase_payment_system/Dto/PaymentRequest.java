@@ -1,5 +1,6 @@
 package com.example.Tredbase_payment_system.Dto;
 
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
 import lombok.*;
 
 
@@ -7,5 +8,7 @@ import lombok.*;
 public class PaymentRequest {
     private Long parentId;
     private Long studentId;
-    private Double paymentAmount;
+    // Minor units (cents); a decimal number in JSON
+    @JsonMoney
+    private Long paymentAmount;
 }
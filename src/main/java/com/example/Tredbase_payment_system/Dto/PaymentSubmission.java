@@ -0,0 +1,29 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.SubmissionStatus;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+
+// Snapshot of an asynchronous payment; a new snapshot replaces the old one on every status change
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PaymentSubmission {
+    private String id;
+    private SubmissionStatus status;
+    private Long parentId;
+    private Long studentId;
+    // Minor units (cents); a decimal number in JSON
+    @JsonMoney
+    private Long paymentAmount;
+    private LocalDateTime submittedAt;
+    // Set once SUCCEEDED
+    private Long paymentId;
+    // Set once FAILED
+    private PaymentFailureReason reason;
+    private String message;
+}
@@ -0,0 +1,35 @@
+package com.example.Tredbase_payment_system.Dto;
+
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import lombok.*;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/*
+  Outcome of one reconciliation run. Payments in (fromPaymentId, toPaymentId] were streamed;
+  the ledger totals cover every SUCCESS payment. Only the first discrepancies found are listed
+  (payment.reconciliation.max-reported), discrepancyCount counts all of them.
+ */
+@Data
+@NoArgsConstructor
+public class ReconciliationReport {
+    private boolean full;
+    private long fromPaymentId;
+    private long toPaymentId;
+    private long paymentsChecked;
+    private long parentsChecked;
+    private long studentsChecked;
+    private int partitions;
+    private long successfulPayments;
+    @JsonMoney
+    private long creditedAmount;
+    @JsonMoney
+    private long feeAmount;
+    @JsonMoney
+    private long debitedAmount;
+    private long discrepancyCount;
+    private List<Discrepancy> discrepancies;
+    private long elapsedMillis;
+    private LocalDateTime completedAt;
+}
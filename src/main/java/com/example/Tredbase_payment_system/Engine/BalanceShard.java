@@ -0,0 +1,144 @@
+package com.example.Tredbase_payment_system.Engine;
+
+import java.util.Arrays;
+
+/*
+  One shard of ShardedBalanceEngine: the balances of the accounts hashed to it, in flat arrays.
+  A shard is only ever touched by its owning thread, so nothing here is synchronized or volatile.
+  Keys are open-addressed with linear probing (stored as key + 1, so 0 marks a free slot); the
+  dirty list remembers which accounts changed since the last drain.
+ */
+final class BalanceShard {
+
+    static final long NO_ACCOUNT = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] balances;
+    private boolean[] dirty;
+    private int[] dirtySlots;
+    private int dirtyCount;
+    private int size;
+    private int mask;
+
+    BalanceShard(int expectedAccounts) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, expectedAccounts) * 2 - 1) << 1));
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(long key) {
+        return keys[slotOf(key)] != 0;
+    }
+
+    long balance(long key) {
+        int slot = slotOf(key);
+        return keys[slot] == 0 ? NO_ACCOUNT : balances[slot];
+    }
+
+    // Adds the account unless it is already present; loading does not make it dirty
+    boolean loadIfAbsent(long key, long balance) {
+        int slot = slotOf(key);
+        if (keys[slot] != 0) {
+            return false;
+        }
+        keys[slot] = key + 1;
+        balances[slot] = balance;
+        if (++size * 2 > keys.length) {
+            allocate(keys.length * 2);
+        }
+        return true;
+    }
+
+    boolean covers(long key, long amount) {
+        int slot = slotOf(key);
+        return keys[slot] != 0 && balances[slot] >= amount;
+    }
+
+    // The account must be present: a change written to a free slot belongs to no key and would be lost
+    void add(long key, long delta) {
+        int slot = slotOf(key);
+        if (keys[slot] == 0) {
+            throw new IllegalStateException("Account " + key + " is not loaded");
+        }
+        balances[slot] += delta;
+        markDirty(slot);
+    }
+
+    void markDirty(long key) {
+        int slot = slotOf(key);
+        if (keys[slot] != 0) {
+            markDirty(slot);
+        }
+    }
+
+    // Keys and balances of the accounts changed since the last drain, index-aligned
+    long[][] drainDirty() {
+        long[] changedKeys = new long[dirtyCount];
+        long[] changedBalances = new long[dirtyCount];
+        for (int i = 0; i < dirtyCount; i++) {
+            int slot = dirtySlots[i];
+            changedKeys[i] = keys[slot] - 1;
+            changedBalances[i] = balances[slot];
+            dirty[slot] = false;
+        }
+        dirtyCount = 0;
+        return new long[][]{changedKeys, changedBalances};
+    }
+
+    void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(dirty, false);
+        dirtyCount = 0;
+        size = 0;
+    }
+
+    private void markDirty(int slot) {
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            dirtySlots[dirtyCount++] = slot;
+        }
+    }
+
+    // Slot holding the key, or the free slot where it would go
+    private int slotOf(long key) {
+        long stored = key + 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != 0 && keys[slot] != stored) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Rehashes into arrays of the given (power of two) capacity, keeping balances and dirty marks
+    private void allocate(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldBalances = balances;
+        boolean[] oldDirty = dirty;
+        keys = new long[capacity];
+        balances = new long[capacity];
+        dirty = new boolean[capacity];
+        dirtySlots = new int[capacity];
+        dirtyCount = 0;
+        mask = capacity - 1;
+        if (oldKeys == null) {
+            return;
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i] - 1);
+                keys[slot] = oldKeys[i];
+                balances[slot] = oldBalances[i];
+                if (oldDirty[i]) {
+                    markDirty(slot);
+                }
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,592 @@
+package com.example.Tredbase_payment_system.Engine;
+
+import com.example.Tredbase_payment_system.Dto.Guardians;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import com.example.Tredbase_payment_system.Journal.JournalManager;
+import com.example.Tredbase_payment_system.Journal.JournalRecord;
+import com.example.Tredbase_payment_system.Repository.PaymentRepository;
+import com.example.Tredbase_payment_system.Service.FamilyGraphCache;
+import com.example.Tredbase_payment_system.Service.FeeEngine;
+import com.example.Tredbase_payment_system.Service.IdempotencyIndex;
+import com.example.Tredbase_payment_system.Service.LedgerAggregateService;
+import com.example.Tredbase_payment_system.Service.PaymentEvents;
+import com.example.Tredbase_payment_system.Service.PaymentMetrics;
+import com.example.Tredbase_payment_system.Service.PaymentSplitter;
+import com.example.Tredbase_payment_system.Utils.Money;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Optional settlement path (payment.engine.enabled=true) that keeps every parent and student
+  balance in a ShardedBalanceEngine and settles payments there, without Hibernate or SQL.
+  Validation, fees and splits are the same as PaymentService's; only the balance check and the
+  debits and credit run in memory.
+
+  The database is brought up to date by a checkpoint every payment.engine.checkpoint-interval-ms:
+  the changed balances, the payments settled since the last checkpoint and their reporting
+  aggregates are written with JDBC batches in one transaction, from a consistent cut of the engine.
+  While enabled, the engine owns the balances: the balance columns lag by up to one interval and
+  writes to them from elsewhere are overwritten. Successful payments get their id when settled, from
+  blocks of payment_id_seq values taken payment.engine.id-block-size at a time, and keep it in the table.
+  With the journal enabled, a payment is acknowledged only once its record is durable, as on the
+  JPA path. Accounts created after startup are loaded on first use. A student's school and tier
+  (its fee profile) are cached with its balance and read again after Hibernate updates the student,
+  or after invalidateFeeProfile() for changes made with SQL.
+  A payment row the database refuses (a constraint violation) is quarantined rather than retried
+  with the whole batch: it is logged, kept in memory with its idempotency key still reserved and
+  counted by payment.engine.quarantined, and every other payment is written.
+ */
+@Component
+public class InMemorySettlement implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemorySettlement.class);
+
+    private static final String INSERT_PAYMENT = "INSERT INTO payment " +
+            "(id, parent_id, student_id, amount, fee, status, payment_date, description, idempotency_key) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String NEXT_PAYMENT_IDS = "SELECT NEXT VALUE FOR payment_id_seq FROM SYSTEM_RANGE(1, ?)";
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private FamilyGraphCache familyGraph;
+    @Autowired
+    private FeeEngine feeEngine;
+    @Autowired
+    private LedgerAggregateService ledgerAggregates;
+    @Autowired
+    private JournalManager journal;
+    @Autowired
+    private PaymentMetrics metrics;
+    @Autowired
+    private PaymentRepository paymentRepo;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${payment.engine.enabled:false}")
+    private boolean enabled;
+    @Value("${payment.engine.shards:4}")
+    private int shardCount;
+    @Value("${payment.engine.checkpoint-interval-ms:100}")
+    private long checkpointIntervalMs;
+    @Value("${payment.engine.id-block-size:1000}")
+    private int idBlockSize;
+
+    private record Settled(Payment payment, ParentDebits debits) {
+    }
+
+    private record FeeProfile(String school, String tier) {
+    }
+
+    private ShardedBalanceEngine engine;
+    private Thread checkpointer;
+    // Counted down on stop, so the checkpointer does not sleep out its interval
+    private CountDownLatch stopping;
+    private volatile boolean running;
+
+    // Settled payments not yet checkpointed, and the idempotency keys they hold until then
+    private final ConcurrentLinkedQueue<Settled> pending = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, Payment> pendingKeys = new ConcurrentHashMap<>();
+    // Payments whose row the database refused; their keys stay in pendingKeys
+    private final ConcurrentLinkedQueue<Settled> quarantined = new ConcurrentLinkedQueue<>();
+    // Checkpoints that committed payments; bumped after the commit and before their keys are released
+    private final AtomicLong checkpoints = new AtomicLong();
+    // School and tier per student, dropped whenever Hibernate updates or deletes the student
+    private final ConcurrentHashMap<Long, FeeProfile> feeProfiles = new ConcurrentHashMap<>();
+    // Bumped by every profile invalidation, so a load that overlaps one does not cache what it read
+    private final AtomicLong profileStamp = new AtomicLong();
+
+    // Payment ids taken from the sequence but not handed out yet; not the checkpoint's lock
+    private final Object idLock = new Object();
+    private long[] paymentIds = new long[0];
+    private int nextPaymentId;
+
+    @PostConstruct
+    void registerProfileListener() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        ProfileListener listener = new ProfileListener();
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // For school or tier changes made outside JPA; the next payment for the student reads them again
+    public void invalidateFeeProfile(Long studentId) {
+        profileStamp.incrementAndGet();
+        feeProfiles.remove(studentId);
+    }
+
+    // For payments without an idempotency key (batch items), which no checkpoint can race with
+    public Payment settle(Payment payment) {
+        return settle(payment, checkpoints());
+    }
+
+    /*
+      Settles payment (parent, student, amount and idempotency key already set) and fills in the rest.
+      Returns payment, or the payment that already holds its idempotency key.
+      checkpointsBefore is checkpoints() as read before the caller looked the key up in the database:
+      if a checkpoint committed since, the key may have moved from pendingKeys to the table in
+      between, so the table is asked again before the payment is charged.
+      Throws PaymentException with the same reasons and messages as PaymentService.
+     */
+    public Payment settle(Payment payment, long checkpointsBefore) {
+        Long parentId = payment.getParentId();
+        Long studentId = payment.getStudentId();
+        Long paymentAmount = payment.getAmount();
+        // Checked in PaymentService's order; the parent is only looked up when something is wrong
+        if (parentId == null) {
+            throw parentNotFound(parentId);
+        }
+        FeeProfile profile = studentId == null ? null : ensureStudent(studentId);
+        if (profile == null) {
+            throw ensureParent(parentId) ? new PaymentException(PaymentFailureReason.STUDENT_NOT_FOUND,
+                    "Student not found with ID: " + studentId) : parentNotFound(parentId);
+        }
+        Guardians guardians = familyGraph.guardiansOf(studentId);
+        if (!guardians.includes(parentId)) {
+            throw ensureParent(parentId) ? new PaymentException(PaymentFailureReason.NOT_ASSOCIATED, String.format(
+                    "Parent (ID=%d) not associated with Student (ID=%d).", parentId, studentId)) : parentNotFound(parentId);
+        }
+        if (paymentAmount == null) {
+            throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount is required.");
+        }
+        if (paymentAmount <= 0) {
+            throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount must be greater than zero.");
+        }
+        long adjustedAmount = feeEngine.adjustedAmount(paymentAmount, profile.school(), profile.tier(),
+                LocalDate.now().toEpochDay());
+        ParentDebits debits = PaymentSplitter.shares(parentId, guardians, adjustedAmount);
+
+        String idempotencyKey = payment.getIdempotencyKey();
+        if (idempotencyKey != null) {
+            Payment holder = pendingKeys.putIfAbsent(idempotencyKey, payment);
+            if (holder == null && checkpoints.get() != checkpointsBefore) {
+                holder = paymentRepo.findByIdempotencyKey(idempotencyKey).orElse(null);
+                if (holder != null) {
+                    pendingKeys.remove(idempotencyKey, payment);
+                }
+            }
+            if (holder != null) {
+                return IdempotencyIndex.checkSameRequest(holder, parentId, studentId, paymentAmount);
+            }
+        }
+        long[] debitKeys = new long[debits.size()];
+        for (int i = 0; i < debitKeys.length; i++) {
+            debitKeys[i] = ShardedBalanceEngine.key(debits.parentId(i), ShardedBalanceEngine.PARENT);
+        }
+        // Before the transfer: the checkpoint may write the payment as soon as it is applied
+        payment.setId(nextPaymentId());
+        payment.setFee(adjustedAmount - paymentAmount);
+        payment.setStatus(TransactionStatus.SUCCESS);
+        payment.setPaymentDate(LocalDateTime.now());
+        payment.setDescription("Payment processed successfully.");
+        long studentKey = ShardedBalanceEngine.key(studentId, ShardedBalanceEngine.STUDENT);
+        Runnable onApplied = () -> pending.add(new Settled(payment, debits));
+        int shortfall = engine.transfer(debitKeys, debits.amounts(), studentKey, paymentAmount, onApplied);
+        if (shortfall == ShardedBalanceEngine.MISSING_CREDIT && loadStudent(studentId)) {
+            // A reload dropped the student after its fee profile was read
+            shortfall = engine.transfer(debitKeys, debits.amounts(), studentKey, paymentAmount, onApplied);
+        }
+        if (shortfall >= 0 && loadParents(debits)) {
+            // A parent created after startup was not loaded yet
+            shortfall = engine.transfer(debitKeys, debits.amounts(), studentKey, paymentAmount, onApplied);
+        }
+        if (shortfall != -1) {
+            if (idempotencyKey != null) {
+                pendingKeys.remove(idempotencyKey, payment);
+            }
+            payment.setId(null);
+            payment.setStatus(null);
+            payment.setFee(null);
+            if (shortfall == ShardedBalanceEngine.MISSING_CREDIT) {
+                throw new PaymentException(PaymentFailureReason.STUDENT_NOT_FOUND, "Student not found with ID: " + studentId);
+            }
+            if (guardians.size() < 2) {
+                throw new PaymentException(PaymentFailureReason.INSUFFICIENT_BALANCE,
+                        "Insufficient balance for parent ID: " + debits.parentId(shortfall));
+            }
+            throw PaymentSplitter.sharedParentShortfall(debits.parentId(shortfall));
+        }
+        journal.record(List.of(JournalRecord.success(payment, debits)));
+        PaymentEvents.succeeded(payment, adjustedAmount, debits);
+        return payment;
+    }
+
+    // Current in-memory balance, or null if the account is not loaded
+    public Long parentBalance(long parentId) {
+        return balance(ShardedBalanceEngine.key(parentId, ShardedBalanceEngine.PARENT));
+    }
+
+    public Long studentBalance(long studentId) {
+        return balance(ShardedBalanceEngine.key(studentId, ShardedBalanceEngine.STUDENT));
+    }
+
+    public int pending() {
+        return pending.size();
+    }
+
+    public int quarantined() {
+        return quarantined.size();
+    }
+
+    // Number of checkpoints that have committed payments so far, see settle
+    public long checkpoints() {
+        return checkpoints.get();
+    }
+
+    /*
+      Writes the balances changed and the payments settled since the previous checkpoint.
+      A constraint violation is narrowed down to the refused payment rows, which are quarantined,
+      and the rest is written. Any other failure leaves everything pending for the next checkpoint.
+     */
+    public synchronized void checkpoint() {
+        if (engine == null) {
+            return;
+        }
+        long started = System.nanoTime();
+        List<Settled> settled = new ArrayList<>();
+        long[][] changed = engine.checkpoint(() -> {
+            Settled next;
+            while ((next = pending.poll()) != null) {
+                settled.add(next);
+            }
+        });
+        if (changed[0].length == 0 && settled.isEmpty()) {
+            return;
+        }
+        try {
+            try {
+                transactionTemplate.executeWithoutResult(status -> write(changed[0], changed[1], settled));
+            } catch (DataIntegrityViolationException ex) {
+                quarantine(settled, ex);
+                transactionTemplate.executeWithoutResult(status -> write(changed[0], changed[1], settled));
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Balance engine checkpoint of {} accounts and {} payments failed, will retry",
+                    changed[0].length, settled.size(), ex);
+            engine.markDirty(changed[0]);
+            pending.addAll(settled);
+            return;
+        }
+        if (!settled.isEmpty()) {
+            checkpoints.incrementAndGet();
+        }
+        for (Settled done : settled) {
+            if (done.payment.getIdempotencyKey() != null) {
+                pendingKeys.remove(done.payment.getIdempotencyKey(), done.payment);
+            }
+        }
+        metrics.engineCheckpointed(started);
+    }
+
+    /*
+      Checkpoints, then reloads every balance from the database.
+      For balances changed outside the engine, e.g. seeded with SQL. Returns the number of accounts.
+     */
+    public synchronized int reload() {
+        checkpoint();
+        engine.clear();
+        feeProfiles.clear();
+        jdbcTemplate.query("SELECT id, balance FROM parent", rs -> {
+            engine.load(ShardedBalanceEngine.key(rs.getLong(1), ShardedBalanceEngine.PARENT),
+                    Money.fromDecimal(rs.getBigDecimal(2)));
+        });
+        jdbcTemplate.query("SELECT student_id, balance, school, tier FROM student", rs -> {
+            long studentId = rs.getLong(1);
+            feeProfiles.put(studentId, new FeeProfile(rs.getString(3), rs.getString(4)));
+            engine.load(ShardedBalanceEngine.key(studentId, ShardedBalanceEngine.STUDENT),
+                    Money.fromDecimal(rs.getBigDecimal(2)));
+        });
+        return engine.size();
+    }
+
+    // Starts after journal recovery (all singletons exist) and before the web server takes requests
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Integer accounts = jdbcTemplate.queryForObject(
+                "SELECT (SELECT COUNT(*) FROM parent) + (SELECT COUNT(*) FROM student)", Integer.class);
+        engine = new ShardedBalanceEngine(shardCount, accounts == null ? 0 : accounts);
+        long loadStart = System.nanoTime();
+        int loaded = reload();
+        logger.info("Balance engine loaded {} accounts into {} shards in {} ms", loaded, shardCount,
+                (System.nanoTime() - loadStart) / 1_000_000);
+        metrics.bindEnginePending(pending, quarantined);
+        running = true;
+        stopping = new CountDownLatch(1);
+        checkpointer = Thread.ofPlatform().name("balance-engine-checkpoint").daemon().start(this::runCheckpoints);
+    }
+
+    // Stops after the web server, so the final checkpoint covers every acknowledged payment
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        stopping.countDown();
+        try {
+            checkpointer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        checkpoint();
+        try {
+            engine.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void runCheckpoints() {
+        while (running) {
+            try {
+                if (stopping.await(checkpointIntervalMs, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            checkpoint();
+        }
+    }
+
+    private void write(long[] keys, long[] balances, List<Settled> settled) {
+        List<Object[]> parentRows = new ArrayList<>();
+        List<Object[]> studentRows = new ArrayList<>();
+        for (int i = 0; i < keys.length; i++) {
+            Object[] row = {Money.toDecimal(balances[i]), ShardedBalanceEngine.idOf(keys[i])};
+            (ShardedBalanceEngine.typeOf(keys[i]) == ShardedBalanceEngine.PARENT ? parentRows : studentRows).add(row);
+        }
+        List<Object[]> paymentRows = new ArrayList<>(settled.size());
+        LedgerAggregateService.Deltas aggregates = ledgerAggregates.newDeltas();
+        for (Settled done : settled) {
+            Payment payment = done.payment;
+            paymentRows.add(paymentRow(payment));
+            aggregates.success(payment.getPaymentDate(), payment.getStudentId(), payment.getAmount(), done.debits);
+        }
+        // Versions are bumped so a JPA entity loaded before the checkpoint cannot overwrite it
+        batch("UPDATE parent SET balance = ?, version = version + 1 WHERE id = ?", parentRows);
+        batch("UPDATE student SET balance = ?, version = version + 1 WHERE student_id = ?", studentRows);
+        batch(INSERT_PAYMENT, paymentRows);
+        ledgerAggregates.apply(aggregates);
+    }
+
+    /*
+      Inserts each payment row on its own in a transaction that is rolled back, and moves the ones
+      the database refuses from settled to quarantined. Their balances stay with the engine, so
+      the reconciliation reports them until the row is repaired by hand.
+     */
+    private void quarantine(List<Settled> settled, DataIntegrityViolationException cause) {
+        logger.warn("Balance engine checkpoint of {} payments refused, isolating the offending rows: {}",
+                settled.size(), cause.getMostSpecificCause().getMessage());
+        for (Iterator<Settled> it = settled.iterator(); it.hasNext(); ) {
+            Settled done = it.next();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    jdbcTemplate.update(INSERT_PAYMENT, paymentRow(done.payment));
+                    status.setRollbackOnly();
+                });
+            } catch (DataIntegrityViolationException ex) {
+                it.remove();
+                quarantined.add(done);
+                logger.error("Balance engine payment {} (parent {}, student {}, amount {}, key {}) quarantined: {}",
+                        done.payment.getId(), done.payment.getParentId(), done.payment.getStudentId(),
+                        Money.format(done.payment.getAmount()), done.payment.getIdempotencyKey(),
+                        ex.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    private static Object[] paymentRow(Payment payment) {
+        return new Object[]{
+                payment.getId(),
+                payment.getParentId(),
+                payment.getStudentId(),
+                Money.toDecimal(payment.getAmount()),
+                Money.toDecimal(payment.getFee()),
+                payment.getStatus().name(),
+                Timestamp.valueOf(payment.getPaymentDate()),
+                payment.getDescription(),
+                payment.getIdempotencyKey()
+        };
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    // Next id from the current block; a used-up block is replaced with one query
+    private long nextPaymentId() {
+        synchronized (idLock) {
+            if (nextPaymentId == paymentIds.length) {
+                paymentIds = jdbcTemplate.queryForList(NEXT_PAYMENT_IDS, Long.class, idBlockSize).stream()
+                        .mapToLong(Long::longValue).toArray();
+                nextPaymentId = 0;
+            }
+            return paymentIds[nextPaymentId++];
+        }
+    }
+
+    private Long balance(long key) {
+        long balance = engine.balance(key);
+        return balance == ShardedBalanceEngine.NO_ACCOUNT ? null : balance;
+    }
+
+    private static PaymentException parentNotFound(Long parentId) {
+        return new PaymentException(PaymentFailureReason.PARENT_NOT_FOUND, "Parent not found with ID: " + parentId);
+    }
+
+    // Loads the debited parents that are missing from the engine; true if any was loaded
+    private boolean loadParents(ParentDebits debits) {
+        boolean loaded = false;
+        for (int i = 0; i < debits.size(); i++) {
+            long key = ShardedBalanceEngine.key(debits.parentId(i), ShardedBalanceEngine.PARENT);
+            loaded |= !engine.contains(key) && ensureParent(debits.parentId(i));
+        }
+        return loaded;
+    }
+
+    // Loads a parent created after startup; false if it does not exist
+    private boolean ensureParent(long parentId) {
+        long key = ShardedBalanceEngine.key(parentId, ShardedBalanceEngine.PARENT);
+        if (engine.contains(key)) {
+            return true;
+        }
+        List<Long> balances = jdbcTemplate.query("SELECT balance FROM parent WHERE id = ?",
+                (rs, row) -> Money.fromDecimal(rs.getBigDecimal(1)), parentId);
+        if (balances.isEmpty()) {
+            return false;
+        }
+        engine.load(key, balances.get(0));
+        return true;
+    }
+
+    // Loads a student missing from the engine whose fee profile is already known; false if it no longer exists
+    private boolean loadStudent(long studentId) {
+        List<Long> balances = jdbcTemplate.query("SELECT balance FROM student WHERE student_id = ?",
+                (rs, row) -> Money.fromDecimal(rs.getBigDecimal(1)), studentId);
+        if (balances.isEmpty()) {
+            return false;
+        }
+        engine.load(ShardedBalanceEngine.key(studentId, ShardedBalanceEngine.STUDENT), balances.get(0));
+        return true;
+    }
+
+    // Fee profile of the student, loading a student created after startup; null if it does not exist
+    private FeeProfile ensureStudent(long studentId) {
+        FeeProfile profile = feeProfiles.get(studentId);
+        if (profile != null) {
+            return profile;
+        }
+        long stamp = profileStamp.get();
+        List<FeeProfile> found = jdbcTemplate.query("SELECT balance, school, tier FROM student WHERE student_id = ?",
+                (rs, row) -> {
+                    engine.load(ShardedBalanceEngine.key(studentId, ShardedBalanceEngine.STUDENT),
+                            Money.fromDecimal(rs.getBigDecimal(1)));
+                    return new FeeProfile(rs.getString(2), rs.getString(3));
+                }, studentId);
+        if (found.isEmpty()) {
+            return null;
+        }
+        // As in FamilyGraphCache: checked before and after the put, so an invalidation in between wins
+        profile = found.get(0);
+        if (profileStamp.get() == stamp) {
+            feeProfiles.put(studentId, profile);
+            if (profileStamp.get() != stamp) {
+                feeProfiles.remove(studentId, profile);
+            }
+        }
+        return profile;
+    }
+
+    // Drops a student's fee profile when Hibernate updates or deletes it, now and again after commit
+    private class ProfileListener implements PostUpdateEventListener, PostDeleteEventListener {
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            onChange(event.getEntity());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            onChange(event.getEntity());
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+
+        private void onChange(Object entity) {
+            if (!(entity instanceof Student student) || student.getStudentId() == null) {
+                return;
+            }
+            Long studentId = student.getStudentId();
+            invalidateFeeProfile(studentId);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        invalidateFeeProfile(studentId);
+                    }
+                });
+            }
+        }
+    }
+}
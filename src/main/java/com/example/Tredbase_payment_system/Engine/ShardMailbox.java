@@ -0,0 +1,247 @@
+package com.example.Tredbase_payment_system.Engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+  The owning thread of one BalanceShard and the ring of requests it serves.
+  Requests are preallocated slots that callers fill with an operation code and its arguments,
+  so handing work to the owner allocates nothing. A caller claims a ticket, waits until the
+  slot for that ticket is free (the ring is full otherwise), fills it and publishes it; the owner
+  runs the slots strictly in ticket order, so everything one caller sends to a shard is applied
+  in the order sent, even the requests it does not wait for (post).
+  Both sides spin briefly before parking (on a multi-core machine): the owner when the ring is
+  empty, a caller while its request runs.
+  Slot protocol (per slot, ticket t, ring size N): seq == t means free for ticket t, seq == t + 1
+  means published; a waited-for request is marked done by the owner and freed (seq = t + N) by
+  its caller, a posted one is freed by the owner.
+ */
+final class ShardMailbox {
+
+    static final int CONTAINS = 0;
+    static final int BALANCE = 1;
+    static final int LOAD = 2;
+    static final int SIZE = 3;
+    static final int DEBIT = 4;
+    static final int DEBIT_AND_CREDIT = 5;
+    static final int REFUND = 6;
+    static final int CREDIT = 7;
+    static final int MARK_DIRTY = 8;
+    static final int CLEAR = 9;
+    static final int DRAIN = 10;
+
+    // Result of DEBIT_AND_CREDIT when the credited account is not loaded (-1 is success, >= 0 a shortfall)
+    static final int MISSING_CREDIT = -2;
+
+    // Spinning only pays off when the other side can run meanwhile; on one CPU it just delays it
+    private static final int SPINS = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+
+    static final class Request {
+        volatile long seq;
+        volatile boolean done;
+        long ticket;
+        int op;
+        long key;
+        long amount;
+        // DEBIT, DEBIT_AND_CREDIT and REFUND: the transfer's debits and the shard of each
+        int[] debitShards;
+        long[] debitKeys;
+        long[] debitAmounts;
+        boolean posted;
+        Thread waiter;
+        long result;
+        Object resultRef;
+        RuntimeException failure;
+    }
+
+    private final BalanceShard shard;
+    private final int index;
+    private final Request[] ring;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final Thread owner;
+    // Owner only: ticket of the next slot to run
+    private long head;
+    private volatile boolean sleeping;
+    private volatile boolean running = true;
+
+    ShardMailbox(BalanceShard shard, int index, int capacity) {
+        this.shard = shard;
+        this.index = index;
+        ring = new Request[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Request();
+            ring[i].seq = i;
+        }
+        owner = Thread.ofPlatform().name("balance-shard-" + index).daemon().start(this::run);
+    }
+
+    // A free slot for the caller to fill, then send (and await) or post
+    Request claim() {
+        long ticket = tail.getAndIncrement();
+        Request request = ring[(int) (ticket & mask)];
+        for (int spins = 0; request.seq != ticket; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        request.ticket = ticket;
+        return request;
+    }
+
+    // Publishes a request the caller will await
+    void send(Request request) {
+        request.posted = false;
+        request.waiter = Thread.currentThread();
+        publish(request);
+    }
+
+    // Publishes a request nobody waits for; it still runs before anything sent to this shard later
+    void post(Request request) {
+        request.posted = true;
+        request.waiter = null;
+        publish(request);
+    }
+
+    long await(Request request) {
+        waitDone(request);
+        long result = request.result;
+        release(request);
+        return result;
+    }
+
+    Object awaitRef(Request request) {
+        waitDone(request);
+        Object result = request.resultRef;
+        release(request);
+        return result;
+    }
+
+    void close() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(owner);
+        owner.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void publish(Request request) {
+        request.seq = request.ticket + 1;
+        if (sleeping) {
+            LockSupport.unpark(owner);
+        }
+    }
+
+    private void waitDone(Request request) {
+        for (int spins = 0; !request.done; spins++) {
+            if (spins < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private void release(Request request) {
+        RuntimeException failure = request.failure;
+        request.failure = null;
+        request.resultRef = null;
+        request.waiter = null;
+        request.done = false;
+        request.seq = request.ticket + ring.length;
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void run() {
+        int idle = 0;
+        while (running) {
+            Request request = ring[(int) (head & mask)];
+            if (request.seq == head + 1) {
+                execute(request);
+                head++;
+                idle = 0;
+            } else if (idle++ < SPINS) {
+                Thread.onSpinWait();
+            } else {
+                // Published after this flag is visible: the caller unparks us
+                sleeping = true;
+                if (request.seq != head + 1 && running) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+            }
+        }
+    }
+
+    private void execute(Request request) {
+        try {
+            switch (request.op) {
+                case CONTAINS -> request.result = shard.contains(request.key) ? 1 : 0;
+                case BALANCE -> request.result = shard.balance(request.key);
+                case LOAD -> request.result = shard.loadIfAbsent(request.key, request.amount) ? 1 : 0;
+                case SIZE -> request.result = shard.size();
+                case DEBIT -> request.result = debit(request);
+                case DEBIT_AND_CREDIT -> {
+                    // Checked before any debit, so a missing credit account leaves the shard untouched
+                    request.result = shard.contains(request.key) ? debit(request) : MISSING_CREDIT;
+                    if (request.result == -1) {
+                        shard.add(request.key, request.amount);
+                    }
+                }
+                case REFUND -> refund(request);
+                case CREDIT -> shard.add(request.key, request.amount);
+                case MARK_DIRTY -> shard.markDirty(request.key);
+                case CLEAR -> shard.clear();
+                case DRAIN -> request.resultRef = shard.drainDirty();
+                default -> throw new IllegalArgumentException("Unknown shard operation " + request.op);
+            }
+        } catch (RuntimeException ex) {
+            if (request.posted) {
+                // Nobody waits for it; report it like an uncaught exception but keep serving the shard
+                owner.getUncaughtExceptionHandler().uncaughtException(owner, ex);
+            } else {
+                request.failure = ex;
+            }
+        }
+        request.debitShards = null;
+        request.debitKeys = null;
+        request.debitAmounts = null;
+        if (request.posted) {
+            request.seq = request.ticket + ring.length;
+        } else {
+            Thread waiter = request.waiter;
+            request.done = true;
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    // Checks, then applies, the debits that live on this shard; returns the first shortfall or -1
+    private int debit(Request request) {
+        int[] debitShards = request.debitShards;
+        long[] keys = request.debitKeys;
+        long[] amounts = request.debitAmounts;
+        for (int i = 0; i < keys.length; i++) {
+            if (debitShards[i] == index && !shard.covers(keys[i], amounts[i])) {
+                return i;
+            }
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (debitShards[i] == index) {
+                shard.add(keys[i], -amounts[i]);
+            }
+        }
+        return -1;
+    }
+
+    private void refund(Request request) {
+        for (int i = 0; i < request.debitKeys.length; i++) {
+            if (request.debitShards[i] == index) {
+                shard.add(request.debitKeys[i], request.debitAmounts[i]);
+            }
+        }
+    }
+}
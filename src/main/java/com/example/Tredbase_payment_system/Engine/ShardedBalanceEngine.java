@@ -0,0 +1,273 @@
+package com.example.Tredbase_payment_system.Engine;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+  In-memory parent and student balances, split over shards that are each owned by one thread.
+  Every read or write of a shard runs on its owner, so a shard needs no locks and a debit's
+  balance check and update are atomic by construction. Work reaches an owner through its
+  ShardMailbox, a preallocated ring of request slots, so an access allocates nothing.
+
+  A transfer debits one or more parents and credits one student. When all of its accounts live
+  on one shard it is a single request; otherwise the debits go to all of their shards at once
+  and, if one falls short, the debits already made are refunded before the transfer is rejected.
+  The student is credited last, so it never sees money that is taken back. Its account is checked
+  alongside the debits, and a transfer to an account that is not loaded (e.g. dropped by clear())
+  is rejected like a shortfall rather than credited to no one. Refunds and the credit are posted
+  without waiting: a shard runs its requests in order, so any read or checkpoint that starts
+  afterwards still sees them, and clear() cannot drop the credited account in between.
+
+  checkpoint() takes a consistent cut: it waits for in-flight transfers (a read/write lock that
+  transfers share and the checkpoint holds exclusively), collects every account changed since
+  the previous cut and runs a callback at the same instant, so the caller can pair the balances
+  with exactly the payments that produced them.
+  Pure Java and independent of Spring, so it is benchmarked on its own as well.
+ */
+public final class ShardedBalanceEngine implements AutoCloseable {
+
+    public static final int PARENT = 0;
+    public static final int STUDENT = 1;
+    public static final long NO_ACCOUNT = BalanceShard.NO_ACCOUNT;
+    // transfer() result when the credited account is not loaded
+    public static final int MISSING_CREDIT = ShardMailbox.MISSING_CREDIT;
+    // Requests a shard can hold before a caller waits for a free slot (a power of two)
+    private static final int MAILBOX_CAPACITY = 1024;
+
+    private final BalanceShard[] shards;
+    private final ShardMailbox[] mailboxes;
+    private final ReentrantReadWriteLock cut = new ReentrantReadWriteLock();
+
+    public ShardedBalanceEngine(int shardCount, int expectedAccounts) {
+        shards = new BalanceShard[shardCount];
+        mailboxes = new ShardMailbox[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new BalanceShard(expectedAccounts / shardCount);
+            mailboxes[i] = new ShardMailbox(shards[i], i, MAILBOX_CAPACITY);
+        }
+    }
+
+    // Parents and students live in separate key spaces
+    public static long key(long id, int accountType) {
+        return id * 2 + accountType;
+    }
+
+    public static long idOf(long key) {
+        return key >> 1;
+    }
+
+    public static int typeOf(long key) {
+        return (int) (key & 1);
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public boolean contains(long key) {
+        return call(shardOf(key), ShardMailbox.CONTAINS, key, 0) != 0;
+    }
+
+    // Balance in minor units, or NO_ACCOUNT
+    public long balance(long key) {
+        return call(shardOf(key), ShardMailbox.BALANCE, key, 0);
+    }
+
+    // Adds an account unless it is already present (a concurrent load or a settled balance wins)
+    public boolean load(long key, long balance) {
+        return call(shardOf(key), ShardMailbox.LOAD, key, balance) != 0;
+    }
+
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < shards.length; i++) {
+            size += (int) call(i, ShardMailbox.SIZE, 0, 0);
+        }
+        return size;
+    }
+
+    /*
+      Debits debitAmounts[i] from each debitKeys[i] and credits creditAmount to creditKey, all or
+      nothing. Returns -1 on success, after running onApplied while no checkpoint can cut in;
+      MISSING_CREDIT if creditKey is not loaded; otherwise the index of the first debit whose
+      account is missing or cannot cover it.
+      A rejected transfer's refunds may still be running when it returns, so the debit arrays
+      must not be changed afterwards.
+     */
+    public int transfer(long[] debitKeys, long[] debitAmounts, long creditKey, long creditAmount,
+                        Runnable onApplied) {
+        cut.readLock().lock();
+        try {
+            int creditShard = shardOf(creditKey);
+            int[] debitShards = new int[debitKeys.length];
+            boolean single = true;
+            for (int i = 0; i < debitKeys.length; i++) {
+                debitShards[i] = shardOf(debitKeys[i]);
+                single &= debitShards[i] == creditShard;
+            }
+            if (single) {
+                ShardMailbox mailbox = mailboxes[creditShard];
+                ShardMailbox.Request request = debitRequest(mailbox, ShardMailbox.DEBIT_AND_CREDIT,
+                        debitShards, debitKeys, debitAmounts);
+                request.key = creditKey;
+                request.amount = creditAmount;
+                mailbox.send(request);
+                int failed = (int) mailbox.await(request);
+                if (failed == -1) {
+                    onApplied.run();
+                }
+                return failed;
+            }
+
+            // One debit per distinct shard and the credit account's check, all in flight before any is awaited
+            ShardMailbox creditMailbox = mailboxes[creditShard];
+            ShardMailbox.Request creditCheck = creditMailbox.claim();
+            creditCheck.op = ShardMailbox.CONTAINS;
+            creditCheck.key = creditKey;
+            creditMailbox.send(creditCheck);
+            ShardMailbox.Request[] debits = new ShardMailbox.Request[debitKeys.length];
+            for (int i = 0; i < debitKeys.length; i++) {
+                if (firstOnShard(debitShards, i)) {
+                    ShardMailbox mailbox = mailboxes[debitShards[i]];
+                    debits[i] = debitRequest(mailbox, ShardMailbox.DEBIT, debitShards, debitKeys, debitAmounts);
+                    mailbox.send(debits[i]);
+                }
+            }
+            int failed = -1;
+            boolean[] applied = new boolean[debitKeys.length];
+            for (int i = 0; i < debitKeys.length; i++) {
+                if (debits[i] != null) {
+                    int shortfall = (int) mailboxes[debitShards[i]].await(debits[i]);
+                    if (shortfall < 0) {
+                        applied[i] = true;
+                    } else if (failed < 0 || shortfall < failed) {
+                        failed = shortfall;
+                    }
+                }
+            }
+            if (creditMailbox.await(creditCheck) == 0) {
+                failed = MISSING_CREDIT;
+            }
+            if (failed != -1) {
+                for (int i = 0; i < debitKeys.length; i++) {
+                    if (applied[i]) {
+                        ShardMailbox mailbox = mailboxes[debitShards[i]];
+                        mailbox.post(debitRequest(mailbox, ShardMailbox.REFUND, debitShards, debitKeys, debitAmounts));
+                    }
+                }
+                return failed;
+            }
+            ShardMailbox.Request credit = creditMailbox.claim();
+            credit.op = ShardMailbox.CREDIT;
+            credit.key = creditKey;
+            credit.amount = creditAmount;
+            creditMailbox.post(credit);
+            onApplied.run();
+            return -1;
+        } finally {
+            cut.readLock().unlock();
+        }
+    }
+
+    /*
+      Keys and balances of every account changed since the previous checkpoint, index-aligned.
+      atCut runs while no transfer is in flight, after the changes were collected.
+     */
+    public long[][] checkpoint(Runnable atCut) {
+        cut.writeLock().lock();
+        try {
+            ShardMailbox.Request[] drains = new ShardMailbox.Request[shards.length];
+            for (int i = 0; i < shards.length; i++) {
+                drains[i] = mailboxes[i].claim();
+                drains[i].op = ShardMailbox.DRAIN;
+                mailboxes[i].send(drains[i]);
+            }
+            int total = 0;
+            long[][][] drained = new long[shards.length][][];
+            for (int i = 0; i < shards.length; i++) {
+                drained[i] = (long[][]) mailboxes[i].awaitRef(drains[i]);
+                total += drained[i][0].length;
+            }
+            atCut.run();
+
+            long[] keys = new long[total];
+            long[] balances = new long[total];
+            int at = 0;
+            for (long[][] part : drained) {
+                System.arraycopy(part[0], 0, keys, at, part[0].length);
+                System.arraycopy(part[1], 0, balances, at, part[1].length);
+                at += part[0].length;
+            }
+            return new long[][]{keys, balances};
+        } finally {
+            cut.writeLock().unlock();
+        }
+    }
+
+    // Marks accounts changed again, e.g. after a checkpoint failed to write them
+    public void markDirty(long[] keys) {
+        for (long key : keys) {
+            ShardMailbox mailbox = mailboxes[shardOf(key)];
+            ShardMailbox.Request request = mailbox.claim();
+            request.op = ShardMailbox.MARK_DIRTY;
+            request.key = key;
+            mailbox.post(request);
+        }
+    }
+
+    // Drops every account (changes not yet checkpointed are lost)
+    public void clear() {
+        cut.writeLock().lock();
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                call(i, ShardMailbox.CLEAR, 0, 0);
+            }
+        } finally {
+            cut.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        for (ShardMailbox mailbox : mailboxes) {
+            mailbox.close();
+        }
+    }
+
+    private long call(int index, int op, long key, long amount) {
+        ShardMailbox mailbox = mailboxes[index];
+        ShardMailbox.Request request = mailbox.claim();
+        request.op = op;
+        request.key = key;
+        request.amount = amount;
+        mailbox.send(request);
+        return mailbox.await(request);
+    }
+
+    private static ShardMailbox.Request debitRequest(ShardMailbox mailbox, int op, int[] debitShards,
+                                                     long[] debitKeys, long[] debitAmounts) {
+        ShardMailbox.Request request = mailbox.claim();
+        request.op = op;
+        request.debitShards = debitShards;
+        request.debitKeys = debitKeys;
+        request.debitAmounts = debitAmounts;
+        return request;
+    }
+
+    private static boolean firstOnShard(int[] debitShards, int i) {
+        for (int j = 0; j < i; j++) {
+            if (debitShards[j] == debitShards[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Independent of BalanceShard's slot hash, so the keys of one shard still spread over its slots
+    private int shardOf(long key) {
+        long h = key;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) ((h & Long.MAX_VALUE) % shards.length);
+    }
+}
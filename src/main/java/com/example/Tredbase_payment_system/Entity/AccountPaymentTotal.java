@@ -0,0 +1,39 @@
+package com.example.Tredbase_payment_system.Entity;
+
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.MoneyConverter;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+
+/*
+  Running totals of successful payments per account, maintained incrementally by LedgerAggregateService.
+  For a parent: amount debited (fee included). For a student: amount credited.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(AccountPaymentTotal.Key.class)
+public class AccountPaymentTotal {
+    @Id
+    @Enumerated(EnumType.STRING)
+    private AccountType accountType;
+    @Id
+    private Long accountId;
+    private Long paymentCount;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private long totalAmount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private AccountType accountType;
+        private Long accountId;
+    }
+}
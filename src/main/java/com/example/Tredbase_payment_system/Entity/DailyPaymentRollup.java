@@ -0,0 +1,44 @@
+package com.example.Tredbase_payment_system.Entity;
+
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.MoneyConverter;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/*
+  Payment count and amount per day and status, maintained incrementally by LedgerAggregateService.
+  Each (day, status) total is spread over a few buckets so concurrent payments
+  do not all queue on the same row; readers sum the buckets.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@IdClass(DailyPaymentRollup.Key.class)
+public class DailyPaymentRollup {
+    @Id
+    private LocalDate rollupDate;
+    @Id
+    @Enumerated(EnumType.STRING)
+    private TransactionStatus status;
+    @Id
+    private Integer bucket;
+    private Long paymentCount;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private long totalAmount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private LocalDate rollupDate;
+        private TransactionStatus status;
+        private Integer bucket;
+    }
+}
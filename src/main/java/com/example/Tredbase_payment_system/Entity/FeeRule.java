@@ -0,0 +1,31 @@
+package com.example.Tredbase_payment_system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDate;
+
+/*
+  One surcharge rate, compiled into FeeRuleSet by FeeRuleEngine.
+  school and tier are null for "any"; validFrom/validTo (inclusive) are null for an open end.
+  The most specific rule wins: school + tier, then school, then tier, then the catch-all.
+  Among rules of the same specificity covering the day, the highest priority wins.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FeeRule {
+    @Id
+    @GeneratedValue(
+            strategy = GenerationType.IDENTITY
+    )
+    private Long id;
+    private String school;
+    private String tier;
+    private LocalDate validFrom;
+    private LocalDate validTo;
+    // 500 = 5%
+    private int rateBasisPoints;
+    private int priority;
+}
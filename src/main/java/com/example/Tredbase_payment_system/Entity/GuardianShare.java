@@ -0,0 +1,28 @@
+package com.example.Tredbase_payment_system.Entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/*
+  Weight of one parent in the payments for one student (shares are weight / sum of the student's weights).
+  A parent without a row has weight 1, so a family without rows splits equally; weight 0 exempts the parent.
+ */
+@Entity
+@Table(name = "guardian_share", uniqueConstraints = @UniqueConstraint(columnNames = {"student_id", "parent_id"}))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GuardianShare {
+    public static final int DEFAULT_WEIGHT = 1;
+
+    @Id
+    @GeneratedValue(
+            strategy = GenerationType.IDENTITY
+    )
+    private Long id;
+    @Column(nullable = false)
+    private Long studentId;
+    @Column(nullable = false)
+    private Long parentId;
+    private int weight;
+}
@@ -1,4 +1,6 @@
 package com.example.Tredbase_payment_system.Entity;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.MoneyConverter;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -14,5 +16,11 @@ public class Parent {
     )
     private Long id;
     private String name;
-    private Double balance;
+    // Minor units (cents)
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private long balance;
+    @Version
+    private Long version;
 }
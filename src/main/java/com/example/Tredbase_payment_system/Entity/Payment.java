@@ -1,26 +1,50 @@
 package com.example.Tredbase_payment_system.Entity;
 
 import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.MoneyConverter;
 import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
 
 @Entity
+// Per-account history, newest first: equality on the account, then (paymentDate, id) for order and keyset paging
+@Table(indexes = {
+        @Index(name = "idx_payment_parent_date", columnList = "parent_id, payment_date, id"),
+        @Index(name = "idx_payment_student_date", columnList = "student_id, payment_date, id")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class Payment {
+    // One id source for every insert path: JPA, the JDBC writers (column default) and the balance
+    // engine, which takes blocks of ids up front so a payment has its id before it is checkpointed
     @Id
     @GeneratedValue(
-            strategy = GenerationType.IDENTITY
+            strategy = GenerationType.SEQUENCE,
+            generator = "payment_id"
     )
+    @SequenceGenerator(name = "payment_id", sequenceName = "payment_id_seq", allocationSize = 1)
+    @Column(columnDefinition = "bigint default next value for payment_id_seq")
     private Long id;
     private Long parentId;
     private Long studentId;
-    private Double amount;
+    // Minor units (cents); null only on a FAILED record of a request without an amount
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private Long amount;
+    // Minor units debited from the parents on top of amount; set on SUCCESS only
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private Long fee;
     @Enumerated(EnumType.STRING)
     private TransactionStatus status;
     private LocalDateTime paymentDate;
     private String description;
+    // Idempotency-Key of the request that created this payment; unique, so a key can only ever pay once
+    @Column(unique = true, length = 64)
+    private String idempotencyKey;
 }
@@ -0,0 +1,32 @@
+package com.example.Tredbase_payment_system.Entity;
+
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.MoneyConverter;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/*
+  How far ReconciliationService has verified the payment table: the highest payment id covered and
+  the totals of the SUCCESS payments up to it, so an incremental run only streams newer payments.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconciliationWatermark {
+    @Id
+    private String name;
+    private Long lastPaymentId;
+    private Long paymentCount;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private long creditedAmount;
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private long feeAmount;
+    private LocalDateTime completedAt;
+}
@@ -1,22 +1,40 @@
 package com.example.Tredbase_payment_system.Entity;
+import com.example.Tredbase_payment_system.Utils.JsonMoney;
+import com.example.Tredbase_payment_system.Utils.MoneyConverter;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.BatchSize;
 
 import java.util.List;
 
 @Entity
+// Fetch plan for reads that serialize the parents (listings, export)
+@NamedEntityGraph(name = Student.WITH_PARENTS, attributeNodes = @NamedAttributeNode("parents"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Student {
+    public static final String WITH_PARENTS = "Student.withParents";
+
     @Id
     @GeneratedValue(
             strategy = GenerationType.IDENTITY
     )
     private Long studentId;
     private String studentName;
-    private Double balance;
+    // Fee rule keys; null matches only the rules for any school / any tier
+    private String school;
+    private String tier;
+    // Minor units (cents)
+    @Convert(converter = MoneyConverter.class)
+    @Column(precision = 19, scale = 2)
+    @JsonMoney
+    private long balance;
+    @Version
+    private Long version;
+    // Lazy; any access outside a fetch plan initializes the parents of up to 100 loaded students per query
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(
             name = "parent_student",
             joinColumns = @JoinColumn(name = "student_id"),
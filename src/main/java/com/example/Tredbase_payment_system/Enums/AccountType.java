@@ -0,0 +1,6 @@
+package com.example.Tredbase_payment_system.Enums;
+
+public enum AccountType {
+    PARENT,
+    STUDENT
+}
@@ -0,0 +1,14 @@
+package com.example.Tredbase_payment_system.Enums;
+
+// Why a payment was rejected; used as the "reason" tag of the payment metrics
+public enum PaymentFailureReason {
+    PARENT_NOT_FOUND,
+    STUDENT_NOT_FOUND,
+    NOT_ASSOCIATED,
+    INVALID_AMOUNT,
+    INSUFFICIENT_BALANCE,
+    SHARED_PARENT_INSUFFICIENT_BALANCE,
+    CONCURRENT_UPDATE,
+    INVALID_IDEMPOTENCY_KEY,
+    INTERNAL_ERROR
+}
@@ -0,0 +1,15 @@
+package com.example.Tredbase_payment_system.Enums;
+
+// Timed stages of processPayment, in execution order (the numbered steps of settlePayment plus locking and commit)
+public enum PaymentStage {
+    LOCK_WAIT,
+    PARENT_LOOKUP,
+    STUDENT_LOOKUP,
+    ASSOCIATION_CHECK,
+    AMOUNT_CALCULATION,
+    BALANCE_CHECK,
+    PARENT_DEBIT,
+    STUDENT_CREDIT,
+    PAYMENT_INSERT,
+    COMMIT
+}
@@ -0,0 +1,7 @@
+package com.example.Tredbase_payment_system.Enums;
+
+// Which bucket turned a payment request away; used as the "scope" tag of the rate limit metrics
+public enum RateLimitScope {
+    PARENT,
+    GLOBAL
+}
@@ -0,0 +1,19 @@
+package com.example.Tredbase_payment_system.Enums;
+
+// Invariants verified by ReconciliationService
+public enum ReconciliationCheck {
+    // Parent totals in account_payment_total against the amounts plus fees of all SUCCESS payments
+    LEDGER_DEBITS,
+    // Student totals in account_payment_total against the amounts of all SUCCESS payments
+    LEDGER_CREDITS,
+    LEDGER_PAYMENT_COUNT,
+    // One student's total against its own SUCCESS payments
+    STUDENT_CREDITS,
+    STUDENT_PAYMENT_COUNT,
+    // A student holds less than it was credited; students are only ever credited
+    STUDENT_BALANCE,
+    // A parent's balance is below zero
+    PARENT_BALANCE,
+    // A SUCCESS payment without a student, a positive amount or a fee
+    INVALID_PAYMENT
+}
@@ -0,0 +1,13 @@
+package com.example.Tredbase_payment_system.Enums;
+
+// Lifecycle of a payment submitted to POST /api/payments/async; SUCCEEDED and FAILED are final
+public enum SubmissionStatus {
+    QUEUED,
+    PROCESSING,
+    SUCCEEDED,
+    FAILED;
+
+    public boolean isFinal() {
+        return this == SUCCEEDED || this == FAILED;
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.Tredbase_payment_system.Exception;
+
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import lombok.Getter;
+
+// A payment rejected by a business rule; still an IllegalArgumentException, so callers handle it as before
+@Getter
+public class PaymentException extends IllegalArgumentException {
+
+    private final PaymentFailureReason reason;
+
+    public PaymentException(PaymentFailureReason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+}
@@ -0,0 +1,424 @@
+package com.example.Tredbase_payment_system.Journal;
+
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Service.LedgerAggregateService;
+import com.example.Tredbase_payment_system.Utils.Money;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/*
+  Makes balances and payment history survive restarts of the in-memory database.
+
+  Every committed payment (and every FAILED record) is appended to the PaymentJournal; a payment
+  call returns only once its record is durable. At startup the state is rebuilt from the last
+  snapshot plus a replay of the newer journal segments, a fresh snapshot is written and the
+  replayed segments are deleted. A snapshot is also written on graceful shutdown.
+
+  Parents, students and their associations still come from import.sql; the journal carries
+  what changes at runtime: balances, payments and the reporting aggregates derived from them.
+  Disabled unless payment.journal.enabled=true.
+ */
+@Component
+public class JournalManager implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalManager.class);
+
+    private static final int SNAPSHOT_MAGIC = 0x504a534e; // "PJSN"
+    private static final int SNAPSHOT_VERSION = 4;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final int BATCH_SIZE = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private LedgerAggregateService ledgerAggregates;
+    // Recovery needs the schema, which exists once the EntityManagerFactory is built
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${payment.journal.enabled:false}")
+    private boolean enabled;
+    @Value("${payment.journal.dir:data/journal}")
+    private String directory;
+    @Value("${payment.journal.segment-size-mb:64}")
+    private int segmentSizeMb;
+    @Value("${payment.journal.group-commit-linger-micros:200}")
+    private long lingerMicros;
+
+    private PaymentJournal journal;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Path dir = Paths.get(directory);
+            Files.createDirectories(dir);
+            long covered = recover(dir);
+
+            // Compact: the database now holds everything, so snapshot it and drop the replayed segments
+            long start = System.nanoTime();
+            writeSnapshot(dir, covered);
+            PaymentJournal.deleteSegments(dir, covered);
+            logger.info("Journal snapshot written in {} ms (covers generation {})",
+                    (System.nanoTime() - start) / 1_000_000, covered);
+
+            journal = PaymentJournal.open(dir, covered + 1, segmentSizeMb * 1024 * 1024, lingerMicros);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Payment journal recovery failed", ex);
+        }
+    }
+
+    /*
+      Appends the records once the current transaction commits and waits until they are durable,
+      so the caller is only acknowledged for payments that will survive a crash.
+      Must be called inside a transaction.
+     */
+    public void recordAfterCommit(List<JournalRecord> records) {
+        if (!enabled || records.isEmpty()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(records);
+            }
+        });
+    }
+
+    // Appends the records now and waits until they are durable; for changes not made in a transaction
+    public void record(List<JournalRecord> records) {
+        if (!enabled || records.isEmpty()) {
+            return;
+        }
+        long last = 0;
+        for (JournalRecord record : records) {
+            last = journal.append(record);
+        }
+        journal.awaitDurable(last);
+    }
+
+    // FAILED records have no balance effect; they are appended without waiting for the disk
+    public void recordFailure(Payment payment) {
+        if (enabled) {
+            journal.append(JournalRecord.failure(payment));
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        if (!enabled || journal == null) {
+            return;
+        }
+        journal.close();
+        Path dir = Paths.get(directory);
+        writeSnapshot(dir, journal.generation());
+        PaymentJournal.deleteSegments(dir, journal.generation());
+        logger.info("Journal snapshot written on shutdown (covers generation {})", journal.generation());
+    }
+
+    // Restores the snapshot, replays newer segments and returns the last generation now reflected in the DB
+    private long recover(Path dir) throws IOException {
+        Path snapshot = dir.resolve(SNAPSHOT_FILE);
+        long covered = 0;
+        if (Files.exists(snapshot)) {
+            long start = System.nanoTime();
+            covered = transactionTemplate.execute(status -> restoreSnapshot(snapshot));
+            logger.info("Journal snapshot restored in {} ms", (System.nanoTime() - start) / 1_000_000);
+        }
+
+        long start = System.nanoTime();
+        Replay replay = new Replay();
+        long lastGeneration = PaymentJournal.replay(dir, covered, replay::add);
+        transactionTemplate.executeWithoutResult(status -> replay.apply());
+        long elapsedNanos = System.nanoTime() - start;
+        if (replay.records > 0) {
+            logger.info("Journal replayed {} records in {} ms ({} records/s)", replay.records,
+                    elapsedNanos / 1_000_000, (long) (replay.records / (elapsedNanos / 1e9)));
+        }
+        return lastGeneration;
+    }
+
+    /*
+      Balance deltas, payments and aggregates collected from the journal, applied in one transaction.
+      Payments keep the id they were acknowledged with; the sequence is then moved past every
+      restored id before the payments journaled without one (FAILED records) are given theirs.
+     */
+    private class Replay {
+        private final Map<Long, Long> parentDeltas = new HashMap<>();
+        private final Map<Long, Long> studentDeltas = new HashMap<>();
+        private final List<Object[]> payments = new ArrayList<>();
+        private final List<Object[]> unnumberedPayments = new ArrayList<>();
+        private final LedgerAggregateService.Deltas aggregates = ledgerAggregates.newDeltas();
+        private long records;
+
+        private void add(JournalRecord record) {
+            records++;
+            Payment payment = record.toPayment();
+            if (payment.getId() != null) {
+                Object[] row = paymentRow(payment);
+                Object[] numbered = new Object[row.length + 1];
+                numbered[0] = payment.getId();
+                System.arraycopy(row, 0, numbered, 1, row.length);
+                payments.add(numbered);
+            } else {
+                unnumberedPayments.add(paymentRow(payment));
+            }
+            if (record.status() == TransactionStatus.SUCCESS) {
+                ParentDebits debits = new ParentDebits(record.debitParentIds(), record.debitAmounts());
+                for (int i = 0; i < debits.size(); i++) {
+                    parentDeltas.merge(debits.parentId(i), -debits.amount(i), Long::sum);
+                }
+                studentDeltas.merge(record.studentId(), record.amount(), Long::sum);
+                aggregates.success(record.paymentDate(), record.studentId(), record.amount(), debits);
+            } else {
+                aggregates.failure(record.paymentDate(), record.amount());
+            }
+        }
+
+        private void apply() {
+            List<Object[]> parentRows = new ArrayList<>();
+            parentDeltas.forEach((id, delta) -> parentRows.add(new Object[]{Money.toDecimal(delta), id}));
+            List<Object[]> studentRows = new ArrayList<>();
+            studentDeltas.forEach((id, delta) -> studentRows.add(new Object[]{Money.toDecimal(delta), id}));
+
+            batch("UPDATE parent SET balance = balance + ?, version = version + 1 WHERE id = ?", parentRows);
+            batch("UPDATE student SET balance = balance + ?, version = version + 1 WHERE student_id = ?", studentRows);
+            insertPayments(payments);
+            Long maxPaymentId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM payment", Long.class);
+            if (maxPaymentId != null) {
+                jdbcTemplate.execute("ALTER SEQUENCE payment_id_seq RESTART WITH " + (maxPaymentId + 1));
+            }
+            batch("INSERT INTO payment (parent_id, student_id, amount, fee, status, payment_date, description, idempotency_key) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", unnumberedPayments);
+            ledgerAggregates.apply(aggregates);
+        }
+    }
+
+    private static Object[] paymentRow(Payment payment) {
+        return new Object[]{
+                payment.getParentId(),
+                payment.getStudentId(),
+                payment.getAmount() == null ? null : Money.toDecimal(payment.getAmount()),
+                payment.getFee() == null ? null : Money.toDecimal(payment.getFee()),
+                payment.getStatus().name(),
+                Timestamp.valueOf(payment.getPaymentDate()),
+                payment.getDescription(),
+                payment.getIdempotencyKey()
+        };
+    }
+
+    /*
+      Snapshot layout: magic, version, covered generation, then five sections (parent balances,
+      student balances, payments, daily rollups, account totals). Each row is preceded by a 1 byte
+      and each section ends with a 0 byte, so rows are streamed without counting them first.
+      The file is written to a temporary name, forced and atomically renamed.
+     */
+    private void writeSnapshot(Path dir, long coveredGeneration) throws IOException {
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeLong(coveredGeneration);
+
+            section(out, "SELECT id, balance FROM parent ORDER BY id", rs -> {
+                out.writeLong(rs.getLong(1));
+                out.writeLong(Money.fromDecimal(rs.getBigDecimal(2)));
+            });
+            section(out, "SELECT student_id, balance FROM student ORDER BY student_id", rs -> {
+                out.writeLong(rs.getLong(1));
+                out.writeLong(Money.fromDecimal(rs.getBigDecimal(2)));
+            });
+            section(out, "SELECT id, parent_id, student_id, amount, fee, status, payment_date, description, idempotency_key " +
+                    "FROM payment ORDER BY id", rs -> {
+                out.writeLong(rs.getLong(1));
+                writeNullableLong(out, rs.getObject(2, Long.class));
+                writeNullableLong(out, rs.getObject(3, Long.class));
+                BigDecimal amount = rs.getBigDecimal(4);
+                writeNullableLong(out, amount == null ? null : Money.fromDecimal(amount));
+                BigDecimal fee = rs.getBigDecimal(5);
+                writeNullableLong(out, fee == null ? null : Money.fromDecimal(fee));
+                out.writeUTF(rs.getString(6));
+                LocalDateTime date = rs.getTimestamp(7).toLocalDateTime();
+                out.writeLong(date.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(date.getNano());
+                String description = rs.getString(8);
+                out.writeBoolean(description != null);
+                if (description != null) {
+                    out.writeUTF(description);
+                }
+                String idempotencyKey = rs.getString(9);
+                out.writeBoolean(idempotencyKey != null);
+                if (idempotencyKey != null) {
+                    out.writeUTF(idempotencyKey);
+                }
+            });
+            section(out, "SELECT rollup_date, status, bucket, payment_count, total_amount FROM daily_payment_rollup", rs -> {
+                out.writeLong(rs.getDate(1).toLocalDate().toEpochDay());
+                out.writeUTF(rs.getString(2));
+                out.writeInt(rs.getInt(3));
+                out.writeLong(rs.getLong(4));
+                out.writeLong(Money.fromDecimal(rs.getBigDecimal(5)));
+            });
+            section(out, "SELECT account_type, account_id, payment_count, total_amount FROM account_payment_total", rs -> {
+                out.writeUTF(rs.getString(1));
+                out.writeLong(rs.getLong(2));
+                out.writeLong(rs.getLong(3));
+                out.writeLong(Money.fromDecimal(rs.getBigDecimal(4)));
+            });
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Returns the generation the snapshot covers
+    private long restoreSnapshot(Path snapshot) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+            int version = in.readInt() == SNAPSHOT_MAGIC ? in.readInt() : -1;
+            // Version 3 predates the payment fee column; its payments are restored without a fee
+            if (version < 3 || version > SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognized journal snapshot: " + snapshot);
+            }
+            long coveredGeneration = in.readLong();
+
+            List<Object[]> rows = new ArrayList<>();
+            while (in.readBoolean()) {
+                long id = in.readLong();
+                rows.add(new Object[]{Money.toDecimal(in.readLong()), id});
+            }
+            batch("UPDATE parent SET balance = ? WHERE id = ?", rows);
+
+            rows = new ArrayList<>();
+            while (in.readBoolean()) {
+                long id = in.readLong();
+                rows.add(new Object[]{Money.toDecimal(in.readLong()), id});
+            }
+            batch("UPDATE student SET balance = ? WHERE student_id = ?", rows);
+
+            jdbcTemplate.update("DELETE FROM payment");
+            rows = new ArrayList<>();
+            long maxPaymentId = 0;
+            while (in.readBoolean()) {
+                long id = in.readLong();
+                Long parentId = readNullableLong(in);
+                Long studentId = readNullableLong(in);
+                Long amount = readNullableLong(in);
+                Long fee = version >= 4 ? readNullableLong(in) : null;
+                String status = in.readUTF();
+                LocalDateTime date = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+                String description = in.readBoolean() ? in.readUTF() : null;
+                String idempotencyKey = in.readBoolean() ? in.readUTF() : null;
+                rows.add(new Object[]{id, parentId, studentId, amount == null ? null : Money.toDecimal(amount),
+                        fee == null ? null : Money.toDecimal(fee), status, Timestamp.valueOf(date), description, idempotencyKey});
+                maxPaymentId = Math.max(maxPaymentId, id);
+                if (rows.size() == BATCH_SIZE) {
+                    insertPayments(rows);
+                    rows.clear();
+                }
+            }
+            insertPayments(rows);
+            jdbcTemplate.execute("ALTER SEQUENCE payment_id_seq RESTART WITH " + (maxPaymentId + 1));
+
+            jdbcTemplate.update("DELETE FROM daily_payment_rollup");
+            rows = new ArrayList<>();
+            while (in.readBoolean()) {
+                rows.add(new Object[]{Date.valueOf(LocalDate.ofEpochDay(in.readLong())), in.readUTF(),
+                        in.readInt(), in.readLong(), Money.toDecimal(in.readLong())});
+            }
+            batch("INSERT INTO daily_payment_rollup (rollup_date, status, bucket, payment_count, total_amount) " +
+                    "VALUES (?, ?, ?, ?, ?)", rows);
+
+            jdbcTemplate.update("DELETE FROM account_payment_total");
+            rows = new ArrayList<>();
+            while (in.readBoolean()) {
+                rows.add(new Object[]{in.readUTF(), in.readLong(), in.readLong(), Money.toDecimal(in.readLong())});
+            }
+            batch("INSERT INTO account_payment_total (account_type, account_id, payment_count, total_amount) " +
+                    "VALUES (?, ?, ?, ?)", rows);
+
+            return coveredGeneration;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to restore journal snapshot " + snapshot, ex);
+        }
+    }
+
+    private void insertPayments(List<Object[]> rows) {
+        batch("INSERT INTO payment (id, parent_id, student_id, amount, fee, status, payment_date, description, idempotency_key) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    private void section(DataOutputStream out, String sql, RowWriter writer) throws IOException {
+        try {
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                try {
+                    out.writeBoolean(true);
+                    writer.write(rs);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        out.writeBoolean(false);
+    }
+
+    private static void writeNullableLong(DataOutputStream out, Long value) throws IOException {
+        out.writeLong(value == null ? Long.MIN_VALUE : value);
+    }
+
+    private static Long readNullableLong(DataInputStream in) throws IOException {
+        long value = in.readLong();
+        return value == Long.MIN_VALUE ? null : value;
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(java.sql.ResultSet rs) throws IOException, java.sql.SQLException;
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.Tredbase_payment_system.Journal;
+
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/*
+  One payment event in the journal: the Payment row plus, for SUCCESS, the parent debits
+  and student credit it caused. Replaying the records in order rebuilds balances and history.
+
+  Binary layout (big-endian):
+    byte   status (0 = SUCCESS, 1 = FAILED)
+    long   paymentDate epoch second (UTC)
+    int    paymentDate nanos
+    long   parentId   (Long.MIN_VALUE = null)
+    long   studentId  (Long.MIN_VALUE = null)
+    long   amount in minor units (Long.MIN_VALUE = null)
+    short  debit count, then per debit: long parentId, long amount in minor units
+    short  description length, then UTF-8 description bytes
+    byte   idempotency key length (0 = none), then ASCII key bytes
+    long   payment id (Long.MIN_VALUE = none yet: FAILED records are logged before their row exists)
+  The id comes last so records written before it was journaled still decode, without an id.
+ */
+public record JournalRecord(Long id,
+                            TransactionStatus status,
+                            LocalDateTime paymentDate,
+                            Long parentId,
+                            Long studentId,
+                            Long amount,
+                            long[] debitParentIds,
+                            long[] debitAmounts,
+                            String description,
+                            String idempotencyKey) {
+
+    private static final long NULL_ID = Long.MIN_VALUE;
+    private static final int MAX_DESCRIPTION_BYTES = Short.MAX_VALUE;
+
+    public static JournalRecord success(Payment payment, ParentDebits debits) {
+        return new JournalRecord(payment.getId(), TransactionStatus.SUCCESS, payment.getPaymentDate(), payment.getParentId(),
+                payment.getStudentId(), payment.getAmount(), debits.parentIds(), debits.amounts(),
+                payment.getDescription(), payment.getIdempotencyKey());
+    }
+
+    public static JournalRecord failure(Payment payment) {
+        return new JournalRecord(payment.getId(), TransactionStatus.FAILED, payment.getPaymentDate(), payment.getParentId(),
+                payment.getStudentId(), payment.getAmount(), new long[0], new long[0], payment.getDescription(), null);
+    }
+
+    public Payment toPayment() {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setParentId(parentId);
+        payment.setStudentId(studentId);
+        payment.setAmount(amount);
+        if (status == TransactionStatus.SUCCESS) {
+            payment.setFee(new ParentDebits(debitParentIds, debitAmounts).total() - amount);
+        }
+        payment.setStatus(status);
+        payment.setPaymentDate(paymentDate);
+        payment.setDescription(description);
+        payment.setIdempotencyKey(idempotencyKey);
+        return payment;
+    }
+
+    byte[] descriptionBytes() {
+        if (description == null) {
+            return new byte[0];
+        }
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_DESCRIPTION_BYTES) {
+            throw new IllegalArgumentException("Journal description too long: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    // Size of the encoded payload for the given description bytes
+    int encodedSize(byte[] descriptionBytes) {
+        return 1 + 8 + 4 + 8 + 8 + 8 + 2 + debitParentIds.length * 16 + 2 + descriptionBytes.length
+                + 1 + keyLength() + 8;
+    }
+
+    // Writes the payload at the given absolute index without touching the buffer position
+    void encode(ByteBuffer buffer, int index, byte[] descriptionBytes) {
+        int i = index;
+        buffer.put(i, (byte) (status == TransactionStatus.SUCCESS ? 0 : 1));
+        i += 1;
+        buffer.putLong(i, paymentDate.toEpochSecond(ZoneOffset.UTC));
+        i += 8;
+        buffer.putInt(i, paymentDate.getNano());
+        i += 4;
+        buffer.putLong(i, parentId == null ? NULL_ID : parentId);
+        i += 8;
+        buffer.putLong(i, studentId == null ? NULL_ID : studentId);
+        i += 8;
+        buffer.putLong(i, amount == null ? NULL_ID : amount);
+        i += 8;
+        buffer.putShort(i, (short) debitParentIds.length);
+        i += 2;
+        for (int d = 0; d < debitParentIds.length; d++) {
+            buffer.putLong(i, debitParentIds[d]);
+            buffer.putLong(i + 8, debitAmounts[d]);
+            i += 16;
+        }
+        buffer.putShort(i, (short) descriptionBytes.length);
+        i += 2;
+        buffer.put(i, descriptionBytes);
+        i += descriptionBytes.length;
+        buffer.put(i, (byte) keyLength());
+        i += 1;
+        if (idempotencyKey != null) {
+            buffer.put(i, idempotencyKey.getBytes(StandardCharsets.US_ASCII));
+        }
+        i += keyLength();
+        buffer.putLong(i, id == null ? NULL_ID : id);
+    }
+
+    // Keys are validated to be at most 64 ASCII characters, so chars = bytes
+    private int keyLength() {
+        return idempotencyKey == null ? 0 : idempotencyKey.length();
+    }
+
+    // length is the payload length of the frame, which tells whether the record carries an id
+    static JournalRecord decode(ByteBuffer buffer, int index, int length) {
+        int i = index;
+        TransactionStatus status = buffer.get(i) == 0 ? TransactionStatus.SUCCESS : TransactionStatus.FAILED;
+        i += 1;
+        long epochSecond = buffer.getLong(i);
+        i += 8;
+        int nanos = buffer.getInt(i);
+        i += 4;
+        long parentId = buffer.getLong(i);
+        i += 8;
+        long studentId = buffer.getLong(i);
+        i += 8;
+        long amount = buffer.getLong(i);
+        i += 8;
+        int debitCount = buffer.getShort(i);
+        i += 2;
+        long[] debitIds = new long[debitCount];
+        long[] debitAmounts = new long[debitCount];
+        for (int d = 0; d < debitCount; d++) {
+            debitIds[d] = buffer.getLong(i);
+            debitAmounts[d] = buffer.getLong(i + 8);
+            i += 16;
+        }
+        int descriptionLength = buffer.getShort(i);
+        i += 2;
+        byte[] descriptionBytes = new byte[descriptionLength];
+        buffer.get(i, descriptionBytes);
+        i += descriptionLength;
+        int keyLength = buffer.get(i);
+        i += 1;
+        byte[] keyBytes = new byte[keyLength];
+        buffer.get(i, keyBytes);
+        i += keyLength;
+        long id = i + 8 <= index + length ? buffer.getLong(i) : NULL_ID;
+
+        return new JournalRecord(id == NULL_ID ? null : id,
+                status,
+                LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC),
+                parentId == NULL_ID ? null : parentId,
+                studentId == NULL_ID ? null : studentId,
+                amount == NULL_ID ? null : amount,
+                debitIds, debitAmounts,
+                descriptionLength == 0 ? null : new String(descriptionBytes, StandardCharsets.UTF_8),
+                keyLength == 0 ? null : new String(keyBytes, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,323 @@
+package com.example.Tredbase_payment_system.Journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/*
+  Append-only, memory-mapped journal of payment events.
+
+  Records are appended into fixed-size mapped segment files named journal-<generation>-<index>.seg.
+  Each frame is [int length][int crc32c][payload]; a zero length marks the end of a segment.
+  Appending only copies bytes into the mapping; durability comes from a single flusher thread
+  that forces the mapping to disk and then releases every writer whose record it covered
+  (group commit), so concurrent payments share one fsync instead of paying one each.
+
+  A generation groups the segments written by one run of the application; a snapshot records
+  the last generation it covers so recovery replays only newer segments.
+ */
+public class PaymentJournal implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentJournal.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("journal-(\\d{10})-(\\d{10})\\.seg");
+    private static final int FRAME_HEADER = 8;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long lingerNanos;
+    private final long generation;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition pending = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+
+    // Guarded by lock
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private int writeOffset;
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean closed;
+    private RuntimeException failure;
+
+    private final Thread flusher;
+
+    private PaymentJournal(Path directory, long generation, int segmentSize, long lingerMicros) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.segmentSize = segmentSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        Files.createDirectories(directory);
+        openSegment(0);
+        this.flusher = Thread.ofPlatform().name("payment-journal-flusher").daemon().start(this::runFlusher);
+    }
+
+    // Starts a new generation of segments; existing segments of that generation are not allowed
+    public static PaymentJournal open(Path directory, long generation, int segmentSize, long lingerMicros) throws IOException {
+        return new PaymentJournal(directory, generation, segmentSize, lingerMicros);
+    }
+
+    public long generation() {
+        return generation;
+    }
+
+    // Copies the record into the mapped segment and returns its sequence number (not yet durable)
+    public long append(JournalRecord record) {
+        byte[] description = record.descriptionBytes();
+        int payloadSize = record.encodedSize(description);
+        int frameSize = FRAME_HEADER + payloadSize;
+        if (frameSize + 4 > segmentSize) {
+            throw new IllegalArgumentException("Journal record of " + frameSize + " bytes exceeds segment size");
+        }
+
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Payment journal is closed");
+            }
+            // Keep 4 zero bytes after the last frame as the end marker
+            if (writeOffset + frameSize + 4 > segmentSize) {
+                rollSegment();
+            }
+            int payloadIndex = writeOffset + FRAME_HEADER;
+            record.encode(segment, payloadIndex, description);
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(payloadIndex, payloadSize));
+            segment.putInt(writeOffset + 4, (int) crc.getValue());
+            // Length last: a reader never sees a frame whose payload is not written yet
+            segment.putInt(writeOffset, payloadSize);
+            writeOffset += frameSize;
+
+            appendedSequence++;
+            pending.signal();
+            return appendedSequence;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Blocks until the record with the given sequence number has been forced to disk
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new IllegalStateException("Payment journal flush failed", failure);
+                }
+                durable.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long appendAndAwait(JournalRecord record) {
+        long sequence = append(record);
+        awaitDurable(sequence);
+        return sequence;
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            segment.force();
+            durableSequence = appendedSequence;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runFlusher() {
+        while (true) {
+            MappedByteBuffer toForce;
+            long target;
+            lock.lock();
+            try {
+                while (!closed && appendedSequence == durableSequence) {
+                    pending.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            // Give concurrent writers a moment to join this group commit
+            if (lingerNanos > 0) {
+                LockSupport.parkNanos(lingerNanos);
+            }
+
+            lock.lock();
+            try {
+                toForce = segment;
+                target = appendedSequence;
+            } finally {
+                lock.unlock();
+            }
+
+            // Earlier segments were forced when they were rolled, so only the current one is pending
+            try {
+                toForce.force();
+            } catch (RuntimeException ex) {
+                logger.error("Payment journal flush failed; writers waiting for durability will fail", ex);
+                lock.lock();
+                try {
+                    failure = ex;
+                    durable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                if (target > durableSequence) {
+                    durableSequence = target;
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Called with the lock held
+    private void rollSegment() throws IOException {
+        segment.force();
+        openSegment(segmentIndex + 1);
+    }
+
+    // Called with the lock held (or from the constructor)
+    private void openSegment(int index) throws IOException {
+        Path path = directory.resolve(segmentName(generation, index));
+        if (Files.exists(path)) {
+            throw new IOException("Journal segment already exists: " + path);
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segmentIndex = index;
+        writeOffset = 0;
+    }
+
+    static String segmentName(long generation, int index) {
+        return String.format("journal-%010d-%010d.seg", generation, index);
+    }
+
+    // Segment files in replay order
+    public static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> SEGMENT_NAME.matcher(p.getFileName().toString()).matches())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public static long generationOf(Path segment) {
+        Matcher matcher = SEGMENT_NAME.matcher(segment.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a journal segment: " + segment);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    /*
+      Reads every valid record of the segments with a generation above afterGeneration, in order.
+      Reading stops at the first torn or corrupt frame (a crash mid-append); everything after it is ignored.
+      Returns the highest generation seen, or afterGeneration when there was nothing to replay.
+     */
+    public static long replay(Path directory, long afterGeneration, Consumer<JournalRecord> consumer) throws IOException {
+        long lastGeneration = afterGeneration;
+        List<Path> toReplay = new ArrayList<>();
+        for (Path path : segments(directory)) {
+            if (generationOf(path) > afterGeneration) {
+                toReplay.add(path);
+            }
+        }
+        for (Path path : toReplay) {
+            lastGeneration = Math.max(lastGeneration, generationOf(path));
+            if (!replaySegment(path, consumer)) {
+                logger.warn("Journal segment {} ends with a torn record; ignoring the rest of the journal", path);
+                break;
+            }
+        }
+        return lastGeneration;
+    }
+
+    // Returns false when the segment ended on a corrupt frame rather than a clean end marker
+    private static boolean replaySegment(Path path, Consumer<JournalRecord> consumer) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int offset = 0;
+        while (offset + FRAME_HEADER <= buffer.limit()) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                return true;
+            }
+            if (length < 0 || offset + FRAME_HEADER + length > buffer.limit()) {
+                return false;
+            }
+            CRC32C crc = new CRC32C();
+            crc.update(buffer.slice(offset + FRAME_HEADER, length));
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                return false;
+            }
+            consumer.accept(JournalRecord.decode(buffer, offset + FRAME_HEADER, length));
+            offset += FRAME_HEADER + length;
+        }
+        return true;
+    }
+
+    // Removes every segment up to and including the given generation (already covered by a snapshot)
+    public static void deleteSegments(Path directory, long upToGeneration) throws IOException {
+        for (Path path : segments(directory)) {
+            if (generationOf(path) <= upToGeneration) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.Tredbase_payment_system.Repository;
+
+import com.example.Tredbase_payment_system.Entity.AccountPaymentTotal;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface AccountPaymentTotalRepository extends JpaRepository<AccountPaymentTotal, AccountPaymentTotal.Key> {
+}
@@ -0,0 +1,20 @@
+package com.example.Tredbase_payment_system.Repository;
+
+import com.example.Tredbase_payment_system.Dto.DailyPaymentSummary;
+import com.example.Tredbase_payment_system.Entity.DailyPaymentRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface DailyPaymentRollupRepository extends JpaRepository<DailyPaymentRollup, DailyPaymentRollup.Key> {
+
+    // Sums the buckets of each (day, status) in the range; at most buckets x statuses rows per day are read
+    @Query("select new com.example.Tredbase_payment_system.Dto.DailyPaymentSummary(" +
+            "r.rollupDate, r.status, sum(r.paymentCount), sum(r.totalAmount)) " +
+            "from DailyPaymentRollup r where r.rollupDate between :from and :to " +
+            "group by r.rollupDate, r.status order by r.rollupDate, r.status")
+    List<DailyPaymentSummary> summarize(@Param("from") LocalDate from, @Param("to") LocalDate to);
+}
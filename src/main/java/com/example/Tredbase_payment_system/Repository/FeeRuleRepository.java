@@ -0,0 +1,7 @@
+package com.example.Tredbase_payment_system.Repository;
+
+import com.example.Tredbase_payment_system.Entity.FeeRule;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface FeeRuleRepository extends JpaRepository<FeeRule, Long> {
+}
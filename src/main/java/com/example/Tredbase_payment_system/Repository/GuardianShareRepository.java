@@ -0,0 +1,7 @@
+package com.example.Tredbase_payment_system.Repository;
+
+import com.example.Tredbase_payment_system.Entity.GuardianShare;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface GuardianShareRepository extends JpaRepository<GuardianShare, Long> {
+}
@@ -1,7 +1,73 @@
 package com.example.Tredbase_payment_system.Repository;
 
 import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
 
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
+
+    String FILTERED = "select p from Payment p where p.id > :afterId" +
+            " and (:status is null or p.status = :status)" +
+            " and (:parentId is null or p.parentId = :parentId)" +
+            " and (:studentId is null or p.studentId = :studentId)" +
+            " and (:fromDate is null or p.paymentDate >= :fromDate)" +
+            " and (:toDate is null or p.paymentDate < :toDate)" +
+            " order by p.id";
+
+    // The range predicate on paymentDate lets the index seek; the second one only breaks ties within a timestamp
+    String BEFORE_KEY = " and p.paymentDate <= :beforeDate" +
+            " and (p.paymentDate < :beforeDate or p.id < :beforeId)" +
+            " order by p.paymentDate desc, p.id desc";
+
+    Optional<Payment> findByIdempotencyKey(String idempotencyKey);
+
+    // Newest-first history of one account (idx_payment_parent_date / idx_payment_student_date)
+    List<Payment> findByParentIdOrderByPaymentDateDescIdDesc(Long parentId, Limit limit);
+
+    List<Payment> findByStudentIdOrderByPaymentDateDescIdDesc(Long studentId, Limit limit);
+
+    // Next history page: payments strictly older than (beforeDate, beforeId) in (paymentDate, id) order
+    @Query("select p from Payment p where p.parentId = :parentId" + BEFORE_KEY)
+    List<Payment> findParentHistoryBefore(@Param("parentId") Long parentId,
+                                          @Param("beforeDate") LocalDateTime beforeDate,
+                                          @Param("beforeId") long beforeId,
+                                          Limit limit);
+
+    @Query("select p from Payment p where p.studentId = :studentId" + BEFORE_KEY)
+    List<Payment> findStudentHistoryBefore(@Param("studentId") Long studentId,
+                                           @Param("beforeDate") LocalDateTime beforeDate,
+                                           @Param("beforeId") long beforeId,
+                                           Limit limit);
+
+    // Keyset page: payments with id greater than afterId, in id order
+    @Query(FILTERED)
+    List<Payment> findPage(@Param("afterId") long afterId,
+                           @Param("status") TransactionStatus status,
+                           @Param("parentId") Long parentId,
+                           @Param("studentId") Long studentId,
+                           @Param("fromDate") LocalDateTime from,
+                           @Param("toDate") LocalDateTime to,
+                           Limit limit);
+
+    // Cursor over all matching payments; must be consumed inside a transaction and closed
+    @Query(FILTERED)
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "500"))
+    Stream<Payment> streamAll(@Param("afterId") long afterId,
+                              @Param("status") TransactionStatus status,
+                              @Param("parentId") Long parentId,
+                              @Param("studentId") Long studentId,
+                              @Param("fromDate") LocalDateTime from,
+                              @Param("toDate") LocalDateTime to);
 }
@@ -1,7 +1,39 @@
 package com.example.Tredbase_payment_system.Repository;
 
 import com.example.Tredbase_payment_system.Entity.Student;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface StudentRepository extends JpaRepository<Student, Long> {
+
+    // Parents are serialized with each student, so fetch them up front (open-in-view is disabled)
+    @Override
+    @EntityGraph(Student.WITH_PARENTS)
+    List<Student> findAll();
+
+    // Loads a set of students together with their parents in a single query (student listings)
+    @EntityGraph(Student.WITH_PARENTS)
+    List<Student> findAllWithParentsByStudentIdIn(Collection<Long> ids);
+
+    // Keyset page of student ids; the students themselves are then loaded with findAllWithParentsByStudentIdIn
+    @Query("select s.studentId from Student s where s.studentId > :afterId order by s.studentId")
+    List<Long> findIdPage(@Param("afterId") long afterId, Limit limit);
+
+    // (parentId, weight) of one student's parents; weight is null when no guardian_share row exists
+    @Query("select p.id, g.weight from Student s join s.parents p"
+            + " left join GuardianShare g on g.studentId = s.studentId and g.parentId = p.id"
+            + " where s.studentId = :studentId")
+    List<Object[]> findGuardians(@Param("studentId") Long studentId);
+
+    // (studentId, parentId, weight) triples for many students at once
+    @Query("select s.studentId, p.id, g.weight from Student s join s.parents p"
+            + " left join GuardianShare g on g.studentId = s.studentId and g.parentId = p.id"
+            + " where s.studentId in :ids")
+    List<Object[]> findGuardiansIn(@Param("ids") Collection<Long> ids);
 }
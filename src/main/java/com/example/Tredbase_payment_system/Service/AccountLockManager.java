@@ -0,0 +1,74 @@
+package com.example.Tredbase_payment_system.Service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  In-process striped locks keyed by account id.
+  Payments for unrelated families hash to different stripes and run in parallel;
+  payments touching the same parent or student are serialized before they reach the database,
+  so optimistic version checks only have to resolve the rare cross-family conflicts.
+  Stripes are always acquired in ascending index order, so two callers can never deadlock.
+ */
+@Component
+public class AccountLockManager {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+
+    public AccountLockManager(@Value("${payment.locks.stripes:1024}") int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+
+    // Locks every stripe covering the given parents and students; close the handle to release them
+    public Held lock(Collection<Long> parentIds, Collection<Long> studentIds) {
+        BitSet indexes = new BitSet(stripes.length);
+        for (Long parentId : parentIds) {
+            if (parentId != null) {
+                indexes.set(stripeOf(parentId, 0));
+            }
+        }
+        for (Long studentId : studentIds) {
+            if (studentId != null) {
+                indexes.set(stripeOf(studentId, 1));
+            }
+        }
+
+        int[] acquired = indexes.stream().toArray();
+        for (int index : acquired) {
+            stripes[index].lock();
+        }
+        return () -> {
+            for (int i = acquired.length - 1; i >= 0; i--) {
+                stripes[acquired[i]].unlock();
+            }
+        };
+    }
+
+    public int stripeCount() {
+        return stripes.length;
+    }
+
+    // Parents and students live in separate key spaces; mix the bits so sequential ids spread evenly
+    private int stripeOf(long id, int accountType) {
+        long h = id * 2 + accountType;
+        h ^= (h >>> 33);
+        h *= 0xff51afd7ed558ccdL;
+        h ^= (h >>> 33);
+        return (int) h & mask;
+    }
+
+    public interface Held extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
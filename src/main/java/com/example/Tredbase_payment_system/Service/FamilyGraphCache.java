@@ -0,0 +1,333 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Dto.CacheStats;
+import com.example.Tredbase_payment_system.Dto.Guardians;
+import com.example.Tredbase_payment_system.Entity.GuardianShare;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  Bounded read-through cache of the parent -> student association graph (the parent_student table).
+  Each student maps to its Guardians: a sorted array of parent ids with their split weights
+  (from guardian_share), so association checks are a hash lookup plus a binary search and never
+  touch the database once warm. Balances are NOT cached.
+  Entries are invalidated automatically whenever Hibernate writes a Student.parents collection or
+  a GuardianShare (immediately, and again after commit so no reader can re-cache the old graph in
+  between), and explicitly through invalidate()/invalidateAll() for changes made outside JPA.
+  A load that was already running when its student was invalidated does not cache its result:
+  every invalidation bumps the student's stamp (striped, so two students may share one), and a
+  loader that finds the stamp moved while it was querying drops what it read.
+  Past max-size, entries are evicted in CLOCK order: oldest first, but an entry read since the
+  hand last passed gets a second chance, so hot students stay cached.
+ */
+@Component
+public class FamilyGraphCache {
+
+    private static final String PARENTS_ROLE = Student.class.getName() + ".parents";
+
+    // Number of invalidation stamps; a power of two
+    private static final int STAMP_STRIPES = 1024;
+
+    @Autowired
+    private StudentRepository studentRepo;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${payment.cache.family-graph.max-size:100000}")
+    private int maxSize;
+
+    private final ConcurrentHashMap<Long, Entry> guardiansByStudent = new ConcurrentHashMap<>();
+    private final AtomicLongArray stamps = new AtomicLongArray(STAMP_STRIPES);
+    // The CLOCK ring in insertion order; may still hold entries that were invalidated meanwhile
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger clockLength = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    private static final class Entry {
+        final Long studentId;
+        final Guardians guardians;
+        // Set on every hit, cleared when the clock hand passes
+        volatile boolean referenced;
+
+        Entry(Long studentId, Guardians guardians) {
+            this.studentId = studentId;
+            this.guardians = guardians;
+        }
+    }
+
+    @PostConstruct
+    void registerInvalidationListener() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        InvalidationListener listener = new InvalidationListener();
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+    }
+
+    // Sorted parent ids of a student; loads from the database on a miss
+    public long[] parentsOf(Long studentId) {
+        return guardiansOf(studentId).parentIds();
+    }
+
+    // Parents of a student together with their split weights; loads from the database on a miss
+    public Guardians guardiansOf(Long studentId) {
+        Entry entry = guardiansByStudent.get(studentId);
+        if (entry != null) {
+            hits.increment();
+            touch(entry);
+            return entry.guardians;
+        }
+        misses.increment();
+        long stamp = stamps.get(stripe(studentId));
+        Guardians guardians = toGuardians(studentRepo.findGuardians(studentId), 0);
+        put(studentId, guardians, stamp);
+        return guardians;
+    }
+
+    // Bulk variant for batch settlement: all misses are loaded with a single query
+    public Map<Long, Guardians> guardiansOf(Collection<Long> studentIds) {
+        Map<Long, Guardians> result = new HashMap<>(studentIds.size() * 2);
+        List<Long> missing = new ArrayList<>();
+        for (Long studentId : studentIds) {
+            Entry entry = guardiansByStudent.get(studentId);
+            if (entry != null) {
+                touch(entry);
+                result.put(studentId, entry.guardians);
+            } else {
+                missing.add(studentId);
+            }
+        }
+        hits.add(result.size());
+        misses.add(missing.size());
+        if (!missing.isEmpty()) {
+            long[] missingStamps = new long[missing.size()];
+            for (int i = 0; i < missingStamps.length; i++) {
+                missingStamps[i] = stamps.get(stripe(missing.get(i)));
+            }
+            Map<Long, List<Object[]>> loaded = new HashMap<>();
+            for (Object[] row : studentRepo.findGuardiansIn(missing)) {
+                loaded.computeIfAbsent((Long) row[0], id -> new ArrayList<>()).add(row);
+            }
+            for (int i = 0; i < missingStamps.length; i++) {
+                Long studentId = missing.get(i);
+                Guardians guardians = toGuardians(loaded.getOrDefault(studentId, Collections.emptyList()), 1);
+                put(studentId, guardians, missingStamps[i]);
+                result.put(studentId, guardians);
+            }
+        }
+        return result;
+    }
+
+    public boolean isAssociated(Long parentId, Long studentId) {
+        return parentId != null && guardiansOf(studentId).includes(parentId);
+    }
+
+    // The stamp moves before the entry goes, so a load in flight cannot put the old graph back
+    public void invalidate(Long studentId) {
+        stamps.incrementAndGet(stripe(studentId));
+        if (guardiansByStudent.remove(studentId) != null) {
+            invalidations.increment();
+        }
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < STAMP_STRIPES; i++) {
+            stamps.incrementAndGet(i);
+        }
+        invalidations.add(guardiansByStudent.size());
+        guardiansByStudent.clear();
+    }
+
+    public CacheStats stats() {
+        return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(),
+                guardiansByStudent.size(), maxSize);
+    }
+
+    /*
+      Caches what a load read, unless the student was invalidated since stamp was taken. The stamp
+      is checked again after the put: an invalidation between the two checks has either moved the
+      stamp (and the entry is taken back here) or will remove the entry itself.
+     */
+    private void put(Long studentId, Guardians guardians, long stamp) {
+        int stripe = stripe(studentId);
+        if (stamps.get(stripe) != stamp) {
+            return;
+        }
+        Entry entry = new Entry(studentId, guardians);
+        guardiansByStudent.put(studentId, entry);
+        if (stamps.get(stripe) != stamp) {
+            guardiansByStudent.remove(studentId, entry);
+            return;
+        }
+        clock.add(entry);
+        clockLength.incrementAndGet();
+        // Invalidated entries stay in the ring until the hand reaches them, so it may outgrow the map
+        if (guardiansByStudent.size() > maxSize || clockLength.get() > 2 * maxSize) {
+            evict();
+        }
+    }
+
+    private static void touch(Entry entry) {
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+    }
+
+    /*
+      One sweep of the clock hand, by one thread at a time. Invalidated or replaced entries
+      leave the ring; a referenced entry is cleared and moved to the back; an unreferenced one is
+      evicted while the map is over capacity. The sweep stops once the map is back under the bound
+      and the ring holds no more than max-size entries. It gives up after two turns, by which time
+      every reference bit has been cleared once.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            for (int steps = 2 * clockLength.get() + 1; steps > 0; steps--) {
+                boolean overCapacity = guardiansByStudent.size() > maxSize;
+                if (!overCapacity && clockLength.get() <= maxSize) {
+                    break;
+                }
+                Entry entry = clock.poll();
+                if (entry == null) {
+                    break;
+                }
+                clockLength.decrementAndGet();
+                if (guardiansByStudent.get(entry.studentId) != entry) {
+                    continue;
+                }
+                if (overCapacity && !entry.referenced) {
+                    if (guardiansByStudent.remove(entry.studentId, entry)) {
+                        evictions.increment();
+                    }
+                    continue;
+                }
+                if (overCapacity) {
+                    entry.referenced = false;
+                }
+                clock.add(entry);
+                clockLength.incrementAndGet();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static int stripe(Long studentId) {
+        return Long.hashCode(studentId * 0x9E3779B97F4A7C15L) & (STAMP_STRIPES - 1);
+    }
+
+    // rows are (..., parentId, weight) with the parent id at column offset; sorted by parent id
+    private static Guardians toGuardians(List<Object[]> rows, int offset) {
+        if (rows.isEmpty()) {
+            return Guardians.NONE;
+        }
+        List<Object[]> sorted = new ArrayList<>(rows);
+        sorted.sort(Comparator.comparing(row -> (Long) row[offset]));
+        long[] parentIds = new long[sorted.size()];
+        long[] weights = new long[sorted.size()];
+        for (int i = 0; i < parentIds.length; i++) {
+            Object[] row = sorted.get(i);
+            parentIds[i] = (Long) row[offset];
+            // Negative weights are treated as exempt, like 0
+            weights[i] = row[offset + 1] == null ? GuardianShare.DEFAULT_WEIGHT
+                    : Math.max(0, ((Number) row[offset + 1]).longValue());
+        }
+        return new Guardians(parentIds, weights);
+    }
+
+    // Invalidates a student whenever Hibernate inserts, updates or deletes its parents collection or a share
+    private class InvalidationListener implements PostCollectionRecreateEventListener,
+            PostCollectionUpdateEventListener, PostCollectionRemoveEventListener,
+            PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            onChange(event);
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            onChange(event);
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            onChange(event);
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            onShareChange(event.getEntity());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            onShareChange(event.getEntity());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            onShareChange(event.getEntity());
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+
+        private void onChange(AbstractCollectionEvent event) {
+            if (PARENTS_ROLE.equals(event.getCollection().getRole())
+                    && event.getAffectedOwnerIdOrNull() instanceof Long studentId) {
+                invalidateNowAndAfterCompletion(studentId);
+            }
+        }
+
+        private void onShareChange(Object entity) {
+            if (entity instanceof GuardianShare share && share.getStudentId() != null) {
+                invalidateNowAndAfterCompletion(share.getStudentId());
+            }
+        }
+
+        private void invalidateNowAndAfterCompletion(Long studentId) {
+            invalidate(studentId);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        invalidate(studentId);
+                    }
+                });
+            }
+        }
+    }
+}
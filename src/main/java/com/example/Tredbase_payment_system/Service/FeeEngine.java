@@ -0,0 +1,15 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Utils.Money;
+
+// Decides the surcharge added on top of a payment; called once per payment on the hot path
+public interface FeeEngine {
+
+    // Rate in basis points for a student of this school and tier (either may be null) on the given day
+    long rateBasisPoints(String school, String tier, long epochDay);
+
+    // The amount charged to the parents: amount plus the rate, rounded half-even to the cent
+    default long adjustedAmount(long amount, String school, String tier, long epochDay) {
+        return Money.plusRate(amount, rateBasisPoints(school, tier, epochDay));
+    }
+}
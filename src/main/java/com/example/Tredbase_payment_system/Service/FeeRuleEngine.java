@@ -0,0 +1,43 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Repository.FeeRuleRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/*
+  FeeEngine backed by the fee_rule table.
+  The rules are compiled into a FeeRuleSet at startup and on reload(); the new set replaces the
+  old one with a single volatile write, so payments never see a half-loaded rule set and never wait
+  for a reload. Students matching no rule pay payment.fee.default-rate-basis-points.
+  A rule set that does not compile (negative rate) leaves the previous one in place.
+ */
+@Component
+public class FeeRuleEngine implements FeeEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeeRuleEngine.class);
+
+    @Autowired
+    private FeeRuleRepository feeRuleRepo;
+
+    @Value("${payment.fee.default-rate-basis-points:500}")
+    private long defaultRate;
+
+    private volatile FeeRuleSet rules;
+
+    @PostConstruct
+    public int reload() {
+        FeeRuleSet compiled = FeeRuleSet.compile(feeRuleRepo.findAll(), defaultRate);
+        rules = compiled;
+        logger.info("Fee rules loaded: {} rules, default rate {} bp", compiled.size(), defaultRate);
+        return compiled.size();
+    }
+
+    @Override
+    public long rateBasisPoints(String school, String tier, long epochDay) {
+        return rules.rateBasisPoints(school, tier, epochDay);
+    }
+}
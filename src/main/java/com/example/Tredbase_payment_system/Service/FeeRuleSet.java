@@ -0,0 +1,128 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Entity.FeeRule;
+
+import java.util.*;
+
+/*
+  Immutable, indexed form of the fee rules.
+  Rules are grouped by school and then by tier (hash lookups on the request's own strings),
+  and each group keeps its date windows in parallel primitive arrays ordered by priority,
+  so evaluating a payment walks at most four small arrays and allocates nothing.
+  Rates are surcharges: a negative rate is rejected when compiling, which keeps -1 free to mean
+  "no rule covers the day" during the lookup.
+ */
+public final class FeeRuleSet {
+
+    private static final long OPEN_START = Long.MIN_VALUE;
+    private static final long OPEN_END = Long.MAX_VALUE;
+
+    private final Map<String, SchoolRules> bySchool;
+    private final SchoolRules anySchool;
+    private final long defaultRate;
+    private final int size;
+
+    private FeeRuleSet(Map<String, SchoolRules> bySchool, SchoolRules anySchool, long defaultRate, int size) {
+        this.bySchool = bySchool;
+        this.anySchool = anySchool;
+        this.defaultRate = defaultRate;
+        this.size = size;
+    }
+
+    public static FeeRuleSet compile(Collection<FeeRule> rules, long defaultRate) {
+        Map<String, Map<String, List<FeeRule>>> grouped = new HashMap<>();
+        for (FeeRule rule : rules) {
+            if (rule.getRateBasisPoints() < 0) {
+                throw new IllegalArgumentException("Fee rule " + rule.getId()
+                        + " has a negative rate (" + rule.getRateBasisPoints() + " bp); fee rules are surcharges");
+            }
+            grouped.computeIfAbsent(rule.getSchool(), school -> new HashMap<>())
+                    .computeIfAbsent(rule.getTier(), tier -> new ArrayList<>())
+                    .add(rule);
+        }
+        Map<String, SchoolRules> bySchool = new HashMap<>();
+        SchoolRules anySchool = SchoolRules.EMPTY;
+        for (Map.Entry<String, Map<String, List<FeeRule>>> school : grouped.entrySet()) {
+            Map<String, Windows> byTier = new HashMap<>();
+            Windows anyTier = Windows.EMPTY;
+            for (Map.Entry<String, List<FeeRule>> tier : school.getValue().entrySet()) {
+                Windows windows = Windows.of(tier.getValue());
+                if (tier.getKey() == null) {
+                    anyTier = windows;
+                } else {
+                    byTier.put(tier.getKey(), windows);
+                }
+            }
+            SchoolRules schoolRules = new SchoolRules(Map.copyOf(byTier), anyTier);
+            if (school.getKey() == null) {
+                anySchool = schoolRules;
+            } else {
+                bySchool.put(school.getKey(), schoolRules);
+            }
+        }
+        return new FeeRuleSet(Map.copyOf(bySchool), anySchool, defaultRate, rules.size());
+    }
+
+    public long rateBasisPoints(String school, String tier, long epochDay) {
+        SchoolRules schoolRules = school == null ? null : bySchool.get(school);
+        if (schoolRules != null) {
+            long rate = schoolRules.rate(tier, epochDay);
+            if (rate >= 0) {
+                return rate;
+            }
+        }
+        long rate = anySchool.rate(tier, epochDay);
+        return rate >= 0 ? rate : defaultRate;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private record SchoolRules(Map<String, Windows> byTier, Windows anyTier) {
+        static final SchoolRules EMPTY = new SchoolRules(Map.of(), Windows.EMPTY);
+
+        // -1 when no rule of this school covers the day
+        long rate(String tier, long epochDay) {
+            Windows windows = tier == null ? null : byTier.get(tier);
+            if (windows != null) {
+                long rate = windows.rate(epochDay);
+                if (rate >= 0) {
+                    return rate;
+                }
+            }
+            return anyTier.rate(epochDay);
+        }
+    }
+
+    // Date windows of one (school, tier) group, highest priority first
+    private record Windows(long[] from, long[] to, long[] rate) {
+        static final Windows EMPTY = new Windows(new long[0], new long[0], new long[0]);
+
+        static Windows of(List<FeeRule> rules) {
+            List<FeeRule> ordered = new ArrayList<>(rules);
+            ordered.sort(Comparator.comparingInt(FeeRule::getPriority).reversed());
+            int n = ordered.size();
+            long[] from = new long[n];
+            long[] to = new long[n];
+            long[] rate = new long[n];
+            for (int i = 0; i < n; i++) {
+                FeeRule rule = ordered.get(i);
+                from[i] = rule.getValidFrom() == null ? OPEN_START : rule.getValidFrom().toEpochDay();
+                to[i] = rule.getValidTo() == null ? OPEN_END : rule.getValidTo().toEpochDay();
+                rate[i] = rule.getRateBasisPoints();
+            }
+            return new Windows(from, to, rate);
+        }
+
+        // -1 when no window covers the day
+        long rate(long epochDay) {
+            for (int i = 0; i < rate.length; i++) {
+                if (from[i] <= epochDay && epochDay <= to[i]) {
+                    return rate[i];
+                }
+            }
+            return -1;
+        }
+    }
+}
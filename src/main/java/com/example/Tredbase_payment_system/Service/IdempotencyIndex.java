@@ -0,0 +1,104 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+  Bounded, time-expiring index of Idempotency-Key -> the payment that key created.
+  A retried POST /api/payment finds its earlier result here without touching the database.
+  The index is only a cache: the unique idempotency_key column on Payment is the source of truth,
+  so a key that expired, was evicted or predates a restart is still found by PaymentService.
+  Keys expire in insertion order (the TTL is fixed), so one FIFO queue serves both expiry and
+  the size bound.
+ */
+@Component
+public class IdempotencyIndex {
+
+    public static final int MAX_KEY_LENGTH = 64;
+
+    @Value("${payment.idempotency.max-size:100000}")
+    private int maxSize;
+
+    @Value("${payment.idempotency.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final LongAdder evictions = new LongAdder();
+
+    private record Entry(String key, Payment payment, long expiresAt) {
+    }
+
+    // The payment stored for the key, or null; expired entries are treated as absent
+    public Payment find(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.payment;
+    }
+
+    public void put(String key, Payment payment) {
+        long now = System.nanoTime();
+        Entry entry = new Entry(key, payment, now + TimeUnit.MINUTES.toNanos(ttlMinutes));
+        entries.put(key, entry);
+        insertionOrder.add(entry);
+        // Drop expired entries from the head, then the oldest ones while over capacity
+        Entry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (oldest.expiresAt - now < 0 || entries.size() > maxSize)) {
+            if (insertionOrder.remove(oldest) && entries.remove(oldest.key, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        insertionOrder.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // Keys are 1-64 printable ASCII characters (UUIDs and the like)
+    public static void validate(String key) {
+        boolean valid = !key.isEmpty() && key.length() <= MAX_KEY_LENGTH;
+        for (int i = 0; valid && i < key.length(); i++) {
+            char c = key.charAt(i);
+            valid = c > ' ' && c < 0x7f;
+        }
+        if (!valid) {
+            throw new PaymentException(PaymentFailureReason.INVALID_IDEMPOTENCY_KEY,
+                    "Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " printable ASCII characters.");
+        }
+    }
+
+    // A key may only be replayed for the same parent, student and amount
+    public static Payment checkSameRequest(Payment stored, Long parentId, Long studentId, Long paymentAmount) {
+        if (!Objects.equals(stored.getParentId(), parentId) || !Objects.equals(stored.getStudentId(), studentId)
+                || !Objects.equals(stored.getAmount(), paymentAmount)) {
+            throw new PaymentException(PaymentFailureReason.INVALID_IDEMPOTENCY_KEY,
+                    "Idempotency-Key was already used for a different payment.");
+        }
+        return stored;
+    }
+}
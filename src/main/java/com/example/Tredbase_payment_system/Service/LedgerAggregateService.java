@@ -0,0 +1,169 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Dto.DailyPaymentSummary;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Entity.AccountPaymentTotal;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Repository.AccountPaymentTotalRepository;
+import com.example.Tredbase_payment_system.Repository.DailyPaymentRollupRepository;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+  Maintains the reporting aggregates (daily rollups by status, per-parent and per-student totals)
+  in the same transaction that writes the payments, so reports are always consistent with
+  committed payments and a dashboard query is a primary-key lookup instead of a scan of payment.
+  Deltas for one payment or a whole batch are collapsed per key and applied with one MERGE batch per table.
+ */
+@Service
+public class LedgerAggregateService {
+
+    private static final String MERGE_DAILY = "MERGE INTO daily_payment_rollup t USING (VALUES " +
+            "(CAST(? AS DATE), CAST(? AS VARCHAR(16)), CAST(? AS INTEGER), CAST(? AS BIGINT), CAST(? AS DECIMAL(19, 2)))) " +
+            "s(rollup_date, status, bucket, cnt, amt) " +
+            "ON t.rollup_date = s.rollup_date AND t.status = s.status AND t.bucket = s.bucket " +
+            "WHEN MATCHED THEN UPDATE SET payment_count = t.payment_count + s.cnt, total_amount = t.total_amount + s.amt " +
+            "WHEN NOT MATCHED THEN INSERT (rollup_date, status, bucket, payment_count, total_amount) " +
+            "VALUES (s.rollup_date, s.status, s.bucket, s.cnt, s.amt)";
+
+    private static final String MERGE_ACCOUNT = "MERGE INTO account_payment_total t USING (VALUES " +
+            "(CAST(? AS VARCHAR(16)), CAST(? AS BIGINT), CAST(? AS BIGINT), CAST(? AS DECIMAL(19, 2)))) " +
+            "s(account_type, account_id, cnt, amt) " +
+            "ON t.account_type = s.account_type AND t.account_id = s.account_id " +
+            "WHEN MATCHED THEN UPDATE SET payment_count = t.payment_count + s.cnt, total_amount = t.total_amount + s.amt " +
+            "WHEN NOT MATCHED THEN INSERT (account_type, account_id, payment_count, total_amount) " +
+            "VALUES (s.account_type, s.account_id, s.cnt, s.amt)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DailyPaymentRollupRepository dailyRollupRepo;
+    @Autowired
+    private AccountPaymentTotalRepository accountTotalRepo;
+
+    // Number of rows each (day, status) total is spread over
+    @Value("${payment.reporting.rollup-buckets:8}")
+    private int rollupBuckets;
+
+    public Deltas newDeltas() {
+        return new Deltas();
+    }
+
+    // Must run inside the transaction that writes the payment(s)
+    public void recordSuccess(LocalDateTime paymentDate, Long studentId, long amount, ParentDebits parentDebits) {
+        Deltas deltas = new Deltas();
+        deltas.success(paymentDate, studentId, amount, parentDebits);
+        apply(deltas);
+    }
+
+    public void recordFailures(List<Payment> failures) {
+        Deltas deltas = new Deltas();
+        for (Payment payment : failures) {
+            deltas.failure(payment.getPaymentDate(), payment.getAmount());
+        }
+        apply(deltas);
+    }
+
+    /*
+      Writes the collected deltas. Rows are merged in key order so concurrent transactions
+      lock them in the same order. Two transactions creating the same row at the same time
+      surface as a ConcurrencyFailureException, which the payment retry loop already handles.
+     */
+    public void apply(Deltas deltas) {
+        if (deltas.daily.isEmpty() && deltas.accounts.isEmpty()) {
+            return;
+        }
+        int bucket = ThreadLocalRandom.current().nextInt(Math.max(1, rollupBuckets));
+
+        List<Object[]> dailyRows = new ArrayList<>(deltas.daily.size());
+        deltas.daily.forEach((key, total) -> dailyRows.add(new Object[]{
+                Date.valueOf(key.day()), key.status().name(), bucket, total.count, Money.toDecimal(total.amount)}));
+        List<Object[]> accountRows = new ArrayList<>(deltas.accounts.size());
+        deltas.accounts.forEach((key, total) -> accountRows.add(new Object[]{
+                key.type().name(), key.accountId(), total.count, Money.toDecimal(total.amount)}));
+
+        try {
+            if (!dailyRows.isEmpty()) {
+                jdbcTemplate.batchUpdate(MERGE_DAILY, dailyRows);
+            }
+            if (!accountRows.isEmpty()) {
+                jdbcTemplate.batchUpdate(MERGE_ACCOUNT, accountRows);
+            }
+        } catch (DuplicateKeyException ex) {
+            throw new ConcurrencyFailureException("Aggregate row created concurrently", ex);
+        }
+    }
+
+    @Transactional(readOnly = true)
+    public List<DailyPaymentSummary> dailySummary(LocalDate from, LocalDate to) {
+        return dailyRollupRepo.summarize(from, to);
+    }
+
+    // Totals for one account; zero when the account has no successful payment yet
+    @Transactional(readOnly = true)
+    public AccountPaymentTotal accountTotal(AccountType type, Long accountId) {
+        return accountTotalRepo.findById(new AccountPaymentTotal.Key(type, accountId))
+                .orElse(new AccountPaymentTotal(type, accountId, 0L, 0L));
+    }
+
+    private record DayKey(LocalDate day, TransactionStatus status) implements Comparable<DayKey> {
+        @Override
+        public int compareTo(DayKey other) {
+            int byDay = day.compareTo(other.day);
+            return byDay != 0 ? byDay : status.compareTo(other.status);
+        }
+    }
+
+    private record AccountKey(AccountType type, long accountId) implements Comparable<AccountKey> {
+        @Override
+        public int compareTo(AccountKey other) {
+            int byType = type.compareTo(other.type);
+            return byType != 0 ? byType : Long.compare(accountId, other.accountId);
+        }
+    }
+
+    private static final class Total {
+        private long count;
+        private long amount;
+
+        private void add(long value) {
+            count++;
+            amount += value;
+        }
+    }
+
+    // Aggregate changes collected for one or more payments before they are written
+    public static final class Deltas {
+        private final SortedMap<DayKey, Total> daily = new TreeMap<>();
+        private final SortedMap<AccountKey, Total> accounts = new TreeMap<>();
+
+        public void success(LocalDateTime paymentDate, Long studentId, long amount, ParentDebits parentDebits) {
+            daily.computeIfAbsent(new DayKey(paymentDate.toLocalDate(), TransactionStatus.SUCCESS), k -> new Total())
+                    .add(amount);
+            accounts.computeIfAbsent(new AccountKey(AccountType.STUDENT, studentId), k -> new Total()).add(amount);
+            for (int i = 0; i < parentDebits.size(); i++) {
+                accounts.computeIfAbsent(new AccountKey(AccountType.PARENT, parentDebits.parentId(i)), k -> new Total())
+                        .add(parentDebits.amount(i));
+            }
+        }
+
+        public void failure(LocalDateTime paymentDate, Long amount) {
+            daily.computeIfAbsent(new DayKey(paymentDate.toLocalDate(), TransactionStatus.FAILED), k -> new Total())
+                    .add(amount == null ? 0L : amount);
+        }
+    }
+}
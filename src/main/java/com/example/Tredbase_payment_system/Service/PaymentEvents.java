@@ -0,0 +1,81 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+  The payment log: one event per payment outcome, with the details as key/value pairs
+  (SLF4J fluent API) instead of a formatted message. Nothing is formatted on the caller's
+  thread: amounts are raw minor units and the pairs are rendered by the appender, which
+  logback-spring.xml runs asynchronously. A disabled level costs a level check.
+
+  Expected rejections (validation, balance, association) are WARN without a stack trace;
+  only unexpected failures are logged at ERROR with one.
+ */
+public final class PaymentEvents {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentEvents.class);
+
+    private PaymentEvents() {
+    }
+
+    // amount is credited to the student; charged (fee included) is split over debits
+    public static void succeeded(Payment payment, long charged, ParentDebits debits) {
+        logger.atInfo()
+                .setMessage("payment succeeded")
+                .addKeyValue("paymentId", payment.getId())
+                .addKeyValue("parentId", payment.getParentId())
+                .addKeyValue("studentId", payment.getStudentId())
+                .addKeyValue("amount", payment.getAmount())
+                .addKeyValue("charged", charged)
+                .addKeyValue("debits", debits)
+                .log();
+    }
+
+    public static void rejected(Long parentId, Long studentId, Long amount, PaymentFailureReason reason, String detail) {
+        logger.atWarn()
+                .setMessage("payment rejected")
+                .addKeyValue("reason", reason)
+                .addKeyValue("parentId", parentId)
+                .addKeyValue("studentId", studentId)
+                .addKeyValue("amount", amount)
+                .addKeyValue("detail", detail)
+                .log();
+    }
+
+    // Anything PaymentMetrics.reasonOf cannot name: a bug or an outage, so the stack trace is kept
+    public static void failed(Long parentId, Long studentId, Long amount, Throwable failure) {
+        logger.atError()
+                .setMessage("payment failed")
+                .setCause(failure)
+                .addKeyValue("reason", PaymentFailureReason.INTERNAL_ERROR)
+                .addKeyValue("parentId", parentId)
+                .addKeyValue("studentId", studentId)
+                .addKeyValue("amount", amount)
+                .log();
+    }
+
+    // Rejected, or failed for an unexpected exception, depending on what went wrong
+    public static void unsuccessful(Long parentId, Long studentId, Long amount, Throwable failure) {
+        PaymentFailureReason reason = PaymentMetrics.reasonOf(failure);
+        if (reason == PaymentFailureReason.INTERNAL_ERROR) {
+            failed(parentId, studentId, amount, failure);
+        } else {
+            rejected(parentId, studentId, amount, reason, failure.getMessage());
+        }
+    }
+
+    public static void batchProcessed(int size, long failed, int parentsUpdated, int studentsUpdated) {
+        logger.atInfo()
+                .setMessage("payment batch processed")
+                .addKeyValue("size", size)
+                .addKeyValue("succeeded", size - failed)
+                .addKeyValue("failed", failed)
+                .addKeyValue("parentsUpdated", parentsUpdated)
+                .addKeyValue("studentsUpdated", studentsUpdated)
+                .log();
+    }
+}
@@ -1,21 +1,272 @@
 package com.example.Tredbase_payment_system.Service;
 
 import com.example.Tredbase_payment_system.Entity.Payment;
-import com.example.Tredbase_payment_system.Repository.PaymentRepository;
-import lombok.RequiredArgsConstructor;
+import com.example.Tredbase_payment_system.Journal.JournalManager;
+import com.example.Tredbase_payment_system.Utils.Money;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  Write-behind log for FAILED payment records.
+  Callers enqueue the record and return immediately; a single writer thread inserts
+  records in JDBC batches, flushing when a batch is full or the flush interval elapses.
+  Each batch is written in its own transaction, so records always commit even when the
+  caller's transaction is rolled back (same guarantee as the former REQUIRES_NEW insert).
+  When the queue is full the caller waits briefly and then writes its record itself,
+  which slows a failing producer down instead of dropping audit records.
+  Remaining records are drained on shutdown. If the database refuses a batch, its records are
+  inserted one at a time, so a bad record costs only itself; refused records are logged in full
+  and counted by payment.audit.dropped.
+  Durability depends on payment.journal.enabled (off by default). With the journal, each record is
+  appended there first and survives a crash that loses the queue. Without it, queued records live
+  only in memory until the writer commits them.
+ */
 @Service
-@RequiredArgsConstructor
 public class PaymentLogService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentLogService.class);
+
+    private static final String INSERT_PAYMENT = "INSERT INTO payment " +
+            "(parent_id, student_id, amount, status, payment_date, description) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final int WRITE_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
     @Autowired
-    private PaymentRepository paymentRepo;
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private LedgerAggregateService ledgerAggregates;
+    @Autowired
+    private JournalManager journal;
+    @Autowired
+    private PaymentMetrics metrics;
+
+    @Value("${payment.audit.queue-capacity:10000}")
+    private int queueCapacity;
+    @Value("${payment.audit.batch-size:500}")
+    private int batchSize;
+    @Value("${payment.audit.flush-interval-ms:100}")
+    private long flushIntervalMs;
+    @Value("${payment.audit.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<Payment> queue;
+    private TransactionTemplate requiresNew;
+    private Thread writer;
+    private volatile boolean running;
+    private volatile boolean flushRequested;
+
+    // Number of records accepted by the queue and number the writer has committed (guarded by progressLock)
+    private final ReentrantLock progressLock = new ReentrantLock();
+    private final Condition progressed = progressLock.newCondition();
+    private long enqueued;
+    private long written;
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        metrics.bindAuditQueue(queue);
+        requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        running = true;
+        writer = Thread.ofPlatform().name("payment-audit-writer").daemon().start(this::runWriter);
+    }
 
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     public void logPayment(Payment payment) {
-        paymentRepo.save(payment);  // always commits, even if main transaction fails
+        long started = System.nanoTime();
+        try {
+            enqueue(payment);
+        } finally {
+            metrics.auditLogged(started);
+        }
+    }
+
+    // Blocks until every record logged before this call has been committed
+    public void flush() {
+        progressLock.lock();
+        try {
+            long target = enqueued;
+            flushRequested = true;
+            while (written < target && running) {
+                progressed.await(flushIntervalMs, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        // The writer exits once the queue is empty; anything left (e.g. after a timeout) is written here
+        List<Payment> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining);
+        }
+    }
+
+    private void enqueue(Payment payment) {
+        // The journal keeps the record across a crash even before the writer has inserted it
+        journal.recordFailure(payment);
+        try {
+            progressLock.lock();
+            try {
+                // Count under the lock so flush() never sees a record counted but not yet queued ahead of it
+                if (queue.offer(payment)) {
+                    enqueued++;
+                    return;
+                }
+            } finally {
+                progressLock.unlock();
+            }
+            if (queue.offer(payment, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                countEnqueued();
+                return;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // Queue is saturated: apply backpressure by writing on the caller's thread
+        logger.warn("Payment audit queue full ({} records), writing synchronously", queueCapacity);
+        metrics.auditWrittenSynchronously();
+        writeBatch(List.of(payment));
+    }
+
+    private void countEnqueued() {
+        progressLock.lock();
+        try {
+            enqueued++;
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    private void runWriter() {
+        List<Payment> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Payment first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Fill the batch until it is full, the interval elapses, or someone is waiting in flush()
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || flushRequested || !running || remaining <= 0) {
+                        break;
+                    }
+                    Payment next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                writeBatch(batch);
+                progressLock.lock();
+                try {
+                    written += batch.size();
+                    if (written >= enqueued) {
+                        flushRequested = false;
+                    }
+                    progressed.signalAll();
+                } finally {
+                    progressLock.unlock();
+                }
+                batch.clear();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /*
+      Inserts the records in one JDBC batch (plus their daily rollups), in a transaction independent
+      of any caller. When the batch fails for good, each record is tried on its own.
+     */
+    private void writeBatch(List<Payment> payments) {
+        long started = System.nanoTime();
+        RuntimeException failure = insert(payments);
+        if (failure != null && payments.size() > 1) {
+            logger.warn("Failed to write a batch of {} payment audit records, writing them one at a time: {}",
+                    payments.size(), failure.toString());
+            for (Payment payment : payments) {
+                RuntimeException refused = insert(List.of(payment));
+                if (refused != null) {
+                    dropped(payment, refused);
+                }
+            }
+        } else if (failure != null) {
+            dropped(payments.get(0), failure);
+        }
+        metrics.auditBatchWritten(started);
+    }
+
+    // Null once the records are committed, otherwise why they were not; only conflicts are retried
+    private RuntimeException insert(List<Payment> payments) {
+        List<Object[]> rows = new ArrayList<>(payments.size());
+        for (Payment payment : payments) {
+            rows.add(new Object[]{
+                    payment.getParentId(),
+                    payment.getStudentId(),
+                    payment.getAmount() == null ? null : Money.toDecimal(payment.getAmount()),
+                    payment.getStatus().name(),
+                    Timestamp.valueOf(payment.getPaymentDate()),
+                    payment.getDescription()
+            });
+        }
+        for (int attempt = 1; ; attempt++) {
+            try {
+                requiresNew.executeWithoutResult(status -> {
+                    jdbcTemplate.batchUpdate(INSERT_PAYMENT, rows);
+                    ledgerAggregates.recordFailures(payments);
+                });
+                return null;
+            } catch (ConcurrencyFailureException ex) {
+                if (attempt >= WRITE_ATTEMPTS) {
+                    return ex;
+                }
+            } catch (RuntimeException ex) {
+                return ex;
+            }
+        }
+    }
+
+    private void dropped(Payment payment, RuntimeException ex) {
+        // Never lose the audit trail silently: the record is at least in the application log
+        logger.error("Failed to write payment audit record: {}", payment, ex);
+        metrics.auditDropped();
     }
 }
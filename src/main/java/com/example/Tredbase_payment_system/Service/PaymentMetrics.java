@@ -0,0 +1,352 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.PaymentStage;
+import com.example.Tredbase_payment_system.Enums.RateLimitScope;
+import com.example.Tredbase_payment_system.Enums.SubmissionStatus;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import io.micrometer.core.instrument.*;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Micrometer instrumentation of the payment hot path, exported on /actuator/prometheus.
+  Every meter is registered up front and kept in EnumMaps, so recording on the hot path is a
+  System.nanoTime() call and a lock-free Timer/Counter update, without tag lookups or allocation.
+
+    payment.stage{stage}               latency of each processPayment stage
+    payment.process{result}            end-to-end processPayment latency
+    payment.requests{result, reason}   processed payments (single and batch items)
+    payment.retries                    transactions re-run after a version conflict
+    payment.idempotent.replays         requests answered with the payment their Idempotency-Key already made
+    payment.idempotency.keys           keys held by IdempotencyIndex
+    payment.inflight{operation}        payments and batches currently being processed
+    payment.batch.size                 requests per batch
+    payment.audit.log                  time callers spend in PaymentLogService.logPayment
+    payment.audit.write                audit writer batch latency; payment.audit.pending is the queue depth
+    payment.audit.sync.writes          records written on the caller's thread because the queue was full
+    payment.audit.dropped              records the database refused even on their own (only in the application log)
+    payment.async.submissions{result}  POST /api/payments/async requests accepted into the queue or shed
+    payment.async.stage{stage}         per-stage latency (and, from its count, throughput) of asynchronous
+                                       payments: queue_wait until a worker takes it, processing until final
+    payment.async.completed{status}    asynchronous payments finished, by final status
+    payment.async.queued               submissions waiting for a worker
+    payment.engine.checkpoint          balance engine checkpoint latency; payment.engine.pending is the number
+                                       of settled payments not yet written, payment.engine.quarantined the
+                                       number whose row the database refused (payment.engine.enabled only)
+    payment.reconciliation             ledger reconciliation run latency; payment.reconciliation.discrepancies
+                                       is the number of failed invariants the last run found
+    payment.ratelimit.rejected{scope}  payment requests turned away with 429 by the parent or global bucket
+    payment.ratelimit.buckets          per-parent buckets held by PaymentRateLimiter;
+                                       payment.ratelimit.global.tokens is what the global bucket has left
+    cache.gets/evictions/size{cache="family_graph"}   FamilyGraphCache statistics (standard cache meter names)
+    cache.gets/size{cache="credentials"}              verified HTTP Basic credentials (registered in WebSecurityConfig)
+ */
+@Component
+public class PaymentMetrics {
+
+    private final MeterRegistry registry;
+    private final Map<PaymentStage, Timer> stages = new EnumMap<>(PaymentStage.class);
+    private final Map<PaymentFailureReason, Counter> failures = new EnumMap<>(PaymentFailureReason.class);
+    private final Counter successes;
+    private final Timer succeededPayments;
+    private final Timer failedPayments;
+    private final Counter retries;
+    private final Counter idempotentReplays;
+    private final AtomicInteger paymentsInFlight = new AtomicInteger();
+    private final AtomicInteger batchesInFlight = new AtomicInteger();
+    private final DistributionSummary batchSize;
+    private final Timer auditLog;
+    private final Timer auditWrite;
+    private final Counter auditSyncWrites;
+    private final Counter auditDropped;
+    private final Counter submissionsAccepted;
+    private final Counter submissionsShed;
+    private final Timer submissionQueueWait;
+    private final Timer submissionProcessing;
+    private final Map<SubmissionStatus, Counter> submissionsCompleted = new EnumMap<>(SubmissionStatus.class);
+    private final Timer engineCheckpoint;
+    private final Map<RateLimitScope, Counter> rateLimited = new EnumMap<>(RateLimitScope.class);
+    private final Timer reconciliation;
+    private final AtomicLong discrepancies = new AtomicLong();
+
+    public PaymentMetrics(MeterRegistry registry, FamilyGraphCache familyGraph, IdempotencyIndex idempotencyIndex) {
+        this.registry = registry;
+        for (PaymentStage stage : PaymentStage.values()) {
+            stages.put(stage, Timer.builder("payment.stage")
+                    .description("Latency of one processPayment stage")
+                    .tag("stage", tagValue(stage))
+                    .register(registry));
+        }
+        for (PaymentFailureReason reason : PaymentFailureReason.values()) {
+            failures.put(reason, requests("failed", tagValue(reason)));
+        }
+        successes = requests("success", "none");
+        succeededPayments = processTimer("success");
+        failedPayments = processTimer("failed");
+        retries = Counter.builder("payment.retries")
+                .description("Payment transactions re-run after a version conflict")
+                .register(registry);
+        idempotentReplays = Counter.builder("payment.idempotent.replays")
+                .description("Requests answered with the payment their Idempotency-Key already made")
+                .register(registry);
+        Gauge.builder("payment.idempotency.keys", idempotencyIndex, IdempotencyIndex::size)
+                .description("Idempotency keys held in memory")
+                .register(registry);
+        Gauge.builder("payment.inflight", paymentsInFlight, AtomicInteger::get)
+                .description("Payments and batches currently being processed")
+                .tag("operation", "payment")
+                .register(registry);
+        Gauge.builder("payment.inflight", batchesInFlight, AtomicInteger::get)
+                .description("Payments and batches currently being processed")
+                .tag("operation", "batch")
+                .register(registry);
+        batchSize = DistributionSummary.builder("payment.batch.size")
+                .description("Requests per payment batch")
+                .register(registry);
+        auditLog = Timer.builder("payment.audit.log")
+                .description("Time callers spend handing a FAILED record to the audit log")
+                .register(registry);
+        auditWrite = Timer.builder("payment.audit.write")
+                .description("Audit writer batch latency")
+                .register(registry);
+        auditSyncWrites = Counter.builder("payment.audit.sync.writes")
+                .description("Audit records written on the caller's thread because the queue was full")
+                .register(registry);
+        auditDropped = Counter.builder("payment.audit.dropped")
+                .description("Audit records the database refused, written only to the application log")
+                .register(registry);
+        submissionsAccepted = submissions("accepted");
+        submissionsShed = submissions("shed");
+        submissionQueueWait = submissionStage("queue_wait");
+        submissionProcessing = submissionStage("processing");
+        for (SubmissionStatus status : SubmissionStatus.values()) {
+            if (status.isFinal()) {
+                submissionsCompleted.put(status, Counter.builder("payment.async.completed")
+                        .description("Asynchronous payments finished, by final status")
+                        .tag("status", tagValue(status))
+                        .register(registry));
+            }
+        }
+        engineCheckpoint = Timer.builder("payment.engine.checkpoint")
+                .description("Balance engine checkpoint latency")
+                .register(registry);
+        for (RateLimitScope scope : RateLimitScope.values()) {
+            rateLimited.put(scope, Counter.builder("payment.ratelimit.rejected")
+                    .description("Payment requests rejected by a rate limit bucket")
+                    .tag("scope", tagValue(scope))
+                    .register(registry));
+        }
+        reconciliation = Timer.builder("payment.reconciliation")
+                .description("Ledger reconciliation run latency")
+                .register(registry);
+        Gauge.builder("payment.reconciliation.discrepancies", discrepancies, AtomicLong::get)
+                .description("Failed ledger invariants found by the last reconciliation run")
+                .register(registry);
+        bindFamilyGraphCache(familyGraph);
+    }
+
+    // Marks the start of a payment; returns the start time for stage() and paymentFinished()
+    public long paymentStarted() {
+        paymentsInFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    // Records the stage as ending now and returns now, so consecutive stages chain: t = stage(X, t)
+    public long stage(PaymentStage stage, long startNanos) {
+        long now = System.nanoTime();
+        stages.get(stage).record(now - startNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    // failure is null when the payment succeeded
+    public void paymentFinished(long startNanos, Throwable failure) {
+        long elapsed = System.nanoTime() - startNanos;
+        paymentsInFlight.decrementAndGet();
+        if (failure == null) {
+            successes.increment();
+            succeededPayments.record(elapsed, TimeUnit.NANOSECONDS);
+        } else {
+            PaymentFailureReason reason = reasonOf(failure);
+            failures.get(reason).increment();
+            failedPayments.record(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // A repeated Idempotency-Key answered before the payment started
+    public void idempotentReplay() {
+        idempotentReplays.increment();
+    }
+
+    // A started payment that turned out to repeat an Idempotency-Key; neither a success nor a failure
+    public void paymentReplayed() {
+        paymentsInFlight.decrementAndGet();
+        idempotentReplays.increment();
+    }
+
+    public void batchStarted(int size) {
+        batchesInFlight.incrementAndGet();
+        batchSize.record(size);
+    }
+
+    // Counts the items of a committed batch
+    public void batchFinished(int succeeded, Map<PaymentFailureReason, Integer> failedByReason) {
+        batchesInFlight.decrementAndGet();
+        successes.increment(succeeded);
+        failedByReason.forEach((reason, count) -> failures.get(reason).increment(count));
+    }
+
+    public void batchAborted() {
+        batchesInFlight.decrementAndGet();
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    public void auditLogged(long startNanos) {
+        auditLog.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void auditBatchWritten(long startNanos) {
+        auditWrite.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void auditWrittenSynchronously() {
+        auditSyncWrites.increment();
+    }
+
+    public void auditDropped() {
+        auditDropped.increment();
+    }
+
+    public void bindAuditQueue(Collection<?> queue) {
+        Gauge.builder("payment.audit.pending", queue, Collection::size)
+                .description("FAILED records waiting for the audit writer")
+                .register(registry);
+    }
+
+    public void submissionAccepted() {
+        submissionsAccepted.increment();
+    }
+
+    public void submissionShed() {
+        submissionsShed.increment();
+    }
+
+    // Records the queue wait of a submission a worker just took; returns now for submissionFinished()
+    public long submissionDequeued(long enqueuedNanos) {
+        long now = System.nanoTime();
+        submissionQueueWait.record(now - enqueuedNanos, TimeUnit.NANOSECONDS);
+        return now;
+    }
+
+    public void submissionFinished(long startNanos, SubmissionStatus status) {
+        submissionProcessing.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        submissionsCompleted.get(status).increment();
+    }
+
+    public void bindSubmissionQueue(Collection<?> queue) {
+        Gauge.builder("payment.async.queued", queue, Collection::size)
+                .description("Asynchronous payments waiting for a worker")
+                .register(registry);
+    }
+
+    public void reconciled(long startNanos, long found) {
+        reconciliation.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        discrepancies.set(found);
+    }
+
+    public void engineCheckpointed(long startNanos) {
+        engineCheckpoint.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void bindEnginePending(Collection<?> pending, Collection<?> quarantined) {
+        Gauge.builder("payment.engine.pending", pending, Collection::size)
+                .description("Payments settled by the balance engine and not yet checkpointed")
+                .register(registry);
+        Gauge.builder("payment.engine.quarantined", quarantined, Collection::size)
+                .description("Payments settled by the balance engine whose row the database refused")
+                .register(registry);
+    }
+
+    public void rateLimited(RateLimitScope scope) {
+        rateLimited.get(scope).increment();
+    }
+
+    public void bindRateLimiter(PaymentRateLimiter limiter) {
+        Gauge.builder("payment.ratelimit.buckets", limiter, PaymentRateLimiter::trackedParents)
+                .description("Per-parent rate limit buckets currently tracked")
+                .register(registry);
+        Gauge.builder("payment.ratelimit.global.tokens", limiter, PaymentRateLimiter::globalTokens)
+                .description("Tokens left in the global payment rate limit bucket")
+                .register(registry);
+    }
+
+    public static PaymentFailureReason reasonOf(Throwable failure) {
+        if (failure instanceof PaymentException paymentException) {
+            return paymentException.getReason();
+        }
+        if (failure instanceof ConcurrencyFailureException) {
+            return PaymentFailureReason.CONCURRENT_UPDATE;
+        }
+        return PaymentFailureReason.INTERNAL_ERROR;
+    }
+
+    // Read from the cache's own LongAdders at scrape time; nothing is added to the lookup path
+    private void bindFamilyGraphCache(FamilyGraphCache familyGraph) {
+        FunctionCounter.builder("cache.gets", familyGraph, cache -> cache.stats().getHits())
+                .tags("cache", "family_graph", "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("cache.gets", familyGraph, cache -> cache.stats().getMisses())
+                .tags("cache", "family_graph", "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("cache.evictions", familyGraph, cache -> cache.stats().getEvictions())
+                .tag("cache", "family_graph")
+                .register(registry);
+        Gauge.builder("cache.size", familyGraph, cache -> cache.stats().getSize())
+                .tag("cache", "family_graph")
+                .register(registry);
+    }
+
+    private Timer processTimer(String result) {
+        return Timer.builder("payment.process")
+                .description("End-to-end processPayment latency")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Counter submissions(String result) {
+        return Counter.builder("payment.async.submissions")
+                .description("Asynchronous payment submissions accepted or shed")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private Timer submissionStage(String stage) {
+        return Timer.builder("payment.async.stage")
+                .description("Latency of one stage of an asynchronous payment")
+                .tag("stage", stage)
+                .register(registry);
+    }
+
+    private Counter requests(String result, String reason) {
+        return Counter.builder("payment.requests")
+                .description("Processed payments by result and failure reason")
+                .tag("result", result)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
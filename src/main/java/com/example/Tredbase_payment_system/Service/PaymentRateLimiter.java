@@ -0,0 +1,216 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Enums.RateLimitScope;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  Token buckets checked by PaymentController before a payment request reaches PaymentService:
+  one per paying parent, so a single flooding integration cannot monopolise that parent's rows
+  and locks, and one global bucket for all payment requests.
+
+  Each bucket is a single AtomicLong holding its "theoretical arrival time" (the generic cell rate
+  algorithm, equivalent to a token bucket refilled at rate-per-second up to burst tokens), updated
+  with a CAS loop: no locks, no refill thread, and no allocation once the bucket exists.
+  The per-parent map is bounded by max-parents. A bucket whose arrival time has passed is full,
+  which is the same as having no bucket, so idle buckets are swept when the map is full; if every
+  tracked bucket is still active, a new parent is limited by the global bucket alone.
+ */
+@Component
+public class PaymentRateLimiter {
+
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Autowired
+    private PaymentMetrics metrics;
+
+    @Value("${payment.rate-limit.enabled:true}")
+    private boolean enabled;
+    @Value("${payment.rate-limit.global.rate-per-second:2000}")
+    private double globalRate;
+    @Value("${payment.rate-limit.global.burst:2000}")
+    private int globalBurst;
+    @Value("${payment.rate-limit.parent.rate-per-second:20}")
+    private double parentRate;
+    @Value("${payment.rate-limit.parent.burst:40}")
+    private int parentBurst;
+    @Value("${payment.rate-limit.max-parents:100000}")
+    private int maxParents;
+
+    private long globalInterval;
+    private long globalTolerance;
+    private long parentInterval;
+    private long parentTolerance;
+
+    private final AtomicLong global = new AtomicLong(System.nanoTime());
+    private final ConcurrentHashMap<Long, AtomicLong> parents = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    @PostConstruct
+    void start() {
+        globalInterval = intervalOf(globalRate);
+        globalTolerance = globalInterval * globalBurst;
+        parentInterval = intervalOf(parentRate);
+        parentTolerance = parentInterval * parentBurst;
+        metrics.bindRateLimiter(this);
+    }
+
+    /*
+      Takes a token for one payment of the parent (null: the global bucket only).
+      Returns 0 if the request may proceed, otherwise the nanoseconds until it would be allowed.
+     */
+    public long tryAcquire(Long parentId) {
+        return tryAcquire(parentId, 1);
+    }
+
+    // Same for `count` payments of one parent at once
+    public long tryAcquire(Long parentId, int count) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        AtomicLong parent = parentId == null ? null : bucketOf(parentId, now);
+        if (parent != null) {
+            long wait = take(parent, now, parentInterval * count, parentTolerance);
+            if (wait > 0) {
+                metrics.rateLimited(RateLimitScope.PARENT);
+                return wait;
+            }
+        }
+        // Checked second, so a parent over its own limit does not use up everyone's capacity
+        long wait = take(global, now, globalInterval * count, globalTolerance);
+        if (wait > 0) {
+            if (parent != null) {
+                parent.addAndGet(-parentInterval * count);
+            }
+            metrics.rateLimited(RateLimitScope.GLOBAL);
+            return wait;
+        }
+        return 0;
+    }
+
+    /*
+      Takes tokens for a batch: each parent's item count from its own bucket, then every item from
+      the global bucket. All or nothing: when a bucket refuses, the tokens already taken are given
+      back. Returns 0 or the nanoseconds until the refusing bucket would allow it.
+     */
+    public long tryAcquireBatch(Map<Long, Integer> itemsByParent, int items) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        AtomicLong[] charged = new AtomicLong[itemsByParent.size()];
+        long[] costs = new long[charged.length];
+        int taken = 0;
+        for (Map.Entry<Long, Integer> entry : itemsByParent.entrySet()) {
+            AtomicLong parent = bucketOf(entry.getKey(), now);
+            if (parent == null) {
+                continue;
+            }
+            long cost = parentInterval * entry.getValue();
+            long wait = take(parent, now, cost, parentTolerance);
+            if (wait > 0) {
+                giveBack(charged, costs, taken);
+                metrics.rateLimited(RateLimitScope.PARENT);
+                return wait;
+            }
+            charged[taken] = parent;
+            costs[taken++] = cost;
+        }
+        long wait = take(global, now, globalInterval * items, globalTolerance);
+        if (wait > 0) {
+            giveBack(charged, costs, taken);
+            metrics.rateLimited(RateLimitScope.GLOBAL);
+            return wait;
+        }
+        return 0;
+    }
+
+    // False for a batch no wait would let through: more items than a bucket's burst
+    public boolean admits(Map<Long, Integer> itemsByParent, int items) {
+        if (!enabled) {
+            return true;
+        }
+        if (items > globalBurst) {
+            return false;
+        }
+        for (int parentItems : itemsByParent.values()) {
+            if (parentItems > parentBurst) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int trackedParents() {
+        return parents.size();
+    }
+
+    // Tokens the global bucket holds right now, 0 to global.burst
+    public double globalTokens() {
+        long used = Math.max(0, global.get() - System.nanoTime());
+        return Math.max(0, (globalTolerance - used) / (double) globalInterval);
+    }
+
+    public void reset() {
+        parents.clear();
+        global.set(System.nanoTime());
+    }
+
+    // Advances the bucket's arrival time by cost unless that passes now + tolerance; returns the wait
+    private static long take(AtomicLong bucket, long now, long cost, long tolerance) {
+        while (true) {
+            long arrival = bucket.get();
+            // nanoTime values are compared by difference only, as they may wrap
+            long next = (arrival - now > 0 ? arrival : now) + cost;
+            long excess = next - now - tolerance;
+            if (excess > 0) {
+                return excess;
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private static void giveBack(AtomicLong[] buckets, long[] costs, int count) {
+        for (int i = 0; i < count; i++) {
+            buckets[i].addAndGet(-costs[i]);
+        }
+    }
+
+    private AtomicLong bucketOf(Long parentId, long now) {
+        AtomicLong bucket = parents.get(parentId);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (parents.size() >= maxParents) {
+            sweep(now);
+            if (parents.size() >= maxParents) {
+                return null;
+            }
+        }
+        // A new bucket starts full: its arrival time is now
+        return parents.computeIfAbsent(parentId, id -> new AtomicLong(now));
+    }
+
+    // Drops full (idle) buckets; at most one sweep per interval, so a full map of active buckets stays cheap
+    private void sweep(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        parents.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    private static long intervalOf(double ratePerSecond) {
+        return Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+    }
+}
@@ -1,22 +1,53 @@
 package com.example.Tredbase_payment_system.Service;
 
+import com.example.Tredbase_payment_system.Dto.Guardians;
+import com.example.Tredbase_payment_system.Dto.PageResponse;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Dto.PaymentFilter;
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
 import com.example.Tredbase_payment_system.Entity.Parent;
 import com.example.Tredbase_payment_system.Entity.Payment;
 import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Engine.InMemorySettlement;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.PaymentStage;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import com.example.Tredbase_payment_system.Journal.JournalManager;
+import com.example.Tredbase_payment_system.Journal.JournalRecord;
 import com.example.Tredbase_payment_system.Repository.ParentRepository;
 import com.example.Tredbase_payment_system.Repository.PaymentRepository;
 import com.example.Tredbase_payment_system.Repository.StudentRepository;
 import com.example.Tredbase_payment_system.Enums.TransactionStatus;
-import jakarta.transaction.Transactional;
+import com.example.Tredbase_payment_system.Utils.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +55,19 @@ public class PaymentService {
 
     private static final Logger logger = LoggerFactory.getLogger(PaymentService.class);
 
+    // Upper bound for IN-lists and JDBC batches used by batch settlement
+    private static final int BATCH_CHUNK_SIZE = 1000;
+
+    // Largest page a listing endpoint returns, and the page size used internally by exports
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int EXPORT_PAGE_SIZE = 500;
+
+    // The ids of a batch's payments, taken from the sequence every insert path shares
+    private static final String NEXT_PAYMENT_IDS = "SELECT NEXT VALUE FOR payment_id_seq FROM SYSTEM_RANGE(1, ?)";
+
+    // Parent debit statements by number of charged parents, see debitParents
+    private static final Map<Integer, String> PARENT_DEBIT_SQL = new ConcurrentHashMap<>();
+
     @Autowired
     private final ParentRepository parentRepo;
     @Autowired
@@ -32,102 +76,299 @@ public class PaymentService {
     private final PaymentRepository paymentRepo;
     @Autowired
     private final PaymentLogService paymentLogService;
+    @Autowired
+    private final JdbcTemplate jdbcTemplate;
+    @Autowired
+    private final TransactionTemplate transactionTemplate;
+    @Autowired
+    private final AccountLockManager lockManager;
+    @Autowired
+    private final FamilyGraphCache familyGraph;
+    @Autowired
+    private final LedgerAggregateService ledgerAggregates;
+    @Autowired
+    private final EntityManager entityManager;
+    @Autowired
+    private final ObjectMapper objectMapper;
+    @Autowired
+    private final JournalManager journal;
+    @Autowired
+    private final PaymentMetrics metrics;
+    @Autowired
+    private final IdempotencyIndex idempotencyIndex;
+    @Autowired
+    private final FeeEngine feeEngine;
+    @Autowired
+    private final InMemorySettlement inMemorySettlement;
+
+    // How many times a transaction is re-run after losing an optimistic version check
+    @Value("${payment.concurrency.max-attempts:5}")
+    private int maxAttempts;
 
     /*
       Process a payment from a specific parent to a specific student.
       Ensures that only the student's own parent can pay.
-      Splits payment among parents if the student is shared,
-      or charges the initiating parent fully if not shared.
+      Splits payment among all of the student's parents (weighted by guardian_share) if the
+      student is shared, or charges the initiating parent fully if not shared.
+      The paying parent and the student are locked in-process for the whole transaction; all
+      charged parents are debited, row-locked and balance-checked by one UPDATE, and a conflict
+      on the student is detected by @Version and the transaction is retried.
+     */
+    public Payment processPayment(Long parentId, Long studentId, Long paymentAmount) {
+        return processPayment(parentId, studentId, paymentAmount, null);
+    }
+
+    /*
+      Same, deduplicated by idempotencyKey (null = no deduplication): a key that already paid
+      returns that payment instead of charging again. Repeats are answered from IdempotencyIndex
+      without touching the database; behind it, the unique Payment.idempotencyKey column decides
+      after a restart or between concurrent duplicates. Only a successful payment binds its key,
+      so a rejected request may be retried under the same key.
+     */
+    public Payment processPayment(Long parentId, Long studentId, Long paymentAmount, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            IdempotencyIndex.validate(idempotencyKey);
+            Payment stored = idempotencyIndex.find(idempotencyKey);
+            if (stored != null) {
+                metrics.idempotentReplay();
+                return IdempotencyIndex.checkSameRequest(stored, parentId, studentId, paymentAmount);
+            }
+        }
+        if (inMemorySettlement.isEnabled()) {
+            return processInMemory(parentId, studentId, paymentAmount, idempotencyKey);
+        }
+        long started = metrics.paymentStarted();
+        RuntimeException failure = null;
+        boolean replayed = false;
+        try (AccountLockManager.Held ignored = lockManager.lock(
+                Collections.singletonList(parentId), Collections.singletonList(studentId))) {
+            long locked = metrics.stage(PaymentStage.LOCK_WAIT, started);
+            // A duplicate that waited on the lock, or a key from before a restart
+            Payment stored = idempotencyKey == null ? null : findByIdempotencyKey(idempotencyKey);
+            if (stored != null) {
+                replayed = true;
+                return IdempotencyIndex.checkSameRequest(stored, parentId, studentId, paymentAmount);
+            }
+            try {
+                long[] settled = {locked};
+                Payment[] payment = new Payment[1];
+                withRetry(() -> transactionTemplate.execute(status -> {
+                    payment[0] = new Payment();
+                    payment[0].setIdempotencyKey(idempotencyKey);
+                    settled[0] = settlePayment(payment[0], parentId, studentId, paymentAmount, settled[0]);
+                    return null;
+                }));
+                metrics.stage(PaymentStage.COMMIT, settled[0]);
+                if (idempotencyKey != null) {
+                    // Still under the account locks, so no duplicate can slip in before this
+                    idempotencyIndex.put(idempotencyKey, payment[0]);
+                }
+                return payment[0];
+            } catch (DataIntegrityViolationException ex) {
+                // Lost the unique key to a concurrent request on other accounts (or another instance)
+                stored = idempotencyKey == null ? null : findByIdempotencyKey(idempotencyKey);
+                if (stored == null) {
+                    throw ex;
+                }
+                replayed = true;
+                return IdempotencyIndex.checkSameRequest(stored, parentId, studentId, paymentAmount);
+            } catch (ConcurrencyFailureException ex) {
+                // Retries exhausted: record the failure like any other rejected payment
+                Payment failedPayment = new Payment();
+                failedPayment.setParentId(parentId);
+                failedPayment.setStudentId(studentId);
+                failedPayment.setAmount(paymentAmount);
+                failedPayment.setPaymentDate(LocalDateTime.now());
+                failedPayment.setStatus(TransactionStatus.FAILED);
+                failedPayment.setDescription("Payment failed: concurrent update conflict, please retry.");
+                paymentLogService.logPayment(failedPayment);
+                PaymentEvents.rejected(parentId, studentId, paymentAmount, PaymentFailureReason.CONCURRENT_UPDATE,
+                        "gave up after " + maxAttempts + " attempts");
+                throw ex;
+            }
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            if (replayed) {
+                metrics.paymentReplayed();
+            } else {
+                metrics.paymentFinished(started, failure);
+            }
+        }
+    }
+
+    /*
+      processPayment on the in-memory balance engine (payment.engine.enabled): same checks, FAILED
+      records and metrics, but the balances change in InMemorySettlement instead of a transaction.
+      The account locks are only needed to keep duplicates of one Idempotency-Key in order.
      */
-    @Transactional
-    public void processPayment(Long parentId, Long studentId, Double paymentAmount) {
+    private Payment processInMemory(Long parentId, Long studentId, Long paymentAmount, String idempotencyKey) {
+        long started = metrics.paymentStarted();
+        RuntimeException failure = null;
+        boolean replayed = false;
+        try (AccountLockManager.Held ignored = idempotencyKey == null ? () -> { } : lockManager.lock(
+                Collections.singletonList(parentId), Collections.singletonList(studentId))) {
+            // Read before the lookup, so settle can tell whether a checkpoint moved the key meanwhile
+            long checkpoints = inMemorySettlement.checkpoints();
+            Payment stored = idempotencyKey == null ? null : findByIdempotencyKey(idempotencyKey);
+            if (stored != null) {
+                replayed = true;
+                return IdempotencyIndex.checkSameRequest(stored, parentId, studentId, paymentAmount);
+            }
+            Payment payment = newPayment(parentId, studentId, paymentAmount);
+            payment.setIdempotencyKey(idempotencyKey);
+            Payment settled;
+            try {
+                settled = inMemorySettlement.settle(payment, checkpoints);
+            } catch (PaymentException ex) {
+                if (ex.getReason() != PaymentFailureReason.INVALID_IDEMPOTENCY_KEY) {
+                    logFailure(parentId, studentId, paymentAmount, ex);
+                }
+                throw ex;
+            }
+            if (settled != payment) {
+                // A concurrent request with the same key settled first
+                replayed = true;
+                return settled;
+            }
+            if (idempotencyKey != null) {
+                idempotencyIndex.put(idempotencyKey, payment);
+            }
+            return payment;
+        } catch (RuntimeException ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            if (replayed) {
+                metrics.paymentReplayed();
+            } else {
+                metrics.paymentFinished(started, failure);
+            }
+        }
+    }
 
-        Payment successpayment = new Payment();
+    private static Payment newPayment(Long parentId, Long studentId, Long paymentAmount) {
+        Payment payment = new Payment();
+        payment.setParentId(parentId);
+        payment.setStudentId(studentId);
+        payment.setAmount(paymentAmount);
+        return payment;
+    }
+
+    // Hands a FAILED record for a rejected payment to the write-behind audit log
+    private Payment logFailure(Long parentId, Long studentId, Long paymentAmount, Exception ex) {
+        Payment failedPayment = newPayment(parentId, studentId, paymentAmount);
+        failedPayment.setPaymentDate(LocalDateTime.now());
+        failedPayment.setStatus(TransactionStatus.FAILED);
+        failedPayment.setDescription("Payment failed: " + ex.getMessage());
+        paymentLogService.logPayment(failedPayment);
+        PaymentEvents.unsuccessful(parentId, studentId, paymentAmount, ex);
+        return failedPayment;
+    }
+
+    // Index first, then the database; a database hit is put back into the index
+    private Payment findByIdempotencyKey(String idempotencyKey) {
+        Payment stored = idempotencyIndex.find(idempotencyKey);
+        if (stored == null) {
+            stored = paymentRepo.findByIdempotencyKey(idempotencyKey).orElse(null);
+            if (stored != null) {
+                idempotencyIndex.put(idempotencyKey, stored);
+            }
+        }
+        return stored;
+    }
+
+    /*
+      Runs inside the transaction opened by processPayment and fills in successpayment.
+      Each numbered step is timed from stageStart; returns the time the last step finished.
+     */
+    private long settlePayment(Payment successpayment, Long parentId, Long studentId, Long paymentAmount,
+                               long stageStart) {
+        long t = stageStart;
 
         try {
             // 1. Validate parent
             Parent payingParent = parentRepo.findById(parentId)
-                    .orElseThrow(() -> {
-                        String msg = "Parent not found with ID: " + parentId;
-                        logger.error(msg);
-                        return new IllegalArgumentException(msg);
-                    });
+                    .orElseThrow(() -> new PaymentException(PaymentFailureReason.PARENT_NOT_FOUND,
+                            "Parent not found with ID: " + parentId));
+            t = metrics.stage(PaymentStage.PARENT_LOOKUP, t);
 
             // 2. Validate student
             Student student = studentRepo.findById(studentId)
-                    .orElseThrow(() -> {
-                        String msg = "Student not found with ID: " + studentId;
-                        logger.error(msg);
-                        return new IllegalArgumentException(msg);
-                    });
-
-            // 3. Check if parent is associated with that student
-            boolean isAssociated = student.getParents()
-                    .stream()
-                    .anyMatch(p -> p.getId().equals(payingParent.getId()));
+                    .orElseThrow(() -> new PaymentException(PaymentFailureReason.STUDENT_NOT_FOUND,
+                            "Student not found with ID: " + studentId));
+            t = metrics.stage(PaymentStage.STUDENT_LOOKUP, t);
+
+            // 3. Check if parent is associated with that student (in-memory family graph)
+            Guardians guardians = familyGraph.guardiansOf(studentId);
+            boolean isAssociated = guardians.includes(parentId);
             if (!isAssociated) {
-                String msg = String.format("Parent (ID=%d) not associated with Student (ID=%d).",
-                        parentId, studentId);
-                logger.error(msg);
-                throw new IllegalArgumentException(msg);
+                throw new PaymentException(PaymentFailureReason.NOT_ASSOCIATED,
+                        "Parent (ID=" + parentId + ") not associated with Student (ID=" + studentId + ").");
             }
+            t = metrics.stage(PaymentStage.ASSOCIATION_CHECK, t);
 
             // 4. Validate payment amount
-            double dynamicRate = 0.05;
-            double adjustedAmount = paymentAmount * (1 + dynamicRate);
-            logger.info("Payment request: parentId={}, studentId={}, paymentAmount={}, adjustedAmount={}",
-                    parentId, studentId, paymentAmount, adjustedAmount);
+            if (paymentAmount == null) {
+                throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount is required.");
+            }
+            if (paymentAmount <= 0) {
+                throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount must be greater than zero.");
+            }
+            long adjustedAmount = feeEngine.adjustedAmount(paymentAmount, student.getSchool(), student.getTier(),
+                    LocalDate.now().toEpochDay());
+            t = metrics.stage(PaymentStage.AMOUNT_CALCULATION, t);
 
-            // 5. Check if parent has sufficient balance
-            if (payingParent.getBalance() < adjustedAmount) {
-                String msg = "Insufficient balance for parent ID: " + parentId;
-                logger.warn(msg);
-                throw new IllegalArgumentException(msg);
+            // 5. Check if parent has sufficient balance (shared parents are checked per share in step 6)
+            if (guardians.size() < 2 && payingParent.getBalance() < adjustedAmount) {
+                throw new PaymentException(PaymentFailureReason.INSUFFICIENT_BALANCE,
+                        "Insufficient balance for parent ID: " + parentId);
             }
+            t = metrics.stage(PaymentStage.BALANCE_CHECK, t);
 
             // 6. Deduct amount from parent(s)
-            if (student.getParents().size() == 2) {
-                // Shared student => split the payment among the two parents
-                for (Parent parent : student.getParents()) {
-                    double halfDeduction = adjustedAmount / 2;
-                    if (parent.getBalance() < halfDeduction) {
-                        String msg = String.format("Insufficient balance in one of the shared parents (ID=%d).",
-                                parent.getId());
-                        logger.warn(msg);
-                        throw new IllegalArgumentException(msg);
-                    }
-                    parent.setBalance(parent.getBalance() - halfDeduction);
-                    parentRepo.save(parent);
-                    logger.info("Deducted {} from shared Parent (ID={}). New balance={}",
-                            halfDeduction, parent.getId(), parent.getBalance());
-                }
-            } else {
-                // Unique student => only the paying parent is charged
-                payingParent.setBalance(payingParent.getBalance() - adjustedAmount);
-                parentRepo.save(payingParent);
-                logger.info("Deducted {} from Parent (ID={}). New balance={}",
-                        adjustedAmount, payingParent.getId(), payingParent.getBalance());
-            }
+            // Shared student => weighted split among all parents; unique => paying parent only
+            ParentDebits debits = PaymentSplitter.shares(parentId, guardians, adjustedAmount);
+            debitParents(debits);
+            t = metrics.stage(PaymentStage.PARENT_DEBIT, t);
 
             // 7. Update student's balance
-            double oldStudentBalance = student.getBalance();
             student.setBalance(student.getBalance() + paymentAmount);
             studentRepo.save(student);
-            logger.info("Updated Student (ID={}) balance from {} to {}",
-                    studentId, oldStudentBalance, student.getBalance());
+            // Flush now so a lost version check surfaces here and not at commit
+            studentRepo.flush();
+            t = metrics.stage(PaymentStage.STUDENT_CREDIT, t);
 
             // 8. Record successful payment
             successpayment.setParentId(parentId);
             successpayment.setStudentId(studentId);
             successpayment.setAmount(paymentAmount);
+            successpayment.setFee(adjustedAmount - paymentAmount);
             successpayment.setStatus(TransactionStatus.SUCCESS);
             successpayment.setPaymentDate(LocalDateTime.now());
             successpayment.setDescription("Payment processed successfully.");
             paymentRepo.save(successpayment);
+            ledgerAggregates.recordSuccess(successpayment.getPaymentDate(), studentId, paymentAmount, debits);
+            // Returns only after commit once the journal record is durable
+            journal.recordAfterCommit(List.of(JournalRecord.success(successpayment, debits)));
+            // Logged once committed, not for an attempt that is rolled back and retried
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    PaymentEvents.succeeded(successpayment, adjustedAmount, debits);
+                }
+            });
+            return metrics.stage(PaymentStage.PAYMENT_INSERT, t);
 
-            logger.info("Payment processed successfully. Payment record created with ID={}", successpayment.getId());
-
+        } catch (ConcurrencyFailureException ex) {
+            // Another transaction updated one of the accounts first; processPayment retries
+            throw ex;
         } catch (Exception ex) {
+            if (ex instanceof DataIntegrityViolationException && successpayment.getIdempotencyKey() != null) {
+                // The idempotency key was taken meanwhile; processPayment replays the winner
+                throw ex;
+            }
             // 9. Handle exceptions and rollback
             Payment failedPayment = new Payment();
             failedPayment.setParentId(parentId);
@@ -137,18 +378,461 @@ public class PaymentService {
             failedPayment.setStatus(TransactionStatus.FAILED);
             failedPayment.setDescription("Payment failed: " + ex.getMessage());
             paymentLogService.logPayment(failedPayment);
-
-            logger.error("Payment processing failed. Reason: {}", ex.getMessage(), ex);
+            PaymentEvents.unsuccessful(parentId, studentId, paymentAmount, ex);
             // Rethrow to trigger rollback
             throw ex;
         }
     }
 
-    public List<Student> getStudents() {
-        return studentRepo.findAll();
+    /*
+      Process many payments in a single transaction.
+      All referenced parents and students are loaded in bulk, debits and credits are
+      applied in memory in request order, and the resulting balances and Payment rows
+      are written back with JDBC batches (one UPDATE per touched account).
+      Each request gets its own SUCCESS/FAILED Payment; a failed item does not affect the others.
+      Like processPayment, the paying parents and students are locked for the duration, and
+      the balance updates are version-checked so a conflicting writer makes the batch retry.
+     */
+    public List<Payment> processBatch(List<PaymentRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (inMemorySettlement.isEnabled()) {
+            return processBatchInMemory(requests);
+        }
+
+        // 1. Group the batch by student and parent
+        Set<Long> studentIds = new HashSet<>();
+        Set<Long> parentIds = new HashSet<>();
+        for (PaymentRequest request : requests) {
+            if (request.getStudentId() != null) {
+                studentIds.add(request.getStudentId());
+            }
+            if (request.getParentId() != null) {
+                parentIds.add(request.getParentId());
+            }
+        }
+
+        metrics.batchStarted(requests.size());
+        Map<PaymentFailureReason, Integer> failedByReason = new EnumMap<>(PaymentFailureReason.class);
+        try (AccountLockManager.Held ignored = lockManager.lock(parentIds, studentIds)) {
+            List<Payment> results = withRetry(() -> transactionTemplate.execute(
+                    status -> settleBatch(requests, new HashSet<>(parentIds), studentIds, failedByReason)));
+            int failed = failedByReason.values().stream().mapToInt(Integer::intValue).sum();
+            metrics.batchFinished(results.size() - failed, failedByReason);
+            return results;
+        } catch (RuntimeException ex) {
+            metrics.batchAborted();
+            throw ex;
+        }
+    }
+
+    /*
+      processBatch on the in-memory balance engine: the items settle one by one in request order,
+      each on its own like a batch item (a failed item does not affect the rest).
+     */
+    private List<Payment> processBatchInMemory(List<PaymentRequest> requests) {
+        metrics.batchStarted(requests.size());
+        Map<PaymentFailureReason, Integer> failedByReason = new EnumMap<>(PaymentFailureReason.class);
+        List<Payment> results = new ArrayList<>(requests.size());
+        for (PaymentRequest request : requests) {
+            Payment payment = newPayment(request.getParentId(), request.getStudentId(), request.getPaymentAmount());
+            try {
+                inMemorySettlement.settle(payment);
+            } catch (IllegalArgumentException ex) {
+                failedByReason.merge(PaymentMetrics.reasonOf(ex), 1, Integer::sum);
+                payment = logFailure(request.getParentId(), request.getStudentId(), request.getPaymentAmount(), ex);
+            }
+            results.add(payment);
+        }
+        int failed = failedByReason.values().stream().mapToInt(Integer::intValue).sum();
+        metrics.batchFinished(results.size() - failed, failedByReason);
+        return results;
+    }
+
+    /*
+      Runs inside the transaction opened by processBatch.
+      failedByReason receives the number of rejected items per reason (reset on every attempt).
+     */
+    private List<Payment> settleBatch(List<PaymentRequest> requests, Set<Long> parentIds, Set<Long> studentIds,
+                                      Map<PaymentFailureReason, Integer> failedByReason) {
+        failedByReason.clear();
+
+        // 1. Load every referenced account in bulk; associations come from the family graph cache
+        Map<Long, Guardians> studentGuardians = new HashMap<>();
+        Map<Long, Long> studentBalances = new HashMap<>();
+        Map<Long, Long> studentVersions = new HashMap<>();
+        Map<Long, Long> studentFeeRates = new HashMap<>();
+        long today = LocalDate.now().toEpochDay();
+        for (List<Long> chunk : chunks(studentIds)) {
+            for (Student student : studentRepo.findAllById(chunk)) {
+                studentBalances.put(student.getStudentId(), student.getBalance());
+                studentVersions.put(student.getStudentId(), student.getVersion());
+                studentFeeRates.put(student.getStudentId(),
+                        feeEngine.rateBasisPoints(student.getSchool(), student.getTier(), today));
+            }
+        }
+        for (Map.Entry<Long, Guardians> entry : familyGraph.guardiansOf(studentBalances.keySet()).entrySet()) {
+            studentGuardians.put(entry.getKey(), entry.getValue());
+            for (long parentId : entry.getValue().parentIds()) {
+                parentIds.add(parentId);
+            }
+        }
+
+        Map<Long, Long> parentBalances = new HashMap<>();
+        Map<Long, Long> parentVersions = new HashMap<>();
+        for (List<Long> chunk : chunks(parentIds)) {
+            for (Parent parent : parentRepo.findAllById(chunk)) {
+                parentBalances.put(parent.getId(), parent.getBalance());
+                parentVersions.put(parent.getId(), parent.getVersion());
+            }
+        }
+
+        // 2. Apply debits and credits in memory, in request order
+        Set<Long> touchedParents = new HashSet<>();
+        Set<Long> touchedStudents = new HashSet<>();
+        LedgerAggregateService.Deltas aggregates = ledgerAggregates.newDeltas();
+        List<Payment> results = new ArrayList<>(requests.size());
+        List<JournalRecord> journalRecords = new ArrayList<>(requests.size());
+        // Ids up front, so results and journal records carry the id each row gets
+        List<Long> paymentIds = jdbcTemplate.queryForList(NEXT_PAYMENT_IDS, Long.class, requests.size());
+        Collections.sort(paymentIds);
+        for (PaymentRequest request : requests) {
+            Payment payment = new Payment();
+            payment.setId(paymentIds.get(results.size()));
+            payment.setParentId(request.getParentId());
+            payment.setStudentId(request.getStudentId());
+            payment.setAmount(request.getPaymentAmount());
+            payment.setPaymentDate(LocalDateTime.now());
+            try {
+                ParentDebits debits = settleInMemory(request, studentGuardians, parentBalances, studentBalances,
+                        studentFeeRates);
+                for (int i = 0; i < debits.size(); i++) {
+                    parentBalances.merge(debits.parentId(i), -debits.amount(i), Long::sum);
+                    touchedParents.add(debits.parentId(i));
+                }
+                studentBalances.merge(request.getStudentId(), request.getPaymentAmount(), Long::sum);
+                touchedStudents.add(request.getStudentId());
+                aggregates.success(payment.getPaymentDate(), request.getStudentId(), request.getPaymentAmount(), debits);
+
+                payment.setFee(debits.total() - request.getPaymentAmount());
+                payment.setStatus(TransactionStatus.SUCCESS);
+                payment.setDescription("Payment processed successfully.");
+                journalRecords.add(JournalRecord.success(payment, debits));
+            } catch (IllegalArgumentException ex) {
+                failedByReason.merge(PaymentMetrics.reasonOf(ex), 1, Integer::sum);
+                payment.setStatus(TransactionStatus.FAILED);
+                payment.setDescription("Payment failed: " + ex.getMessage());
+                aggregates.failure(payment.getPaymentDate(), payment.getAmount());
+                journalRecords.add(JournalRecord.failure(payment));
+            }
+            results.add(payment);
+        }
+
+        // 3. Write back balances and payment records with JDBC batches
+        List<Object[]> parentUpdates = new ArrayList<>(touchedParents.size());
+        for (Long parentId : touchedParents) {
+            parentUpdates.add(new Object[]{Money.toDecimal(parentBalances.get(parentId)), parentId, parentVersions.get(parentId)});
+        }
+        List<Object[]> studentUpdates = new ArrayList<>(touchedStudents.size());
+        for (Long studentId : touchedStudents) {
+            studentUpdates.add(new Object[]{Money.toDecimal(studentBalances.get(studentId)), studentId, studentVersions.get(studentId)});
+        }
+        List<Object[]> paymentInserts = new ArrayList<>(results.size());
+        for (Payment payment : results) {
+            paymentInserts.add(new Object[]{
+                    payment.getId(),
+                    payment.getParentId(),
+                    payment.getStudentId(),
+                    payment.getAmount() == null ? null : Money.toDecimal(payment.getAmount()),
+                    payment.getFee() == null ? null : Money.toDecimal(payment.getFee()),
+                    payment.getStatus().name(),
+                    Timestamp.valueOf(payment.getPaymentDate()),
+                    payment.getDescription()
+            });
+        }
+
+        versionedBatchUpdate("UPDATE parent SET balance = ?, version = version + 1 WHERE id = ? AND version = ?",
+                parentUpdates, "parent");
+        versionedBatchUpdate("UPDATE student SET balance = ?, version = version + 1 WHERE student_id = ? AND version = ?",
+                studentUpdates, "student");
+        batchUpdate("INSERT INTO payment (id, parent_id, student_id, amount, fee, status, payment_date, description) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", paymentInserts);
+        ledgerAggregates.apply(aggregates);
+        journal.recordAfterCommit(journalRecords);
+
+        long failed = results.stream().filter(p -> p.getStatus() == TransactionStatus.FAILED).count();
+        PaymentEvents.batchProcessed(results.size(), failed, touchedParents.size(), touchedStudents.size());
+        return results;
+    }
+
+    /*
+      Applies the same validation and split rules as processPayment against the
+      in-memory balances of a batch. Returns the debit per parent, or throws
+      PaymentException with the same messages processPayment uses.
+     */
+    private ParentDebits settleInMemory(PaymentRequest request,
+                                        Map<Long, Guardians> studentGuardians,
+                                        Map<Long, Long> parentBalances,
+                                        Map<Long, Long> studentBalances,
+                                        Map<Long, Long> studentFeeRates) {
+        Long parentId = request.getParentId();
+        Long studentId = request.getStudentId();
+        Long paymentAmount = request.getPaymentAmount();
+
+        if (parentId == null || !parentBalances.containsKey(parentId)) {
+            throw new PaymentException(PaymentFailureReason.PARENT_NOT_FOUND, "Parent not found with ID: " + parentId);
+        }
+        if (studentId == null || !studentBalances.containsKey(studentId)) {
+            throw new PaymentException(PaymentFailureReason.STUDENT_NOT_FOUND, "Student not found with ID: " + studentId);
+        }
+        Guardians guardians = studentGuardians.get(studentId);
+        if (!guardians.includes(parentId)) {
+            throw new PaymentException(PaymentFailureReason.NOT_ASSOCIATED,
+                    "Parent (ID=" + parentId + ") not associated with Student (ID=" + studentId + ").");
+        }
+        if (paymentAmount == null) {
+            throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount is required.");
+        }
+        if (paymentAmount <= 0) {
+            throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount must be greater than zero.");
+        }
+
+        long adjustedAmount = Money.plusRate(paymentAmount, studentFeeRates.get(studentId));
+        if (guardians.size() < 2 && parentBalances.get(parentId) < adjustedAmount) {
+            throw new PaymentException(PaymentFailureReason.INSUFFICIENT_BALANCE,
+                    "Insufficient balance for parent ID: " + parentId);
+        }
+
+        return PaymentSplitter.split(parentId, guardians, adjustedAmount, parentBalances::get);
+    }
+
+    // Like batchUpdate, but every row must match its expected version or the whole transaction is retried
+    private void versionedBatchUpdate(String sql, List<Object[]> rows, String table) {
+        for (int from = 0; from < rows.size(); from += BATCH_CHUNK_SIZE) {
+            int[] counts = jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_CHUNK_SIZE, rows.size())));
+            for (int count : counts) {
+                if (count == 0) {
+                    throw new OptimisticLockingFailureException("Concurrent update detected on table " + table);
+                }
+            }
+        }
+    }
+
+    /*
+      Debits every charged parent of one payment with a single UPDATE: the rows are locked together,
+      and a row is only updated when its balance covers its share, so either every parent is debited
+      or the payment is rejected (the partial update rolls back with the transaction). Versions are
+      bumped so version-checked writers (batch settlement) see the change.
+      The statement returns the ids it debited (H2's FINAL TABLE), so when it falls short the
+      diagnostic read can add their shares back and judge every parent by its balance before the
+      payment, not by what the partial update left.
+     */
+    private void debitParents(ParentDebits debits) {
+        int n = debits.size();
+        Object[] args = new Object[5 * n];
+        for (int i = 0; i < n; i++) {
+            Object amount = Money.toDecimal(debits.amount(i));
+            args[2 * i] = debits.parentId(i);
+            args[2 * i + 1] = amount;
+            args[2 * n + i] = debits.parentId(i);
+            args[3 * n + 2 * i] = debits.parentId(i);
+            args[3 * n + 2 * i + 1] = amount;
+        }
+        List<Long> debited = jdbcTemplate.queryForList(
+                PARENT_DEBIT_SQL.computeIfAbsent(n, PaymentService::parentDebitSql), Long.class, args);
+        if (debited.size() == n) {
+            return;
+        }
+        // Rejected: name the parent that cannot pay
+        Map<Long, Long> balances = new HashMap<>();
+        jdbcTemplate.query("SELECT id, balance FROM parent WHERE id IN (" + placeholders(n) + ")",
+                rs -> {
+                    balances.put(rs.getLong(1), Money.fromDecimal(rs.getBigDecimal(2)));
+                }, Arrays.stream(debits.parentIds()).boxed().toArray());
+        for (int i = 0; i < n; i++) {
+            Long balance = balances.get(debits.parentId(i));
+            if (balance != null && debited.contains(debits.parentId(i))) {
+                balance += debits.amount(i);
+            }
+            if (balance == null || balance < debits.amount(i)) {
+                if (n == 1) {
+                    throw new PaymentException(PaymentFailureReason.INSUFFICIENT_BALANCE,
+                            "Insufficient balance for parent ID: " + debits.parentId(i));
+                }
+                throw PaymentSplitter.sharedParentShortfall(debits.parentId(i));
+            }
+        }
+        // Every balance covers its share again: a concurrent payment released funds meanwhile
+        throw new OptimisticLockingFailureException("Concurrent update detected on table parent");
+    }
+
+    // UPDATE ... CASE id WHEN ? THEN ? ... for n parents, returning the debited ids; one statement per family size
+    private static String parentDebitSql(int n) {
+        StringBuilder debit = new StringBuilder("CASE id");
+        for (int i = 0; i < n; i++) {
+            debit.append(" WHEN ? THEN CAST(? AS DECIMAL(19, 2))");
+        }
+        debit.append(" END");
+        return "SELECT id FROM FINAL TABLE (UPDATE parent SET balance = balance - " + debit + ", version = version + 1"
+                + " WHERE id IN (" + placeholders(n) + ") AND balance >= " + debit + ")";
+    }
+
+    private static String placeholders(int n) {
+        return String.join(", ", Collections.nCopies(n, "?"));
+    }
+
+    /*
+      Re-runs a transactional unit of work when it loses a version check or a row lock.
+      The caller already holds the account stripes, so conflicts can only come from payments
+      touching a co-parent of another family and usually resolve on the first retry.
+     */
+    private <T> T withRetry(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return work.get();
+            } catch (ConcurrencyFailureException ex) {
+                if (attempt >= maxAttempts) {
+                    throw ex;
+                }
+                logger.debug("Concurrent update detected (attempt {}/{}), retrying: {}", attempt, maxAttempts, ex.getMessage());
+                metrics.retried();
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(1, 5L * attempt + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private void batchUpdate(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_CHUNK_SIZE) {
+            jdbcTemplate.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_CHUNK_SIZE, rows.size())));
+        }
+    }
+
+    private static List<List<Long>> chunks(Collection<Long> ids) {
+        List<Long> all = new ArrayList<>(ids);
+        List<List<Long>> chunks = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += BATCH_CHUNK_SIZE) {
+            chunks.add(all.subList(from, Math.min(from + BATCH_CHUNK_SIZE, all.size())));
+        }
+        return chunks;
+    }
+
+    // Keyset page of students (with their parents) whose id is greater than afterId
+    @Transactional(readOnly = true)
+    public PageResponse<Student> getStudents(Long afterId, int limit) {
+        int pageSize = clampPageSize(limit);
+        List<Long> ids = studentRepo.findIdPage(afterId == null ? 0L : afterId, Limit.of(pageSize));
+        List<Student> students = new ArrayList<>(studentRepo.findAllWithParentsByStudentIdIn(ids));
+        students.sort(Comparator.comparing(Student::getStudentId));
+        Long next = ids.size() == pageSize ? ids.get(ids.size() - 1) : null;
+        return new PageResponse<>(students, next);
+    }
+
+    /*
+      Newest-first keyset page of one parent's payments. beforeId is the nextCursor of the previous
+      page (the id of its last payment); the page continues below that payment's (paymentDate, id).
+     */
+    @Transactional(readOnly = true)
+    public PageResponse<Payment> getParentPayments(Long parentId, Long beforeId, int limit) {
+        Limit pageSize = Limit.of(clampPageSize(limit));
+        if (beforeId == null) {
+            return historyPage(paymentRepo.findByParentIdOrderByPaymentDateDescIdDesc(parentId, pageSize), pageSize);
+        }
+        Payment before = paymentRepo.findById(beforeId).orElse(null);
+        if (before == null || !parentId.equals(before.getParentId())) {
+            return new PageResponse<>(List.of(), null);
+        }
+        return historyPage(paymentRepo.findParentHistoryBefore(parentId, before.getPaymentDate(), beforeId, pageSize),
+                pageSize);
+    }
+
+    // Same for one student's payments
+    @Transactional(readOnly = true)
+    public PageResponse<Payment> getStudentPayments(Long studentId, Long beforeId, int limit) {
+        Limit pageSize = Limit.of(clampPageSize(limit));
+        if (beforeId == null) {
+            return historyPage(paymentRepo.findByStudentIdOrderByPaymentDateDescIdDesc(studentId, pageSize), pageSize);
+        }
+        Payment before = paymentRepo.findById(beforeId).orElse(null);
+        if (before == null || !studentId.equals(before.getStudentId())) {
+            return new PageResponse<>(List.of(), null);
+        }
+        return historyPage(paymentRepo.findStudentHistoryBefore(studentId, before.getPaymentDate(), beforeId, pageSize),
+                pageSize);
+    }
+
+    private static PageResponse<Payment> historyPage(List<Payment> payments, Limit pageSize) {
+        Long next = payments.size() == pageSize.max() ? payments.get(payments.size() - 1).getId() : null;
+        return new PageResponse<>(payments, next);
+    }
+
+    // Keyset page of payments matching the filter whose id is greater than afterId
+    @Transactional(readOnly = true)
+    public PageResponse<Payment> getPayments(PaymentFilter filter, Long afterId, int limit) {
+        int pageSize = clampPageSize(limit);
+        List<Payment> payments = paymentRepo.findPage(afterId == null ? 0L : afterId,
+                filter.getStatus(), filter.getParentId(), filter.getStudentId(),
+                filter.getFrom(), filter.getTo(), Limit.of(pageSize));
+        Long next = payments.size() == pageSize ? payments.get(payments.size() - 1).getId() : null;
+        return new PageResponse<>(payments, next);
+    }
+
+    /*
+      Writes every payment matching the filter as newline-delimited JSON.
+      Rows come from a database cursor and are detached once written,
+      so memory use does not depend on the size of the table.
+     */
+    @Transactional(readOnly = true)
+    public long exportPayments(PaymentFilter filter, OutputStream out) throws IOException {
+        long count = 0;
+        try (Stream<Payment> payments = paymentRepo.streamAll(0L, filter.getStatus(), filter.getParentId(),
+                filter.getStudentId(), filter.getFrom(), filter.getTo())) {
+            Iterator<Payment> iterator = payments.iterator();
+            while (iterator.hasNext()) {
+                Payment payment = iterator.next();
+                out.write(objectMapper.writeValueAsBytes(payment));
+                out.write('\n');
+                entityManager.detach(payment);
+                count++;
+            }
+        }
+        out.flush();
+        return count;
+    }
+
+    /*
+      Writes every student (with parents) as newline-delimited JSON.
+      Students are read in keyset pages so the parent fetch join never spans the whole table.
+     */
+    @Transactional(readOnly = true)
+    public long exportStudents(OutputStream out) throws IOException {
+        long count = 0;
+        long afterId = 0L;
+        while (true) {
+            List<Long> ids = studentRepo.findIdPage(afterId, Limit.of(EXPORT_PAGE_SIZE));
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<Student> students = new ArrayList<>(studentRepo.findAllWithParentsByStudentIdIn(ids));
+            students.sort(Comparator.comparing(Student::getStudentId));
+            for (Student student : students) {
+                out.write(objectMapper.writeValueAsBytes(student));
+                out.write('\n');
+                count++;
+            }
+            entityManager.clear();
+            afterId = ids.get(ids.size() - 1);
+        }
+        out.flush();
+        return count;
     }
 
-    public List<Payment> getPayments() {
-        return paymentRepo.findAll();
+    private static int clampPageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
     }
 }
@@ -0,0 +1,85 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Dto.Guardians;
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import com.example.Tredbase_payment_system.Utils.Money;
+
+import java.util.function.LongUnaryOperator;
+
+/*
+  Split-deduction rule shared by single and batch settlement.
+  A student with several parents is charged across all of them in proportion to their guardian
+  share weights (equal by default); otherwise the paying parent pays everything.
+  Pure function of the guardians and balances it is given, so it is also benchmarked on its own.
+ */
+public final class PaymentSplitter {
+
+    private PaymentSplitter() {
+    }
+
+    /*
+      Returns the debit per parent, in parent id order, leaving out parents whose share is zero.
+      Amounts are minor units; the shares add up exactly to adjustedAmount (leftover cents go to
+      the first parents). If no parent has a positive weight the split is equal.
+     */
+    public static ParentDebits shares(long payingParentId, Guardians guardians, long adjustedAmount) {
+        if (guardians.size() < 2) {
+            return new ParentDebits(new long[]{payingParentId}, new long[]{adjustedAmount});
+        }
+        long[] parentIds = guardians.parentIds();
+        long[] shares = hasPositiveWeight(guardians.weights())
+                ? Money.allocate(adjustedAmount, guardians.weights())
+                : Money.split(adjustedAmount, parentIds.length);
+        int charged = 0;
+        for (long share : shares) {
+            if (share != 0) {
+                charged++;
+            }
+        }
+        if (charged == shares.length) {
+            return new ParentDebits(parentIds.clone(), shares);
+        }
+        long[] chargedIds = new long[charged];
+        long[] chargedShares = new long[charged];
+        for (int i = 0, j = 0; i < shares.length; i++) {
+            if (shares[i] != 0) {
+                chargedIds[j] = parentIds[i];
+                chargedShares[j++] = shares[i];
+            }
+        }
+        return new ParentDebits(chargedIds, chargedShares);
+    }
+
+    /*
+      shares() checked against the given balances, all or nothing.
+      Throws PaymentException when a shared parent cannot cover its share.
+     */
+    public static ParentDebits split(long payingParentId, Guardians guardians, long adjustedAmount,
+                                     LongUnaryOperator balanceOf) {
+        ParentDebits debits = shares(payingParentId, guardians, adjustedAmount);
+        if (guardians.size() >= 2) {
+            for (int i = 0; i < debits.size(); i++) {
+                if (balanceOf.applyAsLong(debits.parentId(i)) < debits.amount(i)) {
+                    throw sharedParentShortfall(debits.parentId(i));
+                }
+            }
+        }
+        return debits;
+    }
+
+    public static PaymentException sharedParentShortfall(long parentId) {
+        return new PaymentException(PaymentFailureReason.SHARED_PARENT_INSUFFICIENT_BALANCE, String.format(
+                "Insufficient balance in one of the shared parents (ID=%d).", parentId));
+    }
+
+    private static boolean hasPositiveWeight(long[] weights) {
+        for (long weight : weights) {
+            if (weight > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Dto.PaymentSubmission;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.SubmissionStatus;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+/*
+  Asynchronous payment submission: POST /api/payments/async returns 202 with a submission id
+  as soon as the request is queued, and a fixed pool of worker threads runs it through
+  PaymentService.processPayment. The HTTP thread never waits for the database.
+
+  Backpressure is explicit: the queue holds at most payment.async.queue-capacity submissions
+  and a submission that does not fit is shed at once (RejectedExecutionException, 503 with
+  Retry-After) rather than queued without bound. Only the workers touch PaymentService, so at
+  most payment.async.workers payments from this path hold connections and account locks.
+
+  Status is kept in memory (bounded, expiring like IdempotencyIndex) and read by polling
+  GET /api/payments/async/{id} or streamed as server-sent events. It does not survive a restart;
+  pass an Idempotency-Key to be able to resubmit safely. On shutdown the workers finish what
+  is already queued.
+ */
+@Service
+public class PaymentSubmissionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PaymentSubmissionService.class);
+
+    private static final String STATUS_EVENT = "status";
+
+    @Autowired
+    private PaymentService paymentService;
+    @Autowired
+    private PaymentMetrics metrics;
+
+    @Value("${payment.async.queue-capacity:1000}")
+    private int queueCapacity;
+    @Value("${payment.async.workers:4}")
+    private int workerCount;
+    @Value("${payment.async.status.max-size:100000}")
+    private int maxStatuses;
+    @Value("${payment.async.status.ttl-minutes:60}")
+    private long statusTtlMinutes;
+    @Value("${payment.async.events.timeout-ms:60000}")
+    private long eventsTimeoutMs;
+
+    private record Task(String id, PaymentRequest request, String idempotencyKey, long enqueuedAt) {
+    }
+
+    private record Expiry(String id, long expiresAt) {
+    }
+
+    private BlockingQueue<Task> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    private final ConcurrentHashMap<String, PaymentSubmission> statuses = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Expiry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, List<SseEmitter>> subscribers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        metrics.bindSubmissionQueue(queue);
+        running = true;
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(Thread.ofPlatform().name("payment-async-worker-" + i).daemon().start(this::runWorker));
+        }
+    }
+
+    /*
+      Queues the payment and returns its QUEUED snapshot.
+      Throws PaymentException for a request that can never succeed (missing fields, malformed key)
+      and RejectedExecutionException when the queue is full or the service is stopping.
+     */
+    public PaymentSubmission submit(PaymentRequest request, String idempotencyKey) {
+        // The checks processPayment would fail on without a lookup, so such requests get a 400 right away
+        if (request.getParentId() == null) {
+            throw new PaymentException(PaymentFailureReason.PARENT_NOT_FOUND, "Parent not found with ID: null");
+        }
+        if (request.getStudentId() == null) {
+            throw new PaymentException(PaymentFailureReason.STUDENT_NOT_FOUND, "Student not found with ID: null");
+        }
+        if (request.getPaymentAmount() == null) {
+            throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount is required.");
+        }
+        if (request.getPaymentAmount() <= 0) {
+            throw new PaymentException(PaymentFailureReason.INVALID_AMOUNT, "Payment amount must be greater than zero.");
+        }
+        if (idempotencyKey != null) {
+            IdempotencyIndex.validate(idempotencyKey);
+        }
+        String id = UUID.randomUUID().toString();
+        PaymentSubmission queued = new PaymentSubmission(id, SubmissionStatus.QUEUED, request.getParentId(),
+                request.getStudentId(), request.getPaymentAmount(), LocalDateTime.now(), null, null, null);
+        // Stored before it is offered, so a worker can never finish a submission nobody can look up
+        store(queued);
+        if (!running || !queue.offer(new Task(id, request, idempotencyKey, System.nanoTime()))) {
+            statuses.remove(id);
+            metrics.submissionShed();
+            throw new RejectedExecutionException("Payment queue is full (" + queueCapacity + " submissions).");
+        }
+        metrics.submissionAccepted();
+        return queued;
+    }
+
+    // Latest snapshot, or null if the id is unknown or expired
+    public PaymentSubmission find(String id) {
+        return statuses.get(id);
+    }
+
+    /*
+      Streams the submission's snapshots as "status" events, starting with the current one,
+      and completes after the final one. Returns null if the id is unknown or expired.
+     */
+    public SseEmitter subscribe(String id) {
+        if (!statuses.containsKey(id)) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(eventsTimeoutMs);
+        List<SseEmitter> listeners = subscribers.computeIfAbsent(id, key -> new CopyOnWriteArrayList<>());
+        listeners.add(emitter);
+        emitter.onCompletion(() -> unsubscribe(id, emitter));
+        emitter.onTimeout(() -> unsubscribe(id, emitter));
+        emitter.onError(ex -> unsubscribe(id, emitter));
+        // Registered first, so a status change from now on is published to this emitter as well
+        PaymentSubmission current = statuses.get(id);
+        if (current != null) {
+            send(emitter, current);
+        }
+        return emitter;
+    }
+
+    public int queued() {
+        return queue.size();
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        for (Thread worker : workers) {
+            worker.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        }
+        // Submissions that raced the shutdown (or outlived the timeout) run here
+        List<Task> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        remaining.forEach(this::process);
+        subscribers.values().forEach(listeners -> listeners.forEach(SseEmitter::complete));
+    }
+
+    private void runWorker() {
+        while (running || !queue.isEmpty()) {
+            Task task;
+            try {
+                task = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task != null) {
+                process(task);
+            }
+        }
+    }
+
+    private void process(Task task) {
+        long started = metrics.submissionDequeued(task.enqueuedAt);
+        PaymentSubmission queued = statuses.get(task.id);
+        if (queued == null) {
+            // Evicted while waiting; the payment still runs, only its status is gone
+            queued = new PaymentSubmission(task.id, SubmissionStatus.QUEUED, task.request.getParentId(),
+                    task.request.getStudentId(), task.request.getPaymentAmount(), LocalDateTime.now(), null, null, null);
+        }
+        update(transition(queued, SubmissionStatus.PROCESSING));
+        PaymentSubmission finished;
+        try {
+            Payment payment = paymentService.processPayment(task.request.getParentId(), task.request.getStudentId(),
+                    task.request.getPaymentAmount(), task.idempotencyKey);
+            finished = transition(queued, SubmissionStatus.SUCCEEDED);
+            finished.setPaymentId(payment.getId());
+        } catch (RuntimeException ex) {
+            PaymentFailureReason reason = PaymentMetrics.reasonOf(ex);
+            if (reason == PaymentFailureReason.INTERNAL_ERROR) {
+                logger.error("Asynchronous payment {} failed", task.id, ex);
+            }
+            finished = transition(queued, SubmissionStatus.FAILED);
+            finished.setReason(reason);
+            finished.setMessage(reason == PaymentFailureReason.CONCURRENT_UPDATE
+                    ? "concurrent update conflict, please retry." : ex.getMessage());
+        }
+        metrics.submissionFinished(started, finished.getStatus());
+        update(finished);
+    }
+
+    private static PaymentSubmission transition(PaymentSubmission from, SubmissionStatus status) {
+        return new PaymentSubmission(from.getId(), status, from.getParentId(), from.getStudentId(),
+                from.getPaymentAmount(), from.getSubmittedAt(), null, null, null);
+    }
+
+    // Replaces the snapshot (unless it expired meanwhile) and pushes it to the subscribers
+    private void update(PaymentSubmission submission) {
+        statuses.computeIfPresent(submission.getId(), (id, previous) -> submission);
+        List<SseEmitter> listeners = subscribers.get(submission.getId());
+        if (listeners != null) {
+            for (SseEmitter emitter : listeners) {
+                send(emitter, submission);
+            }
+        }
+    }
+
+    private void send(SseEmitter emitter, PaymentSubmission submission) {
+        try {
+            emitter.send(SseEmitter.event().name(STATUS_EVENT).data(submission));
+            if (submission.getStatus().isFinal()) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException ex) {
+            // Client went away, or the emitter already completed on another thread
+            emitter.completeWithError(ex);
+        }
+    }
+
+    private void unsubscribe(String id, SseEmitter emitter) {
+        subscribers.computeIfPresent(id, (key, listeners) -> {
+            listeners.remove(emitter);
+            return listeners.isEmpty() ? null : listeners;
+        });
+    }
+
+    private void store(PaymentSubmission submission) {
+        long now = System.nanoTime();
+        statuses.put(submission.getId(), submission);
+        insertionOrder.add(new Expiry(submission.getId(), now + TimeUnit.MINUTES.toNanos(statusTtlMinutes)));
+        // Fixed TTL, so the oldest entries expire first; the same queue enforces the size bound
+        Expiry oldest;
+        while ((oldest = insertionOrder.peek()) != null
+                && (oldest.expiresAt - now < 0 || statuses.size() > maxStatuses)) {
+            if (insertionOrder.remove(oldest)) {
+                statuses.remove(oldest.id);
+            }
+        }
+    }
+}
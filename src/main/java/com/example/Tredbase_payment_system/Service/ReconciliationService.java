@@ -0,0 +1,425 @@
+package com.example.Tredbase_payment_system.Service;
+
+import com.example.Tredbase_payment_system.Dto.Discrepancy;
+import com.example.Tredbase_payment_system.Dto.ReconciliationReport;
+import com.example.Tredbase_payment_system.Entity.ReconciliationWatermark;
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Enums.ReconciliationCheck;
+import com.example.Tredbase_payment_system.Repository.ReconciliationWatermarkRepository;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+  Verifies the ledger invariants over the payment, parent and student tables:
+    - parent debits in account_payment_total = amounts + fees of all SUCCESS payments
+    - student credits in account_payment_total = amounts of all SUCCESS payments, in total and per student
+    - no parent below zero, and no student holding less than it was credited
+    - every SUCCESS payment has a student, a positive amount and a fee
+
+  Each table is cut into id ranges that a ForkJoinPool (payment.reconciliation.parallelism) checks in
+  parallel, halving a range until it spans at most partition-size ids; partial results merge as the
+  tasks join. A range is read by one statement, so it sees a consistent snapshot while payments commit.
+
+  A full run streams every payment and account. An incremental run starts at the watermark: it streams
+  only newer payments, adds them to the totals stored with the watermark, and checks the students they
+  credited and those students' parents. Payments younger than settle-seconds wait for the next run, so
+  one whose transaction is still open is not passed over. The ledger-wide check reads the aggregate
+  totals and the payments after the new watermark in a single statement.
+ */
+@Service
+public class ReconciliationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReconciliationService.class);
+
+    private static final String WATERMARK = "ledger";
+    // Accounts per IN list of an incremental run
+    private static final int ACCOUNT_CHUNK = 1000;
+
+    private static final String HEAD = "SELECT MAX(id) FROM payment WHERE id > ? AND payment_date < ?";
+    private static final String PAYMENTS = "SELECT id, student_id, amount, fee FROM payment " +
+            "WHERE id BETWEEN ? AND ? AND status = 'SUCCESS'";
+    // Correlated subqueries seek idx_payment_student_date per student; H2 would re-run a grouped derived table per row
+    private static final String STUDENTS = "SELECT s.student_id, s.balance, t.payment_count, t.total_amount, " +
+            "(SELECT COUNT(*) FROM payment p WHERE p.student_id = s.student_id AND p.status = 'SUCCESS'), " +
+            "(SELECT SUM(p.amount) FROM payment p WHERE p.student_id = s.student_id AND p.status = 'SUCCESS') " +
+            "FROM student s " +
+            "LEFT JOIN account_payment_total t ON t.account_type = 'STUDENT' AND t.account_id = s.student_id " +
+            "WHERE %s";
+    private static final String PARENTS = "SELECT id, balance FROM parent WHERE %s";
+    private static final String PARENTS_OF = "SELECT DISTINCT parent_id FROM parent_student WHERE student_id IN (%s)";
+    private static final String LEDGER = "SELECT " +
+            "(SELECT COALESCE(SUM(total_amount), 0) FROM account_payment_total WHERE account_type = 'PARENT'), " +
+            "(SELECT COALESCE(SUM(total_amount), 0) FROM account_payment_total WHERE account_type = 'STUDENT'), " +
+            "(SELECT COALESCE(SUM(payment_count), 0) FROM account_payment_total WHERE account_type = 'STUDENT'), " +
+            "(SELECT COUNT(*) FROM payment WHERE id > ? AND status = 'SUCCESS'), " +
+            "(SELECT COALESCE(SUM(amount), 0) FROM payment WHERE id > ? AND status = 'SUCCESS'), " +
+            "(SELECT COALESCE(SUM(fee), 0) FROM payment WHERE id > ? AND status = 'SUCCESS')";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ReconciliationWatermarkRepository watermarkRepo;
+    @Autowired
+    private PaymentMetrics metrics;
+
+    @Value("${payment.reconciliation.parallelism:4}")
+    private int parallelism;
+    @Value("${payment.reconciliation.partition-size:50000}")
+    private long partitionSize;
+    @Value("${payment.reconciliation.settle-seconds:60}")
+    private long settleSeconds;
+    @Value("${payment.reconciliation.max-reported:1000}")
+    private int maxReported;
+
+    private final ReentrantLock running = new ReentrantLock();
+
+    // Nightly incremental run; payment.reconciliation.cron is "-" (off) unless configured
+    @Scheduled(cron = "${payment.reconciliation.cron:-}")
+    public void scheduledRun() {
+        ReconciliationReport report = reconcile(false);
+        if (report.getDiscrepancyCount() > 0) {
+            for (Discrepancy discrepancy : report.getDiscrepancies()) {
+                logger.atWarn().setMessage("ledger discrepancy")
+                        .addKeyValue("check", discrepancy.getCheck())
+                        .addKeyValue("accountType", discrepancy.getAccountType())
+                        .addKeyValue("accountId", discrepancy.getAccountId())
+                        .addKeyValue("paymentId", discrepancy.getPaymentId())
+                        .addKeyValue("expected", discrepancy.getExpected())
+                        .addKeyValue("actual", discrepancy.getActual())
+                        .log();
+            }
+        }
+    }
+
+    // Incremental from the watermark unless full; throws IllegalStateException while another run is in progress
+    public ReconciliationReport reconcile(boolean full) {
+        if (!running.tryLock()) {
+            throw new IllegalStateException("A reconciliation is already running");
+        }
+        try {
+            return run(full);
+        } finally {
+            running.unlock();
+        }
+    }
+
+    private ReconciliationReport run(boolean requestedFull) {
+        long start = System.nanoTime();
+        ReconciliationWatermark watermark = requestedFull ? null : watermarkRepo.findById(WATERMARK).orElse(null);
+        boolean full = watermark == null;
+        long from = full ? 0 : watermark.getLastPaymentId();
+        Long newest = jdbcTemplate.queryForObject(HEAD, Long.class, from,
+                Timestamp.valueOf(LocalDateTime.now().minusSeconds(settleSeconds)));
+        long head = newest == null ? from : newest;
+
+        Tally payments;
+        Tally students;
+        Tally parents;
+        try (ForkJoinPool pool = new ForkJoinPool(parallelism)) {
+            payments = head > from
+                    ? pool.invoke(new RangeTask(from + 1, head, partitionSize, (lo, hi) -> checkPayments(lo, hi, !full)))
+                    : new Tally(maxReported);
+            if (full) {
+                students = checkAll(pool, "student_id", "student", this::checkStudentRange);
+                parents = checkAll(pool, "id", "parent", this::checkParentRange);
+            } else {
+                long[] studentIds = sorted(payments.students);
+                students = checkEach(pool, studentIds, this::checkStudents);
+                parents = checkEach(pool, parentsOf(studentIds), this::checkParents);
+            }
+        }
+
+        long successCount = payments.successCount + (full ? 0 : watermark.getPaymentCount());
+        long credited = payments.credited + (full ? 0 : watermark.getCreditedAmount());
+        long fees = payments.fees + (full ? 0 : watermark.getFeeAmount());
+        Tally ledger = new Tally(maxReported);
+        long debited = jdbcTemplate.queryForObject(LEDGER, (rs, row) -> {
+            long parentTotal = Money.fromDecimal(rs.getBigDecimal(1));
+            long studentTotal = Money.fromDecimal(rs.getBigDecimal(2));
+            long studentCount = rs.getLong(3);
+            // Payments after the watermark that are already in the aggregate totals read here
+            long newerCount = rs.getLong(4);
+            long newerCredited = Money.fromDecimal(rs.getBigDecimal(5));
+            long newerFees = Money.fromDecimal(rs.getBigDecimal(6));
+            if (parentTotal != credited + fees + newerCredited + newerFees) {
+                ledger.report(ReconciliationCheck.LEDGER_DEBITS, null, null, null,
+                        credited + fees + newerCredited + newerFees, parentTotal);
+            }
+            if (studentTotal != credited + newerCredited) {
+                ledger.report(ReconciliationCheck.LEDGER_CREDITS, null, null, null, credited + newerCredited, studentTotal);
+            }
+            if (studentCount != successCount + newerCount) {
+                ledger.count(ReconciliationCheck.LEDGER_PAYMENT_COUNT, null, null, successCount + newerCount, studentCount);
+            }
+            return parentTotal;
+        }, head, head, head);
+
+        LocalDateTime now = LocalDateTime.now();
+        watermarkRepo.save(new ReconciliationWatermark(WATERMARK, head, successCount, credited, fees, now));
+
+        Tally found = ledger.merge(payments).merge(students).merge(parents);
+        ReconciliationReport report = new ReconciliationReport();
+        report.setFull(full);
+        report.setFromPaymentId(from);
+        report.setToPaymentId(head);
+        report.setPaymentsChecked(payments.rows);
+        report.setStudentsChecked(students.rows);
+        report.setParentsChecked(parents.rows);
+        report.setPartitions(payments.partitions + students.partitions + parents.partitions);
+        report.setSuccessfulPayments(successCount);
+        report.setCreditedAmount(credited);
+        report.setFeeAmount(fees);
+        report.setDebitedAmount(debited);
+        report.setDiscrepancyCount(found.discrepancyCount);
+        report.setDiscrepancies(found.discrepancies);
+        report.setElapsedMillis(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        report.setCompletedAt(now);
+        metrics.reconciled(start, found.discrepancyCount);
+        logger.atInfo().setMessage("ledger reconciled")
+                .addKeyValue("full", full)
+                .addKeyValue("fromPaymentId", from)
+                .addKeyValue("toPaymentId", head)
+                .addKeyValue("payments", payments.rows)
+                .addKeyValue("students", students.rows)
+                .addKeyValue("parents", parents.rows)
+                .addKeyValue("discrepancies", found.discrepancyCount)
+                .addKeyValue("elapsedMs", report.getElapsedMillis())
+                .log();
+        return report;
+    }
+
+    // Every row of the table, split by id range
+    private Tally checkAll(ForkJoinPool pool, String idColumn, String table, RangeCheck check) {
+        Map<String, Object> bounds = jdbcTemplate.queryForMap(
+                "SELECT MIN(" + idColumn + ") lo, MAX(" + idColumn + ") hi FROM " + table);
+        if (bounds.get("lo") == null) {
+            return new Tally(maxReported);
+        }
+        long lo = ((Number) bounds.get("lo")).longValue();
+        long hi = ((Number) bounds.get("hi")).longValue();
+        return pool.invoke(new RangeTask(lo, hi, partitionSize, check));
+    }
+
+    // The given accounts, ACCOUNT_CHUNK ids per statement
+    private Tally checkEach(ForkJoinPool pool, long[] ids, ListCheck check) {
+        if (ids.length == 0) {
+            return new Tally(maxReported);
+        }
+        return pool.invoke(new RangeTask(0, ids.length - 1, ACCOUNT_CHUNK,
+                (lo, hi) -> check.apply(Arrays.copyOfRange(ids, (int) lo, (int) hi + 1))));
+    }
+
+    private Tally checkPayments(long lo, long hi, boolean collectStudents) {
+        Tally tally = new Tally(maxReported);
+        jdbcTemplate.query(PAYMENTS, rs -> {
+            long id = rs.getLong(1);
+            Long studentId = rs.getObject(2, Long.class);
+            BigDecimal amount = rs.getBigDecimal(3);
+            BigDecimal fee = rs.getBigDecimal(4);
+            tally.rows++;
+            tally.successCount++;
+            if (studentId == null || amount == null || amount.signum() <= 0 || fee == null || fee.signum() < 0) {
+                tally.report(ReconciliationCheck.INVALID_PAYMENT, studentId == null ? null : AccountType.STUDENT,
+                        studentId, id, null, null);
+            }
+            if (amount != null) {
+                tally.credited += Money.fromDecimal(amount);
+            }
+            if (fee != null) {
+                tally.fees += Money.fromDecimal(fee);
+            }
+            if (collectStudents && studentId != null) {
+                tally.students.add(studentId);
+            }
+        }, lo, hi);
+        return tally;
+    }
+
+    private Tally checkStudentRange(long lo, long hi) {
+        return queryStudents(String.format(STUDENTS, "s.student_id BETWEEN ? AND ?"), lo, hi);
+    }
+
+    private Tally checkStudents(long[] ids) {
+        return queryStudents(String.format(STUDENTS, "s.student_id IN (" + placeholders(ids.length) + ")"),
+                Arrays.stream(ids).boxed().toArray());
+    }
+
+    private Tally queryStudents(String sql, Object... args) {
+        Tally tally = new Tally(maxReported);
+        jdbcTemplate.query(sql, rs -> {
+            long studentId = rs.getLong(1);
+            long balance = Money.fromDecimal(rs.getBigDecimal(2));
+            long recordedCount = rs.getLong(3);
+            long recorded = money(rs, 4);
+            long paidCount = rs.getLong(5);
+            long paid = money(rs, 6);
+            tally.rows++;
+            if (recorded != paid) {
+                tally.report(ReconciliationCheck.STUDENT_CREDITS, AccountType.STUDENT, studentId, null, paid, recorded);
+            }
+            if (recordedCount != paidCount) {
+                tally.count(ReconciliationCheck.STUDENT_PAYMENT_COUNT, AccountType.STUDENT, studentId, paidCount, recordedCount);
+            }
+            if (balance < paid) {
+                tally.report(ReconciliationCheck.STUDENT_BALANCE, AccountType.STUDENT, studentId, null, paid, balance);
+            }
+        }, args);
+        return tally;
+    }
+
+    private Tally checkParentRange(long lo, long hi) {
+        return queryParents(String.format(PARENTS, "id BETWEEN ? AND ?"), lo, hi);
+    }
+
+    private Tally checkParents(long[] ids) {
+        return queryParents(String.format(PARENTS, "id IN (" + placeholders(ids.length) + ")"),
+                Arrays.stream(ids).boxed().toArray());
+    }
+
+    private Tally queryParents(String sql, Object... args) {
+        Tally tally = new Tally(maxReported);
+        jdbcTemplate.query(sql, rs -> {
+            long parentId = rs.getLong(1);
+            long balance = Money.fromDecimal(rs.getBigDecimal(2));
+            tally.rows++;
+            if (balance < 0) {
+                tally.report(ReconciliationCheck.PARENT_BALANCE, AccountType.PARENT, parentId, null, 0L, balance);
+            }
+        }, args);
+        return tally;
+    }
+
+    // Every parent of the given students, each once
+    private long[] parentsOf(long[] studentIds) {
+        Set<Long> parentIds = new HashSet<>();
+        for (int from = 0; from < studentIds.length; from += ACCOUNT_CHUNK) {
+            long[] chunk = Arrays.copyOfRange(studentIds, from, Math.min(from + ACCOUNT_CHUNK, studentIds.length));
+            parentIds.addAll(jdbcTemplate.queryForList(String.format(PARENTS_OF, placeholders(chunk.length)),
+                    Long.class, Arrays.stream(chunk).boxed().toArray()));
+        }
+        return sorted(parentIds);
+    }
+
+    private static long money(ResultSet rs, int column) throws SQLException {
+        BigDecimal amount = rs.getBigDecimal(column);
+        return amount == null ? 0L : Money.fromDecimal(amount);
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static long[] sorted(Set<Long> ids) {
+        long[] sorted = ids.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    @FunctionalInterface
+    private interface RangeCheck {
+        Tally apply(long lo, long hi);
+    }
+
+    @FunctionalInterface
+    private interface ListCheck {
+        Tally apply(long[] ids);
+    }
+
+    // Checks lo..hi (inclusive), halving the range until it spans at most maxSize ids
+    private static final class RangeTask extends RecursiveTask<Tally> {
+        private final long lo;
+        private final long hi;
+        private final long maxSize;
+        private final RangeCheck check;
+
+        private RangeTask(long lo, long hi, long maxSize, RangeCheck check) {
+            this.lo = lo;
+            this.hi = hi;
+            this.maxSize = maxSize;
+            this.check = check;
+        }
+
+        @Override
+        protected Tally compute() {
+            if (hi - lo < maxSize) {
+                Tally tally = check.apply(lo, hi);
+                tally.partitions = 1;
+                return tally;
+            }
+            long mid = lo + (hi - lo) / 2;
+            RangeTask low = new RangeTask(lo, mid, maxSize, check);
+            low.fork();
+            Tally high = new RangeTask(mid + 1, hi, maxSize, check).compute();
+            return low.join().merge(high);
+        }
+    }
+
+    // Partial result of one or more ranges
+    private static final class Tally {
+        private final int maxReported;
+        private final List<Discrepancy> discrepancies = new ArrayList<>();
+        // Students credited by the streamed payments (incremental runs only)
+        private final Set<Long> students = new HashSet<>();
+        private long discrepancyCount;
+        private long rows;
+        private long successCount;
+        private long credited;
+        private long fees;
+        private int partitions;
+
+        private Tally(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        // Amounts in minor units
+        private void report(ReconciliationCheck check, AccountType type, Long accountId, Long paymentId,
+                            Long expected, Long actual) {
+            add(new Discrepancy(check, type, accountId, paymentId,
+                    expected == null ? null : Money.toDecimal(expected), actual == null ? null : Money.toDecimal(actual)));
+        }
+
+        private void count(ReconciliationCheck check, AccountType type, Long accountId, long expected, long actual) {
+            add(new Discrepancy(check, type, accountId, null, BigDecimal.valueOf(expected), BigDecimal.valueOf(actual)));
+        }
+
+        private void add(Discrepancy discrepancy) {
+            discrepancyCount++;
+            if (discrepancies.size() < maxReported) {
+                discrepancies.add(discrepancy);
+            }
+        }
+
+        private Tally merge(Tally other) {
+            for (Discrepancy discrepancy : other.discrepancies) {
+                if (discrepancies.size() < maxReported) {
+                    discrepancies.add(discrepancy);
+                }
+            }
+            discrepancyCount += other.discrepancyCount;
+            students.addAll(other.students);
+            rows += other.rows;
+            successCount += other.successCount;
+            credited += other.credited;
+            fees += other.fees;
+            partitions += other.partitions;
+            return this;
+        }
+    }
+}
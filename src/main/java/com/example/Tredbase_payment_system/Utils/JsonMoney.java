@@ -0,0 +1,65 @@
+package com.example.Tredbase_payment_system.Utils;
+
+import com.fasterxml.jackson.annotation.JacksonAnnotationsInside;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+
+import java.io.IOException;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+
+/*
+  Marks a minor-unit long field that is exchanged as a decimal JSON number: 1234 <-> 12.34.
+  Input may be a number or a numeric string; it is read exactly (never through a double)
+  and rounded to two places HALF_EVEN.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@JacksonAnnotationsInside
+@JsonSerialize(using = JsonMoney.Serializer.class)
+@JsonDeserialize(using = JsonMoney.Deserializer.class)
+public @interface JsonMoney {
+
+    class Serializer extends StdScalarSerializer<Long> {
+        public Serializer() {
+            super(Long.class);
+        }
+
+        @Override
+        public void serialize(Long minor, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(Money.toDecimal(minor));
+        }
+    }
+
+    class Deserializer extends StdScalarDeserializer<Long> {
+        public Deserializer() {
+            super(Long.class);
+        }
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT) {
+                return Money.fromDecimal(parser.getDecimalValue());
+            }
+            if (token == JsonToken.VALUE_STRING) {
+                try {
+                    return Money.fromDecimal(new BigDecimal(parser.getText().trim()));
+                } catch (NumberFormatException ex) {
+                    return (Long) context.handleWeirdStringValue(Long.class, parser.getText(), "not a decimal amount");
+                }
+            }
+            return (Long) context.handleUnexpectedToken(Long.class, parser);
+        }
+    }
+}
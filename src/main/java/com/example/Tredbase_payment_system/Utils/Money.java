@@ -0,0 +1,105 @@
+package com.example.Tredbase_payment_system.Utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/*
+  Money is a primitive long of minor units (cents): 12.34 is 1234.
+  Arithmetic on the payment path is exact integer arithmetic with no allocation; conversion to and
+  from decimals happens only at the edges (JSON, database columns, journal snapshot).
+
+  Rounding policy: whenever a result falls between two minor units (rates, decimal input with more
+  than two places) it is rounded HALF_EVEN. Splits never round: the parts always add up exactly
+  to the amount, the leftover minor units going to the first parts.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+    public static final RoundingMode ROUNDING = RoundingMode.HALF_EVEN;
+    // Rates are expressed in basis points: 500 = 5%
+    public static final long BASIS_POINTS = 10_000;
+
+    private static final long MINOR_PER_MAJOR = 100;
+
+    private Money() {
+    }
+
+    // Parses a decimal amount such as "12.34"
+    public static long of(String amount) {
+        return fromDecimal(new BigDecimal(amount));
+    }
+
+    public static long ofMajor(long major) {
+        return Math.multiplyExact(major, MINOR_PER_MAJOR);
+    }
+
+    public static long fromDecimal(BigDecimal amount) {
+        return amount.setScale(SCALE, ROUNDING).unscaledValue().longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long minor) {
+        return BigDecimal.valueOf(minor, SCALE);
+    }
+
+    public static String format(long minor) {
+        return toDecimal(minor).toPlainString();
+    }
+
+    // amount * (1 + rate), e.g. plusRate(10000, 500) = 10500
+    public static long plusRate(long amount, long rateBasisPoints) {
+        return divide(Math.multiplyExact(amount, BASIS_POINTS + rateBasisPoints), BASIS_POINTS);
+    }
+
+    // amount * rate, e.g. percentOf(10000, 500) = 500
+    public static long percentOf(long amount, long rateBasisPoints) {
+        return divide(Math.multiplyExact(amount, rateBasisPoints), BASIS_POINTS);
+    }
+
+    // dividend / divisor rounded HALF_EVEN; divisor must be positive
+    public static long divide(long dividend, long divisor) {
+        long quotient = Math.floorDiv(dividend, divisor);
+        long twiceRemainder = 2 * Math.floorMod(dividend, divisor);
+        if (twiceRemainder > divisor || (twiceRemainder == divisor && (quotient & 1) != 0)) {
+            quotient++;
+        }
+        return quotient;
+    }
+
+    // Splits amount into parts that differ by at most one minor unit and add up exactly to amount
+    public static long[] split(long amount, int parts) {
+        long[] shares = new long[parts];
+        long base = Math.floorDiv(amount, parts);
+        long leftover = amount - base * parts;
+        for (int i = 0; i < parts; i++) {
+            shares[i] = base + (i < leftover ? 1 : 0);
+        }
+        return shares;
+    }
+
+    /*
+      Splits amount in proportion to weights (non-negative, positive sum); the parts add up exactly
+      to amount, the leftover minor units going to the first parts with a positive weight.
+     */
+    public static long[] allocate(long amount, long[] weights) {
+        long total = 0;
+        for (long weight : weights) {
+            total = Math.addExact(total, weight);
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Weights must add up to a positive total");
+        }
+        long[] shares = new long[weights.length];
+        long leftover = amount;
+        for (int i = 0; i < weights.length; i++) {
+            shares[i] = Math.floorDiv(Math.multiplyExact(amount, weights[i]), total);
+            leftover -= shares[i];
+        }
+        for (int i = 0; leftover > 0 && i < weights.length; i++) {
+            if (weights[i] > 0) {
+                shares[i]++;
+                leftover--;
+            }
+        }
+        return shares;
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.Tredbase_payment_system;
+
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Engine.InMemorySettlement;
+import com.example.Tredbase_payment_system.Engine.ShardedBalanceEngine;
+import com.example.Tredbase_payment_system.Entity.FeeRule;
+import com.example.Tredbase_payment_system.Entity.Parent;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import com.example.Tredbase_payment_system.Repository.FeeRuleRepository;
+import com.example.Tredbase_payment_system.Repository.GuardianShareRepository;
+import com.example.Tredbase_payment_system.Repository.ParentRepository;
+import com.example.Tredbase_payment_system.Repository.PaymentRepository;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import com.example.Tredbase_payment_system.Service.FamilyGraphCache;
+import com.example.Tredbase_payment_system.Service.FeeRuleEngine;
+import com.example.Tredbase_payment_system.Service.LedgerAggregateService;
+import com.example.Tredbase_payment_system.Service.PaymentLogService;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Checkpoints only run when a test asks for one, so the database state between them is predictable
+@SpringBootTest(properties = {"payment.engine.enabled=true", "payment.engine.checkpoint-interval-ms=3600000"})
+public class BalanceEngineTest {
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private InMemorySettlement settlement;
+
+    @Autowired
+    private PaymentLogService paymentLogService;
+
+    @Autowired
+    private FamilyGraphCache familyGraphCache;
+
+    @Autowired
+    private LedgerAggregateService ledgerAggregates;
+
+    @Autowired
+    private ParentRepository parentRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private GuardianShareRepository guardianShareRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FeeRuleRepository feeRuleRepository;
+
+    @Autowired
+    private FeeRuleEngine feeRuleEngine;
+
+    private Parent parentA;
+    private Parent parentB;
+    private Student sharedStudent;
+    private Student studentA;
+
+    @BeforeEach
+    void setUp() {
+        // Write out what the previous test settled before its rows are deleted
+        settlement.checkpoint();
+        paymentLogService.flush();
+        paymentRepository.deleteAll();
+        guardianShareRepository.deleteAll();
+        studentRepository.deleteAll();
+        parentRepository.deleteAll();
+        familyGraphCache.invalidateAll();
+
+        parentA = parent("Parent A", "500.00");
+        parentB = parent("Parent B", "500.00");
+        sharedStudent = student("Shared Student", parentA, parentB);
+        studentA = student("Student A", parentA);
+        settlement.reload();
+    }
+
+    @Test
+    @DisplayName("Payments settle in memory and reach the tables at the next checkpoint")
+    void testSettleAndCheckpoint() {
+        Payment unique = paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("100.00"), "engine-key-1");
+        paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("40.00"));
+
+        // 100.00 + 5% from A; 42.00 split 21.00 / 21.00
+        assertEquals(TransactionStatus.SUCCESS, unique.getStatus());
+        assertNotNull(unique.getId());
+        assertEquals(Money.of("374.00"), settlement.parentBalance(parentA.getId()));
+        assertEquals(Money.of("479.00"), settlement.parentBalance(parentB.getId()));
+        assertEquals(Money.of("40.00"), settlement.studentBalance(sharedStudent.getStudentId()));
+        assertEquals(Money.of("500.00"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(0, paymentRepository.count());
+        assertEquals(2, settlement.pending());
+
+        // A retry before the checkpoint is answered from the pending payment
+        assertSame(unique, paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("100.00"), "engine-key-1"));
+
+        settlement.checkpoint();
+        assertEquals(0, settlement.pending());
+        assertEquals(Money.of("374.00"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("479.00"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("100.00"), studentRepository.findById(studentA.getStudentId()).orElseThrow().getBalance());
+        assertEquals(2, paymentRepository.count());
+        // The row keeps the id the payment was acknowledged with
+        Payment stored = paymentRepository.findByIdempotencyKey("engine-key-1").orElseThrow();
+        assertEquals(unique.getId(), stored.getId());
+        assertEquals(unique.getAmount(), paymentRepository.findById(unique.getId()).orElseThrow().getAmount());
+        assertEquals(Money.of("126.00"), ledgerAggregates.accountTotal(AccountType.PARENT, parentA.getId()).getTotalAmount());
+
+        // After the checkpoint the key is found in the index / table as before
+        assertEquals(unique.getAmount(), paymentService.processPayment(parentA.getId(), studentA.getStudentId(),
+                Money.of("100.00"), "engine-key-1").getAmount());
+        assertEquals(Money.of("374.00"), settlement.parentBalance(parentA.getId()));
+    }
+
+    @Test
+    @DisplayName("Rejected payments leave every balance untouched and are logged as FAILED")
+    void testRejections() {
+        PaymentException single = assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("480.00")));
+        assertEquals(PaymentFailureReason.INSUFFICIENT_BALANCE, single.getReason());
+
+        // B cannot cover its half; A's half must not stay debited
+        setBalance(parentB, "10.00");
+        PaymentException shared = assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("40.00")));
+        assertEquals(PaymentFailureReason.SHARED_PARENT_INSUFFICIENT_BALANCE, shared.getReason());
+        assertEquals(Money.of("500.00"), settlement.parentBalance(parentA.getId()));
+        assertEquals(Money.of("10.00"), settlement.parentBalance(parentB.getId()));
+        assertEquals(0L, settlement.studentBalance(sharedStudent.getStudentId()));
+
+        assertEquals(PaymentFailureReason.NOT_ASSOCIATED, assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentB.getId(), studentA.getStudentId(), Money.of("1.00"))).getReason());
+        assertEquals(PaymentFailureReason.PARENT_NOT_FOUND, assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(999_999L, studentA.getStudentId(), Money.of("1.00"))).getReason());
+        // A zero or negative amount would move money from the student to the parent
+        assertEquals(PaymentFailureReason.INVALID_AMOUNT, assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), 0L)).getReason());
+        assertEquals(PaymentFailureReason.INVALID_AMOUNT, assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("-5.00"))).getReason());
+        assertEquals(0L, settlement.studentBalance(studentA.getStudentId()));
+
+        paymentLogService.flush();
+        settlement.checkpoint();
+        List<Payment> failed = paymentRepository.findAll();
+        assertEquals(6, failed.size());
+        assertTrue(failed.stream().allMatch(p -> p.getStatus() == TransactionStatus.FAILED));
+        assertEquals(Money.of("500.00"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("Accounts created after startup are loaded on first use; batches settle item by item")
+    void testNewAccountsAndBatch() {
+        Parent parentC = parent("Parent C", "50.00");
+        Student studentC = student("Student C", parentC);
+
+        PaymentRequest ok = request(parentC.getId(), studentC.getStudentId(), Money.of("20.00"));
+        PaymentRequest tooMuch = request(parentC.getId(), studentC.getStudentId(), Money.of("40.00"));
+        List<Payment> results = paymentService.processBatch(List.of(ok, tooMuch, ok));
+
+        assertEquals(List.of(TransactionStatus.SUCCESS, TransactionStatus.FAILED, TransactionStatus.SUCCESS),
+                results.stream().map(Payment::getStatus).toList());
+        assertEquals(Money.of("8.00"), settlement.parentBalance(parentC.getId()));
+        settlement.checkpoint();
+        assertEquals(Money.of("8.00"), parentRepository.findById(parentC.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("40.00"), studentRepository.findById(studentC.getStudentId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("A school or tier change reaches the engine's fee without a reload")
+    void testFeeProfileFollowsStudent() {
+        LocalDate today = LocalDate.now();
+        try {
+            feeRuleRepository.save(new FeeRule(null, "North", "premium", null, null, 200, 0));
+            feeRuleEngine.reload();
+
+            // No school yet: the 5% default, 10.00 -> 10.50
+            paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"));
+            assertEquals(Money.of("489.50"), settlement.parentBalance(parentA.getId()));
+
+            Student stored = studentRepository.findById(studentA.getStudentId()).orElseThrow();
+            stored.setSchool("North");
+            stored.setTier("premium");
+            studentRepository.save(stored);
+            // North/premium 2%: 10.00 -> 10.20
+            paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"));
+            assertEquals(Money.of("479.30"), settlement.parentBalance(parentA.getId()));
+
+            // A change made with SQL is picked up once the profile is invalidated
+            jdbcTemplate.update("UPDATE student SET tier = 'basic' WHERE student_id = ?", studentA.getStudentId());
+            settlement.invalidateFeeProfile(studentA.getStudentId());
+            paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"));
+            assertEquals(Money.of("468.80"), settlement.parentBalance(parentA.getId()));
+            assertEquals(500, feeRuleEngine.rateBasisPoints("North", "basic", today.toEpochDay()));
+        } finally {
+            feeRuleRepository.deleteAll();
+            feeRuleEngine.reload();
+        }
+    }
+
+    @Test
+    @DisplayName("A key checkpointed after a duplicate's lookup is still found; a refused row is quarantined alone")
+    void testCheckpointKeysAndQuarantine() {
+        // A duplicate looked the key up (and missed) just before the checkpoint committed it
+        long lookedUp = settlement.checkpoints();
+        Payment first = paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"), "engine-race-key");
+        settlement.checkpoint();
+        Payment duplicate = new Payment();
+        duplicate.setParentId(parentA.getId());
+        duplicate.setStudentId(studentA.getStudentId());
+        duplicate.setAmount(Money.of("10.00"));
+        duplicate.setIdempotencyKey("engine-race-key");
+        assertEquals(first.getId(), settlement.settle(duplicate, lookedUp).getId());
+        assertEquals(Money.of("489.50"), settlement.parentBalance(parentA.getId()));
+
+        // Another writer takes a pending payment's key, so the database refuses that row
+        Payment poisoned = paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"), "engine-poison-key");
+        jdbcTemplate.update("INSERT INTO payment (parent_id, student_id, status, payment_date, idempotency_key)"
+                + " VALUES (?, ?, 'FAILED', CURRENT_TIMESTAMP, 'engine-poison-key')", parentB.getId(), studentA.getStudentId());
+        Payment next = paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("20.00"));
+        int quarantinedBefore = settlement.quarantined();
+        settlement.checkpoint();
+
+        // The other payment and every balance are written; only the refused row is held back
+        assertEquals(0, settlement.pending());
+        assertEquals(quarantinedBefore + 1, settlement.quarantined());
+        assertTrue(paymentRepository.findById(next.getId()).isPresent());
+        assertFalse(paymentRepository.findById(poisoned.getId()).isPresent());
+        assertEquals(Money.of("468.50"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("20.00"), studentRepository.findById(sharedStudent.getStudentId()).orElseThrow().getBalance());
+
+        // The next checkpoint does not try the quarantined row again
+        paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("1.00"));
+        settlement.checkpoint();
+        assertEquals(0, settlement.pending());
+        assertEquals(Money.of("467.45"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("Concurrent payments conserve money and the checkpoint matches the engine")
+    void testConcurrentPayments() throws Exception {
+        int threads = 4;
+        int paymentsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < paymentsPerThread; i++) {
+                        boolean shared = ThreadLocalRandom.current().nextBoolean();
+                        paymentService.processPayment(parentA.getId(),
+                                shared ? sharedStudent.getStudentId() : studentA.getStudentId(), Money.of("0.20"));
+                        if (i % 50 == 0) {
+                            // Checkpoints cut in between payments
+                            settlement.checkpoint();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        settlement.checkpoint();
+
+        long credited = settlement.studentBalance(studentA.getStudentId()) + settlement.studentBalance(sharedStudent.getStudentId());
+        long debited = 2 * Money.of("500.00") - settlement.parentBalance(parentA.getId()) - settlement.parentBalance(parentB.getId());
+        assertEquals(threads * paymentsPerThread * Money.of("0.20"), credited);
+        // 5% fee on each 0.20
+        assertEquals(threads * paymentsPerThread * Money.of("0.21"), debited);
+        assertEquals(threads * paymentsPerThread, paymentRepository.count());
+        for (Parent parent : List.of(parentA, parentB)) {
+            assertEquals(settlement.parentBalance(parent.getId()),
+                    parentRepository.findById(parent.getId()).orElseThrow().getBalance());
+        }
+    }
+
+    @Test
+    @DisplayName("Engine transfers across shards are all-or-nothing under concurrency")
+    void testShardedEngine_ConservesMoney() throws Exception {
+        int accounts = 64;
+        long initial = 1_000;
+        try (ShardedBalanceEngine engine = new ShardedBalanceEngine(4, accounts * 2)) {
+            for (long id = 1; id <= accounts; id++) {
+                engine.load(ShardedBalanceEngine.key(id, ShardedBalanceEngine.PARENT), initial);
+                engine.load(ShardedBalanceEngine.key(id, ShardedBalanceEngine.STUDENT), 0);
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    long moved = 0;
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2_000; i++) {
+                        // Three distinct parents, usually on different shards, pay one student
+                        long first = random.nextLong(1, accounts - 1);
+                        long[] debitKeys = {ShardedBalanceEngine.key(first, 0), ShardedBalanceEngine.key(first + 1, 0),
+                                ShardedBalanceEngine.key(first + 2, 0)};
+                        long[] amounts = {random.nextLong(1, 30), random.nextLong(1, 30), random.nextLong(1, 30)};
+                        long credit = amounts[0] + amounts[1] + amounts[2];
+                        if (engine.transfer(debitKeys, amounts, ShardedBalanceEngine.key(random.nextLong(1, accounts + 1), 1),
+                                credit, () -> { }) == -1) {
+                            moved += credit;
+                        }
+                    }
+                    return moved;
+                }));
+            }
+            long moved = 0;
+            for (Future<Long> future : futures) {
+                moved += future.get();
+            }
+            executor.shutdown();
+
+            long parents = 0;
+            long students = 0;
+            for (long id = 1; id <= accounts; id++) {
+                long balance = engine.balance(ShardedBalanceEngine.key(id, ShardedBalanceEngine.PARENT));
+                assertTrue(balance >= 0);
+                parents += balance;
+                students += engine.balance(ShardedBalanceEngine.key(id, ShardedBalanceEngine.STUDENT));
+            }
+            assertTrue(moved > 0);
+            assertEquals(moved, students);
+            assertEquals(accounts * initial - moved, parents);
+            // Every changed account is in the checkpoint once
+            assertEquals(accounts * 2L, Arrays.stream(engine.checkpoint(() -> { })[0]).distinct().count()
+                    + countUntouched(engine, accounts));
+        }
+    }
+
+    @Test
+    @DisplayName("A transfer to a student that is not loaded is rejected and debits nobody")
+    void testShardedEngine_MissingCredit() throws Exception {
+        long student = ShardedBalanceEngine.key(1, ShardedBalanceEngine.STUDENT);
+        // One shard takes the single-request path; eight spread the parents over several shards
+        for (int shardCount : new int[]{1, 8}) {
+            try (ShardedBalanceEngine engine = new ShardedBalanceEngine(shardCount, 16)) {
+                long[] debitKeys = new long[4];
+                long[] amounts = {10, 20, 30, 40};
+                for (int i = 0; i < debitKeys.length; i++) {
+                    debitKeys[i] = ShardedBalanceEngine.key(i + 1, ShardedBalanceEngine.PARENT);
+                    engine.load(debitKeys[i], 100);
+                }
+
+                assertEquals(ShardedBalanceEngine.MISSING_CREDIT,
+                        engine.transfer(debitKeys, amounts, student, 100, () -> fail("applied")));
+                for (long key : debitKeys) {
+                    assertEquals(100, engine.balance(key));
+                }
+                assertFalse(engine.contains(student));
+
+                engine.load(student, 0);
+                assertEquals(-1, engine.transfer(debitKeys, amounts, student, 100, () -> { }));
+                assertEquals(100, engine.balance(student));
+                assertEquals(90, engine.balance(debitKeys[0]));
+            }
+        }
+    }
+
+    // Accounts whose balance never changed (not in the checkpoint)
+    private static long countUntouched(ShardedBalanceEngine engine, int accounts) {
+        long untouched = 0;
+        for (long id = 1; id <= accounts; id++) {
+            untouched += engine.balance(ShardedBalanceEngine.key(id, ShardedBalanceEngine.PARENT)) == 1_000 ? 1 : 0;
+            untouched += engine.balance(ShardedBalanceEngine.key(id, ShardedBalanceEngine.STUDENT)) == 0 ? 1 : 0;
+        }
+        return untouched;
+    }
+
+    private Parent parent(String name, String balance) {
+        Parent parent = new Parent();
+        parent.setName(name);
+        parent.setBalance(Money.of(balance));
+        return parentRepository.save(parent);
+    }
+
+    private Student student(String name, Parent... parents) {
+        Student student = new Student();
+        student.setStudentName(name);
+        student.setBalance(0L);
+        student.setParents(List.of(parents));
+        return studentRepository.save(student);
+    }
+
+    // Balances are owned by the engine while it is enabled: change the table, then reload
+    private void setBalance(Parent parent, String balance) {
+        Parent stored = parentRepository.findById(parent.getId()).orElseThrow();
+        stored.setBalance(Money.of(balance));
+        parentRepository.save(stored);
+        settlement.reload();
+    }
+
+    private static PaymentRequest request(Long parentId, Long studentId, Long amount) {
+        PaymentRequest request = new PaymentRequest();
+        request.setParentId(parentId);
+        request.setStudentId(studentId);
+        request.setPaymentAmount(amount);
+        return request;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.Tredbase_payment_system;
+
+import com.example.Tredbase_payment_system.Entity.Parent;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Repository.ParentRepository;
+import com.example.Tredbase_payment_system.Repository.PaymentRepository;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+public class PaymentConcurrencyIntegrationTest {
+
+    private static final int THREADS = 32;
+    private static final int PAYMENTS_PER_THREAD = 25;
+    // 10.01: adjusted = 10.51 (10.5105 rounded half-even), shared halves = 5.26 (first parent) + 5.25
+    private static final long AMOUNT = Money.of("10.01");
+    private static final long ADJUSTED = Money.of("10.51");
+    private static final long FIRST_HALF = Money.of("5.26");
+    private static final long SECOND_HALF = Money.of("5.25");
+    private static final long OPENING_BALANCE = Money.ofMajor(1_000_000);
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private ParentRepository parentRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    private Parent parentA;
+    private Parent parentB;
+    private Student sharedStudent;
+    private Student studentA;
+    private Student studentB;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.deleteAll();
+        studentRepository.deleteAll();
+        parentRepository.deleteAll();
+
+        parentA = new Parent();
+        parentA.setName("Parent A");
+        parentA.setBalance(OPENING_BALANCE);
+        parentRepository.save(parentA);
+
+        parentB = new Parent();
+        parentB.setName("Parent B");
+        parentB.setBalance(OPENING_BALANCE);
+        parentRepository.save(parentB);
+
+        sharedStudent = new Student();
+        sharedStudent.setStudentName("Shared Student");
+        sharedStudent.setBalance(0L);
+        sharedStudent.setParents(List.of(parentA, parentB));
+        studentRepository.save(sharedStudent);
+
+        studentA = new Student();
+        studentA.setStudentName("Student A");
+        studentA.setBalance(0L);
+        studentA.setParents(Collections.singletonList(parentA));
+        studentRepository.save(studentA);
+
+        studentB = new Student();
+        studentB.setStudentName("Student B");
+        studentB.setBalance(0L);
+        studentB.setParents(Collections.singletonList(parentB));
+        studentRepository.save(studentB);
+    }
+
+    @Test
+    @DisplayName("Concurrent payments on shared and unique students never lose an update")
+    void testConcurrentPayments_NoLostUpdates() throws Exception {
+        // Each thread cycles through the four payment shapes, so every parent row
+        // is contended both through its own student and through the shared student
+        long[][] routes = {
+                {parentA.getId(), studentA.getStudentId()},
+                {parentB.getId(), studentB.getStudentId()},
+                {parentA.getId(), sharedStudent.getStudentId()},
+                {parentB.getId(), sharedStudent.getStudentId()}
+        };
+        AtomicInteger[] completed = new AtomicInteger[routes.length];
+        for (int i = 0; i < routes.length; i++) {
+            completed[i] = new AtomicInteger();
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < PAYMENTS_PER_THREAD; i++) {
+                    int route = (offset + i) % routes.length;
+                    paymentService.processPayment(routes[route][0], routes[route][1], AMOUNT);
+                    completed[route].incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        pool.shutdown();
+
+        int uniqueA = completed[0].get();
+        int uniqueB = completed[1].get();
+        int shared = completed[2].get() + completed[3].get();
+        assertEquals(THREADS * PAYMENTS_PER_THREAD, uniqueA + uniqueB + shared);
+
+        // Exact to the cent: parentA has the lower id, so it takes the odd cent of every shared payment
+        assertEquals(OPENING_BALANCE - uniqueA * ADJUSTED - shared * FIRST_HALF,
+                parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(OPENING_BALANCE - uniqueB * ADJUSTED - shared * SECOND_HALF,
+                parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(uniqueA * AMOUNT,
+                studentRepository.findById(studentA.getStudentId()).orElseThrow().getBalance());
+        assertEquals(uniqueB * AMOUNT,
+                studentRepository.findById(studentB.getStudentId()).orElseThrow().getBalance());
+        assertEquals(shared * AMOUNT,
+                studentRepository.findById(sharedStudent.getStudentId()).orElseThrow().getBalance());
+
+        List<Payment> payments = paymentRepository.findAll();
+        assertEquals(THREADS * PAYMENTS_PER_THREAD, payments.size());
+        assertTrue(payments.stream().allMatch(p -> p.getStatus() == TransactionStatus.SUCCESS));
+    }
+}
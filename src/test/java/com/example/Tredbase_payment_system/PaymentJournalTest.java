@@ -0,0 +1,320 @@
+package com.example.Tredbase_payment_system;
+
+import com.example.Tredbase_payment_system.Dto.ParentDebits;
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Journal.JournalRecord;
+import com.example.Tredbase_payment_system.Journal.PaymentJournal;
+import com.example.Tredbase_payment_system.Service.PaymentLogService;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PaymentJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("Appended records replay in order with all fields intact")
+    void testRoundTrip() throws IOException {
+        Path dir = tempDir.resolve("journal");
+        try (PaymentJournal journal = PaymentJournal.open(dir, 1, 1 << 20, 0)) {
+            journal.append(success(1L, 2L, 10_000L, debit(1L, 10_000L)));
+            journal.append(failure(2L, 2L, null));
+            journal.appendAndAwait(success(1L, 1L, 5_000L, sharedDebits()));
+        }
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        assertEquals(1, PaymentJournal.replay(dir, 0, replayed::add));
+
+        assertEquals(3, replayed.size());
+        assertEquals(10_000L, replayed.get(0).id());
+        assertNull(replayed.get(1).id());
+        assertEquals(TransactionStatus.SUCCESS, replayed.get(0).status());
+        assertEquals(10_000L, replayed.get(0).amount());
+        assertEquals("key-10000", replayed.get(0).idempotencyKey());
+        assertEquals(TransactionStatus.FAILED, replayed.get(1).status());
+        assertNull(replayed.get(1).amount());
+        assertNull(replayed.get(1).idempotencyKey());
+        assertEquals("Payment failed: test", replayed.get(1).description());
+        assertArrayEquals(new long[]{1L, 2L}, replayed.get(2).debitParentIds());
+        assertArrayEquals(new long[]{3_000L, 2_000L}, replayed.get(2).debitAmounts());
+        assertEquals(LocalDateTime.of(2026, 1, 2, 3, 4, 5, 6000), replayed.get(2).paymentDate());
+    }
+
+    @Test
+    @DisplayName("Replay stops at a torn record and ignores generations already covered")
+    void testTornTail() throws IOException {
+        Path dir = tempDir.resolve("journal");
+        try (PaymentJournal journal = PaymentJournal.open(dir, 1, 1 << 20, 0)) {
+            journal.appendAndAwait(success(1L, 2L, 10_000L, debit(1L, 10_000L)));
+        }
+        try (PaymentJournal journal = PaymentJournal.open(dir, 2, 1 << 20, 0)) {
+            journal.append(success(1L, 2L, 100L, debit(1L, 100L)));
+            journal.appendAndAwait(success(1L, 2L, 200L, debit(1L, 200L)));
+        }
+
+        // Corrupt the last byte of the second frame of generation 2, as a crash mid-write would
+        Path segment = PaymentJournal.segments(dir).get(1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            channel.read(header, 0);
+            int secondFrame = 8 + header.getInt(0);
+            header.clear();
+            channel.read(header, secondFrame);
+            channel.write(ByteBuffer.wrap(new byte[]{(byte) 0xff}), secondFrame + 8 + header.getInt(0) - 1);
+        }
+
+        List<Long> amounts = new ArrayList<>();
+        assertEquals(2, PaymentJournal.replay(dir, 0, record -> amounts.add(record.amount())));
+        assertEquals(List.of(10_000L, 100L), amounts);
+
+        amounts.clear();
+        PaymentJournal.replay(dir, 1, record -> amounts.add(record.amount()));
+        assertEquals(List.of(100L), amounts);
+    }
+
+    @Test
+    @DisplayName("Records spill over into new segments when one fills up")
+    void testSegmentRoll() throws IOException {
+        Path dir = tempDir.resolve("journal");
+        try (PaymentJournal journal = PaymentJournal.open(dir, 1, 4096, 0)) {
+            for (int i = 0; i < 500; i++) {
+                journal.append(success(1L, 2L, (long) i, debit(1L, i)));
+            }
+        }
+        assertTrue(PaymentJournal.segments(dir).size() > 1);
+
+        List<Long> amounts = new ArrayList<>();
+        PaymentJournal.replay(dir, 0, record -> amounts.add(record.amount()));
+        assertEquals(500, amounts.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals((long) i, amounts.get(i).longValue());
+        }
+
+        PaymentJournal.deleteSegments(dir, 1);
+        assertTrue(PaymentJournal.segments(dir).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Balances, history and aggregates are rebuilt after a crash and after a clean restart")
+    void testRecovery() throws Exception {
+        Path live = tempDir.resolve("live");
+        Path crashed = tempDir.resolve("crashed");
+
+        List<List<Object>> before;
+        List<Object> idsBefore;
+        try (ConfigurableApplicationContext context = boot(live, "journal_first")) {
+            PaymentService paymentService = context.getBean(PaymentService.class);
+            Payment keyed = paymentService.processPayment(1L, 2L, Money.of("100.00"), "recovery-key");
+            paymentService.processPayment(1L, 1L, Money.of("50.01"));
+            assertThrows(RuntimeException.class, () -> paymentService.processPayment(2L, 2L, Money.of("10.00")));
+            PaymentRequest request = new PaymentRequest();
+            request.setParentId(2L);
+            request.setStudentId(3L);
+            request.setPaymentAmount(Money.of("20.00"));
+            Payment batched = paymentService.processBatch(List.of(request)).get(0);
+            context.getBean(PaymentLogService.class).flush();
+            before = state(context);
+            idsBefore = paymentIds(context);
+            // The ids handed back are the ids of the rows, batch items included
+            assertTrue(idsBefore.contains(List.of(keyed.getId(), Money.toDecimal(keyed.getAmount()))));
+            assertTrue(idsBefore.contains(List.of(batched.getId(), Money.toDecimal(batched.getAmount()))));
+
+            // What a crash leaves behind: the journal segments but no shutdown snapshot
+            copyDirectory(live, crashed);
+        }
+
+        try (ConfigurableApplicationContext context = boot(crashed, "journal_replayed")) {
+            assertEquals(before, state(context));
+            // Replayed payments keep the ids their callers were given
+            assertEquals(idsBefore, paymentIds(context));
+            // The idempotency key survives the crash: a retry is not charged again
+            context.getBean(PaymentService.class).processPayment(1L, 2L, Money.of("100.00"), "recovery-key");
+            assertEquals(before, state(context));
+        }
+
+        try (ConfigurableApplicationContext context = boot(live, "journal_snapshot")) {
+            assertEquals(before, state(context));
+            assertEquals(idsBefore, paymentIds(context));
+            context.getBean(PaymentService.class).processPayment(1L, 2L, Money.of("100.00"), "recovery-key");
+            assertEquals(before, state(context));
+            // Payment ids continue after the restored history
+            context.getBean(PaymentService.class).processPayment(1L, 2L, Money.of("1.00"));
+            assertEquals(before.get(2).size() + 1, count(context, "SELECT COUNT(DISTINCT id) FROM payment"));
+        }
+    }
+
+    /*
+      Write and replay throughput of the journal compared with the JPA payment path.
+      Disabled by default; run with:
+        mvn test -Dtest=PaymentJournalTest -Dloadtest=true [-Dloadtest.records=200000]
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "loadtest", matches = "true")
+    @DisplayName("Journal write and replay throughput vs JPA path")
+    void measureThroughput() throws Exception {
+        int records = Integer.getInteger("loadtest.records", 200_000);
+        int threads = 16;
+        Path dir = tempDir.resolve("measure");
+        JournalRecord record = success(1L, 1L, 5_000L, sharedDebits());
+
+        long start = System.nanoTime();
+        try (PaymentJournal journal = PaymentJournal.open(dir, 1, 64 << 20, 200);
+             ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < records / threads; i++) {
+                        journal.appendAndAwait(record);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double writeSeconds = (System.nanoTime() - start) / 1e9;
+
+        start = System.nanoTime();
+        long[] replayed = new long[1];
+        PaymentJournal.replay(dir, 0, r -> replayed[0]++);
+        double replaySeconds = (System.nanoTime() - start) / 1e9;
+
+        int payments = Math.min(records, 5_000);
+        double jpaSeconds;
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(TredbasePaymentSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:journal_measure",
+                        "--spring.jpa.show-sql=false", "--logging.level.root=WARN");
+             ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            PaymentService paymentService = context.getBean(PaymentService.class);
+            start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < payments / threads; i++) {
+                        paymentService.processPayment(1L, 1L, 1L);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            jpaSeconds = (System.nanoTime() - start) / 1e9;
+        }
+
+        System.out.printf("%n%-28s %12s %14s%n", "path", "records", "records/s");
+        System.out.printf("%-28s %12d %14.0f%n", "journal append (durable)", records / threads * threads,
+                records / threads * threads / writeSeconds);
+        System.out.printf("%-28s %12d %14.0f%n", "journal replay", replayed[0], replayed[0] / replaySeconds);
+        System.out.printf("%-28s %12d %14.0f%n", "JPA processPayment", payments / threads * threads,
+                payments / threads * threads / jpaSeconds);
+    }
+
+    private static ConfigurableApplicationContext boot(Path journalDir, String database) {
+        return new SpringApplicationBuilder(TredbasePaymentSystemApplication.class)
+                .web(WebApplicationType.NONE)
+                .run("--spring.datasource.url=jdbc:h2:mem:" + database,
+                        "--payment.journal.enabled=true",
+                        "--payment.journal.dir=" + journalDir,
+                        "--payment.journal.segment-size-mb=1",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN");
+    }
+
+    // Balances, payment history (without ids) and aggregates, in a stable order
+    private static List<List<Object>> state(ConfigurableApplicationContext context) {
+        JdbcTemplate jdbc = context.getBean(JdbcTemplate.class);
+        return List.of(
+                rows(jdbc, "SELECT id, balance FROM parent ORDER BY id"),
+                rows(jdbc, "SELECT student_id, balance FROM student ORDER BY student_id"),
+                rows(jdbc, "SELECT parent_id, student_id, amount, status, payment_date, description, idempotency_key " +
+                        "FROM payment ORDER BY payment_date, status, amount"),
+                rows(jdbc, "SELECT rollup_date, status, SUM(payment_count), SUM(total_amount) " +
+                        "FROM daily_payment_rollup GROUP BY rollup_date, status ORDER BY rollup_date, status"),
+                rows(jdbc, "SELECT account_type, account_id, payment_count, total_amount " +
+                        "FROM account_payment_total ORDER BY account_type, account_id"));
+    }
+
+    private static List<Object> paymentIds(ConfigurableApplicationContext context) {
+        return rows(context.getBean(JdbcTemplate.class), "SELECT id, amount FROM payment WHERE status = 'SUCCESS' ORDER BY id");
+    }
+
+    private static List<Object> rows(JdbcTemplate jdbc, String sql) {
+        List<Object> rows = new ArrayList<>();
+        for (Map<String, Object> row : jdbc.queryForList(sql)) {
+            rows.add(new ArrayList<>(row.values()));
+        }
+        return rows;
+    }
+
+    private static long count(ConfigurableApplicationContext context, String sql) {
+        return context.getBean(JdbcTemplate.class).queryForObject(sql, Long.class);
+    }
+
+    private static void copyDirectory(Path source, Path target) throws IOException {
+        Files.createDirectories(target);
+        try (var files = Files.list(source)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    private static ParentDebits debit(long parentId, long amount) {
+        return new ParentDebits(new long[]{parentId}, new long[]{amount});
+    }
+
+    private static ParentDebits sharedDebits() {
+        return new ParentDebits(new long[]{1L, 2L}, new long[]{3_000L, 2_000L});
+    }
+
+    private static JournalRecord success(Long parentId, Long studentId, Long amount, ParentDebits debits) {
+        Payment payment = new Payment();
+        // The amount doubles as a recognisable id
+        payment.setId(amount);
+        payment.setParentId(parentId);
+        payment.setStudentId(studentId);
+        payment.setAmount(amount);
+        payment.setStatus(TransactionStatus.SUCCESS);
+        payment.setPaymentDate(LocalDateTime.of(2026, 1, 2, 3, 4, 5, 6000));
+        payment.setDescription("Payment processed successfully.");
+        payment.setIdempotencyKey("key-" + amount);
+        return JournalRecord.success(payment, debits);
+    }
+
+    private static JournalRecord failure(Long parentId, Long studentId, Long amount) {
+        Payment payment = new Payment();
+        payment.setParentId(parentId);
+        payment.setStudentId(studentId);
+        payment.setAmount(amount);
+        payment.setStatus(TransactionStatus.FAILED);
+        payment.setPaymentDate(LocalDateTime.now());
+        payment.setDescription("Payment failed: test");
+        return JournalRecord.failure(payment);
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.Tredbase_payment_system;
+
+import com.example.Tredbase_payment_system.Entity.Parent;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Repository.ParentRepository;
+import com.example.Tredbase_payment_system.Repository.PaymentRepository;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+  Load comparison between execution modes. Boots the full application on a random port,
+  seeds one family per client and drives POST /api/payment from many concurrent clients.
+  Disabled by default; run with:
+    mvn test -Dtest=PaymentLoadTest -Dloadtest=true [-Dloadtest.clients=1000] [-Dloadtest.requests=20]
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+public class PaymentLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 1000);
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("loadtest.requests", 20);
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:adminPass".getBytes(StandardCharsets.UTF_8));
+
+    @Test
+    @DisplayName("Platform threads vs virtual threads at high client concurrency")
+    void compareExecutionModes() throws Exception {
+        LoadResult platform = run("platform");
+        LoadResult virtual = run("virtual", "virtual");
+
+        System.out.printf("%n%-10s %10s %12s %10s %10s%n", "mode", "requests", "req/s", "p50 ms", "p99 ms");
+        for (LoadResult result : List.of(platform, virtual)) {
+            System.out.printf("%-10s %10d %12.1f %10.1f %10.1f%n", result.name(), result.requests(),
+                    result.throughput(), result.p50Millis(), result.p99Millis());
+        }
+    }
+
+    @Test
+    @DisplayName("BCrypt on every request vs cached credential verification")
+    void compareAuthentication() throws Exception {
+        LoadResult bcrypt = run("bcrypt", new String[0], "--security.auth-cache.enabled=false");
+        LoadResult cached = run("cached", new String[0], "--security.auth-cache.enabled=true");
+
+        System.out.printf("%n%-10s %10s %12s %10s %10s%n", "auth", "requests", "req/s", "p50 ms", "p99 ms");
+        for (LoadResult result : List.of(bcrypt, cached)) {
+            System.out.printf("%-10s %10d %12.1f %10.1f %10.1f%n", result.name(), result.requests(),
+                    result.throughput(), result.p50Millis(), result.p99Millis());
+        }
+    }
+
+    // Runs one load scenario against a fresh application started with the given Spring profiles
+    static LoadResult run(String name, String... profiles) throws Exception {
+        return run(name, profiles, new String[0]);
+    }
+
+    // As above, with extra command line arguments (e.g. "--security.auth-cache.enabled=false")
+    static LoadResult run(String name, String[] profiles, String... extraArgs) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(TredbasePaymentSystemApplication.class)
+                .profiles(profiles);
+
+        // Command line arguments, so they win over application.properties
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--spring.datasource.url=jdbc:h2:mem:load_" + name,
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security=WARN",
+                // Capacity is measured here, not the rate limiter
+                "--payment.rate-limit.enabled=false"));
+        args.addAll(List.of(extraArgs));
+        try (ConfigurableApplicationContext context = builder.run(args.toArray(String[]::new))) {
+            // A shadowed override would silently measure show-sql, debug logging and a shared database
+            assertEquals("false", context.getEnvironment().getProperty("spring.jpa.show-sql"));
+            assertEquals("jdbc:h2:mem:load_" + name, context.getEnvironment().getProperty("spring.datasource.url"));
+            int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+            long[][] families = seedFamilies(context);
+
+            HttpClient client = HttpClient.newBuilder()
+                    .executor(Executors.newVirtualThreadPerTaskExecutor())
+                    .connectTimeout(Duration.ofSeconds(30))
+                    .build();
+            URI uri = URI.create("http://localhost:" + port + "/api/payment");
+
+            // One warm-up pass so JIT and connection setup do not skew either mode
+            drive(client, uri, families, Math.min(CLIENTS, 50), 5);
+            return drive(client, uri, families, CLIENTS, REQUESTS_PER_CLIENT).named(name);
+        }
+    }
+
+    private static LoadResult drive(HttpClient client, URI uri, long[][] families,
+                                    int clients, int requestsPerClient) throws Exception {
+        ConcurrentLinkedQueue<Long> latencies = new ConcurrentLinkedQueue<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>(clients);
+        long begin;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                long[] family = families[c % families.length];
+                String body = String.format("{\"parentId\":%d,\"studentId\":%d,\"paymentAmount\":1.0}",
+                        family[0], family[1]);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < requestsPerClient; i++) {
+                        HttpRequest request = HttpRequest.newBuilder(uri)
+                                .header("Authorization", AUTHORIZATION)
+                                .header("Content-Type", "application/json")
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build();
+                        long sent = System.nanoTime();
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        latencies.add(System.nanoTime() - sent);
+                        assertEquals(200, response.statusCode(), response.body());
+                    }
+                    return null;
+                }));
+            }
+            begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.MINUTES);
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        return new LoadResult("", sorted.length, sorted.length / (elapsed / 1e9),
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6);
+    }
+
+    // One parent with a unique student per client, so clients never contend on the same accounts
+    private static long[][] seedFamilies(ConfigurableApplicationContext context) {
+        ParentRepository parentRepository = context.getBean(ParentRepository.class);
+        StudentRepository studentRepository = context.getBean(StudentRepository.class);
+        // Drop the import.sql seed first; its explicit ids would collide with generated ones
+        context.getBean(PaymentRepository.class).deleteAll();
+        studentRepository.deleteAll();
+        parentRepository.deleteAll();
+
+        int count = Math.max(1, CLIENTS);
+        long[][] families = new long[count][];
+        for (int i = 0; i < count; i++) {
+            Parent parent = new Parent();
+            parent.setName("Load Parent " + i);
+            parent.setBalance(Money.ofMajor(1_000_000));
+            parentRepository.save(parent);
+
+            Student student = new Student();
+            student.setStudentName("Load Student " + i);
+            student.setBalance(0L);
+            student.setParents(Collections.singletonList(parent));
+            studentRepository.save(student);
+            families[i] = new long[]{parent.getId(), student.getStudentId()};
+        }
+        return families;
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+
+    record LoadResult(String name, int requests, double throughput, double p50Millis, double p99Millis) {
+        LoadResult named(String newName) {
+            return new LoadResult(newName, requests, throughput, p50Millis, p99Millis);
+        }
+    }
+}
@@ -1,30 +1,122 @@
 package com.example.Tredbase_payment_system;
 
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.example.Tredbase_payment_system.Config.CachingAuthenticationProvider;
+import com.example.Tredbase_payment_system.Controller.PaymentController;
+import com.example.Tredbase_payment_system.Dto.DailyPaymentSummary;
+import com.example.Tredbase_payment_system.Dto.PageResponse;
+import com.example.Tredbase_payment_system.Dto.PaymentFilter;
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Dto.PaymentSubmission;
+import com.example.Tredbase_payment_system.Dto.ReconciliationReport;
+import com.example.Tredbase_payment_system.Entity.FeeRule;
+import com.example.Tredbase_payment_system.Entity.GuardianShare;
 import com.example.Tredbase_payment_system.Entity.Parent;
 import com.example.Tredbase_payment_system.Entity.Payment;
 import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Enums.AccountType;
+import com.example.Tredbase_payment_system.Enums.PaymentFailureReason;
+import com.example.Tredbase_payment_system.Enums.ReconciliationCheck;
+import com.example.Tredbase_payment_system.Enums.SubmissionStatus;
+import com.example.Tredbase_payment_system.Exception.PaymentException;
+import com.example.Tredbase_payment_system.Repository.FeeRuleRepository;
+import com.example.Tredbase_payment_system.Repository.GuardianShareRepository;
 import com.example.Tredbase_payment_system.Repository.ParentRepository;
 import com.example.Tredbase_payment_system.Repository.PaymentRepository;
 import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import com.example.Tredbase_payment_system.Service.AccountLockManager;
+import com.example.Tredbase_payment_system.Service.FamilyGraphCache;
+import com.example.Tredbase_payment_system.Service.FeeRuleEngine;
+import com.example.Tredbase_payment_system.Service.IdempotencyIndex;
+import com.example.Tredbase_payment_system.Service.LedgerAggregateService;
+import com.example.Tredbase_payment_system.Service.PaymentEvents;
+import com.example.Tredbase_payment_system.Service.PaymentLogService;
 import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Service.PaymentSubmissionService;
+import com.example.Tredbase_payment_system.Service.ReconciliationService;
 import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Utils.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.KeyValuePair;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import java.util.Collections;
-import java.util.List;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-@SpringBootTest
+// A small async queue, so filling it up stays quick; a per-parent rate limit a test can exhaust; a small batch limit;
+// reconciliation covers payments made a moment ago
+@SpringBootTest(properties = {
+        "payment.async.queue-capacity=" + PaymentServiceIntegrationTest.ASYNC_QUEUE_CAPACITY,
+        "payment.async.workers=" + PaymentServiceIntegrationTest.ASYNC_WORKERS,
+        "payment.rate-limit.parent.rate-per-second=1",
+        "payment.rate-limit.parent.burst=" + PaymentServiceIntegrationTest.PARENT_BURST,
+        "payment.batch.max-size=" + PaymentServiceIntegrationTest.MAX_BATCH_SIZE,
+        "payment.reconciliation.settle-seconds=0"})
 public class PaymentServiceIntegrationTest {
 
+    static final int ASYNC_QUEUE_CAPACITY = 50;
+    static final int ASYNC_WORKERS = 4;
+    static final int PARENT_BURST = 5;
+    static final int MAX_BATCH_SIZE = 20;
+
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private PaymentLogService paymentLogService;
+
+    @Autowired
+    private FamilyGraphCache familyGraphCache;
+
+    @Autowired
+    private IdempotencyIndex idempotencyIndex;
+
+    @Autowired
+    private LedgerAggregateService ledgerAggregates;
+
+    @Autowired
+    private FeeRuleEngine feeRuleEngine;
+
+    @Autowired
+    private FeeRuleRepository feeRuleRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Autowired
     private ParentRepository parentRepository;
 
@@ -34,6 +126,27 @@ public class PaymentServiceIntegrationTest {
     @Autowired
     private PaymentRepository paymentRepository;
 
+    @Autowired
+    private GuardianShareRepository guardianShareRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private AuthenticationProvider authenticationProvider;
+
+    @Autowired
+    private PaymentSubmissionService submissionService;
+
+    @Autowired
+    private AccountLockManager lockManager;
+
+    @Autowired
+    private PaymentController paymentController;
+
+    @Autowired
+    private ReconciliationService reconciliationService;
+
     // Test data
     private Parent parentA;
     private Parent parentB;
@@ -45,25 +158,26 @@ public class PaymentServiceIntegrationTest {
     void setUp() {
         // Clean up previous data
         paymentRepository.deleteAll();
+        guardianShareRepository.deleteAll();
         studentRepository.deleteAll();
         parentRepository.deleteAll();
 
         // Parent A
         parentA = new Parent();
         parentA.setName("Parent A");
-        parentA.setBalance(500.0);
+        parentA.setBalance(Money.of("500.00"));
         parentRepository.save(parentA);
 
         // Parent B
         parentB = new Parent();
         parentB.setName("Parent B");
-        parentB.setBalance(500.0);
+        parentB.setBalance(Money.of("500.00"));
         parentRepository.save(parentB);
 
         // Shared Student
         sharedStudent = new Student();
         sharedStudent.setStudentName("Shared Student");
-        sharedStudent.setBalance(0.0);
+        sharedStudent.setBalance(0L);
         // Link both parents
         sharedStudent.setParents(List.of(parentA, parentB));
         studentRepository.save(sharedStudent);
@@ -71,14 +185,14 @@ public class PaymentServiceIntegrationTest {
         // Unique Student for Parent A
         studentA = new Student();
         studentA.setStudentName("Student A");
-        studentA.setBalance(0.0);
+        studentA.setBalance(0L);
         studentA.setParents(Collections.singletonList(parentA));
         studentRepository.save(studentA);
 
         // Unique Student for Parent B
         studentB = new Student();
         studentB.setStudentName("Student B");
-        studentB.setBalance(0.0);
+        studentB.setBalance(0L);
         studentB.setParents(Collections.singletonList(parentB));
         studentRepository.save(studentB);
     }
@@ -86,17 +200,17 @@ public class PaymentServiceIntegrationTest {
     @Test
     @DisplayName("Successful payment for unique student")
     void testProcessPayment_UniqueStudent_Success() {
-        double paymentAmount = 100.0;
+        long paymentAmount = Money.of("100.00");
         paymentService.processPayment(parentA.getId(), studentA.getStudentId(), paymentAmount);
 
         // Check parent's balance
         Parent updatedA = parentRepository.findById(parentA.getId()).orElseThrow();
         // We expect 500 - (100 * 1.05) = 500 - 105 = 395.0
-        assertEquals(395.0, updatedA.getBalance(), 0.001);
+        assertEquals(Money.of("395.00"), updatedA.getBalance());
 
         // Check student's balance
         Student updatedStudentA = studentRepository.findById(studentA.getStudentId()).orElseThrow();
-        assertEquals(100.0, updatedStudentA.getBalance());
+        assertEquals(Money.of("100.00"), updatedStudentA.getBalance());
 
         // Check payment record
         List<Payment> allPayments = paymentRepository.findAll();
@@ -109,11 +223,14 @@ public class PaymentServiceIntegrationTest {
     @Test
     @DisplayName("Failed payment when parent not associated with student")
     void testFail_NotAssociated() {
-        double paymentAmount = 50.0;
+        long paymentAmount = Money.of("50.00");
         // Parent A is not associated with Student B
         assertThrows(IllegalArgumentException.class, () ->
                 paymentService.processPayment(parentA.getId(), studentB.getStudentId(), paymentAmount));
 
+        // Failure records are written behind; wait for them
+        paymentLogService.flush();
+
         // Check payment logs
         List<Payment> allPayments = paymentRepository.findAll();
         assertEquals(1, allPayments.size());
@@ -127,22 +244,20 @@ public class PaymentServiceIntegrationTest {
     @Test
     @DisplayName("Successful payment for shared student - cost split")
     void testProcessPayment_SharedStudent_Success() {
-        double paymentAmount = 100.0;
+        long paymentAmount = Money.of("100.00");
         paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), paymentAmount);
 
         // Each parent's balance should be deducted half of adjusted amount
         Parent updatedA = parentRepository.findById(parentA.getId()).orElseThrow();
         Parent updatedB = parentRepository.findById(parentB.getId()).orElseThrow();
 
-        double adjusted = paymentAmount * 1.05;  // 105
-        double half = adjusted / 2;              // 52.5
-
-        assertEquals(500.0 - half, updatedA.getBalance(), 0.001);
-        assertEquals(500.0 - half, updatedB.getBalance(), 0.001);
+        // 100 * 1.05 = 105, 52.5 each
+        assertEquals(Money.of("447.50"), updatedA.getBalance());
+        assertEquals(Money.of("447.50"), updatedB.getBalance());
 
         // Student balance
         Student updatedShared = studentRepository.findById(sharedStudent.getStudentId()).orElseThrow();
-        assertEquals(100.0, updatedShared.getBalance());
+        assertEquals(Money.of("100.00"), updatedShared.getBalance());
 
         // Payment record
         List<Payment> allPayments = paymentRepository.findAll();
@@ -155,9 +270,10 @@ public class PaymentServiceIntegrationTest {
     @DisplayName("Failed payment - insufficient balance")
     void testFail_InsufficientBalance() {
         // Payment that is definitely more than 500 * 1.05
-        double paymentAmount = 600.0;
+        long paymentAmount = Money.of("600.00");
         assertThrows(IllegalArgumentException.class, () ->
                 paymentService.processPayment(parentA.getId(), studentA.getStudentId(), paymentAmount));
+        paymentLogService.flush();
 
         // Payment record
         List<Payment> allPayments = paymentRepository.findAll();
@@ -168,4 +284,782 @@ public class PaymentServiceIntegrationTest {
         // Description should mention "Payment failed: Insufficient balance"
         assertTrue(failedPayment.getDescription().contains("Insufficient balance"));
     }
+
+    @Test
+    @DisplayName("Failed payment - zero or negative amount, on the single, batch and async paths")
+    void testFail_NonPositiveAmount() {
+        for (long paymentAmount : new long[]{0L, Money.of("-10.00")}) {
+            PaymentException single = assertThrows(PaymentException.class, () ->
+                    paymentService.processPayment(parentA.getId(), studentA.getStudentId(), paymentAmount));
+            assertEquals(PaymentFailureReason.INVALID_AMOUNT, single.getReason());
+            assertEquals(PaymentFailureReason.INVALID_AMOUNT, assertThrows(PaymentException.class, () ->
+                    submissionService.submit(request(parentA.getId(), studentA.getStudentId(), paymentAmount), null)).getReason());
+        }
+        List<Payment> batch = paymentService.processBatch(List.of(
+                request(parentA.getId(), studentA.getStudentId(), 0L),
+                request(parentB.getId(), sharedStudent.getStudentId(), Money.of("-10.00"))));
+        assertTrue(batch.stream().allMatch(p -> p.getStatus() == TransactionStatus.FAILED));
+        paymentLogService.flush();
+
+        // Nothing moved; the two single attempts and the two batch items are recorded as FAILED
+        assertEquals(Money.of("500.00"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("500.00"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(0L, studentRepository.findById(studentA.getStudentId()).orElseThrow().getBalance());
+        assertEquals(0L, studentRepository.findById(sharedStudent.getStudentId()).orElseThrow().getBalance());
+        List<Payment> recorded = paymentRepository.findAll();
+        assertEquals(4, recorded.size());
+        assertTrue(recorded.stream().allMatch(p -> p.getStatus() == TransactionStatus.FAILED));
+    }
+
+    @Test
+    @DisplayName("Batch payments - grouped settlement with per-item results")
+    void testProcessBatch_MixedResults() {
+        List<Payment> results = paymentService.processBatch(List.of(
+                request(parentA.getId(), studentA.getStudentId(), Money.of("100.00")),       // 105 from A
+                request(parentB.getId(), sharedStudent.getStudentId(), Money.of("100.00")),  // 52.5 from A and B
+                request(parentA.getId(), studentB.getStudentId(), Money.of("10.00")),        // not associated
+                request(parentB.getId(), studentB.getStudentId(), Money.of("600.00"))        // insufficient balance
+        ));
+
+        assertEquals(4, results.size());
+        assertEquals(TransactionStatus.SUCCESS, results.get(0).getStatus());
+        assertEquals(TransactionStatus.SUCCESS, results.get(1).getStatus());
+        assertEquals(TransactionStatus.FAILED, results.get(2).getStatus());
+        assertTrue(results.get(2).getDescription().contains("not associated"));
+        assertEquals(TransactionStatus.FAILED, results.get(3).getStatus());
+        assertTrue(results.get(3).getDescription().contains("Insufficient balance"));
+
+        // Balances reflect only the successful items
+        assertEquals(Money.of("342.50"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("447.50"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("100.00"), studentRepository.findById(studentA.getStudentId()).orElseThrow().getBalance());
+        assertEquals(Money.of("100.00"), studentRepository.findById(sharedStudent.getStudentId()).orElseThrow().getBalance());
+        assertEquals(0L, studentRepository.findById(studentB.getStudentId()).orElseThrow().getBalance());
+
+        // Every item is recorded
+        assertEquals(4, paymentRepository.findAll().size());
+    }
+
+    @Test
+    @DisplayName("Failure records are written behind in batches and survive the rollback")
+    void testFailureAudit_WriteBehind() {
+        int failures = 1200;
+        for (int i = 0; i < failures; i++) {
+            assertThrows(IllegalArgumentException.class, () ->
+                    paymentService.processPayment(parentA.getId(), studentB.getStudentId(), Money.of("1.00")));
+        }
+        paymentLogService.flush();
+
+        List<Payment> allPayments = paymentRepository.findAll();
+        assertEquals(failures, allPayments.size());
+        assertTrue(allPayments.stream().allMatch(p -> p.getStatus() == TransactionStatus.FAILED));
+        assertEquals(0, paymentLogService.pending());
+        // Rolled-back transactions left balances untouched
+        assertEquals(Money.of("500.00"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("A record the database refuses is dropped alone; the rest of its batch is written")
+    void testFailureAudit_BadRecordDroppedAlone() {
+        double droppedBefore = meterRegistry.get("payment.audit.dropped").counter().count();
+        // Logged back to back, so the writer takes them as one batch
+        paymentLogService.logPayment(failedRecord("Payment failed: first"));
+        paymentLogService.logPayment(failedRecord("Payment failed: " + "x".repeat(300)));
+        paymentLogService.logPayment(failedRecord("Payment failed: third"));
+        paymentLogService.flush();
+
+        assertEquals(List.of("Payment failed: first", "Payment failed: third"),
+                paymentRepository.findAll().stream().map(Payment::getDescription).sorted().toList());
+        assertEquals(droppedBefore + 1, meterRegistry.get("payment.audit.dropped").counter().count());
+    }
+
+    @Test
+    @DisplayName("Payments are keyset-paginated, filterable and exportable as NDJSON")
+    void testPaymentListing_PaginationFilterAndExport() throws Exception {
+        List<PaymentRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            requests.add(request(parentA.getId(), studentA.getStudentId(), Money.of("1.00")));
+            requests.add(request(parentA.getId(), studentB.getStudentId(), Money.of("1.00")));  // fails: not associated
+        }
+        paymentService.processBatch(requests);
+
+        // Walk all SUCCESS payments two at a time
+        PaymentFilter successes = new PaymentFilter();
+        successes.setStatus(TransactionStatus.SUCCESS);
+        List<Payment> seen = new ArrayList<>();
+        Long cursor = null;
+        do {
+            PageResponse<Payment> page = paymentService.getPayments(successes, cursor, 2);
+            assertTrue(page.getItems().size() <= 2);
+            seen.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals(5, seen.size());
+        assertTrue(seen.stream().allMatch(p -> p.getStatus() == TransactionStatus.SUCCESS));
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i - 1).getId() < seen.get(i).getId());
+        }
+
+        // Filter by student
+        PaymentFilter byStudent = new PaymentFilter();
+        byStudent.setStudentId(studentB.getStudentId());
+        assertEquals(5, paymentService.getPayments(byStudent, null, 100).getItems().size());
+
+        // Export streams every matching row as one JSON line
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long exported = paymentService.exportPayments(new PaymentFilter(), out);
+        assertEquals(10, exported);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(10, lines.length);
+        assertTrue(lines[0].startsWith("{") && lines[0].contains("\"status\""));
+
+        // Students come back with their parents
+        PageResponse<Student> students = paymentService.getStudents(null, 2);
+        assertEquals(2, students.getItems().size());
+        assertNotNull(students.getNextCursor());
+        assertFalse(students.getItems().get(0).getParents().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Family graph cache serves association checks and is invalidated when parents change")
+    void testFamilyGraphCache_HitsAndInvalidation() {
+        long missesBefore = familyGraphCache.stats().getMisses();
+        paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"));
+        paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"));
+        assertEquals(missesBefore + 1, familyGraphCache.stats().getMisses());
+        assertTrue(familyGraphCache.isAssociated(parentA.getId(), studentA.getStudentId()));
+        assertFalse(familyGraphCache.isAssociated(parentB.getId(), studentA.getStudentId()));
+
+        // Re-linking Student A to Parent B through JPA evicts the stale entry
+        Student relinked = studentRepository.findAllWithParentsByStudentIdIn(List.of(studentA.getStudentId())).get(0);
+        relinked.setParents(new ArrayList<>(List.of(parentB)));
+        studentRepository.save(relinked);
+
+        assertTrue(familyGraphCache.isAssociated(parentB.getId(), studentA.getStudentId()));
+        assertThrows(IllegalArgumentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00")));
+        paymentLogService.flush();
+    }
+
+    @Test
+    @DisplayName("Family graph cache evicts in CLOCK order: a student read since the last sweep stays cached")
+    void testFamilyGraphCache_ClockEviction() {
+        int maxSize = familyGraphCache.stats().getMaxSize();
+        ReflectionTestUtils.setField(familyGraphCache, "maxSize", 2);
+        try {
+            familyGraphCache.invalidateAll();
+            long misses = familyGraphCache.stats().getMisses();
+            long evictions = familyGraphCache.stats().getEvictions();
+            familyGraphCache.guardiansOf(studentA.getStudentId());
+            familyGraphCache.guardiansOf(studentB.getStudentId());
+            // A is the oldest entry but is read again, so B is evicted when the shared student comes in
+            familyGraphCache.guardiansOf(studentA.getStudentId());
+            familyGraphCache.guardiansOf(sharedStudent.getStudentId());
+            assertEquals(misses + 3, familyGraphCache.stats().getMisses());
+            assertEquals(evictions + 1, familyGraphCache.stats().getEvictions());
+            assertEquals(2, familyGraphCache.stats().getSize());
+
+            familyGraphCache.guardiansOf(studentA.getStudentId());
+            assertEquals(misses + 3, familyGraphCache.stats().getMisses());
+            familyGraphCache.guardiansOf(studentB.getStudentId());
+            assertEquals(misses + 4, familyGraphCache.stats().getMisses());
+        } finally {
+            ReflectionTestUtils.setField(familyGraphCache, "maxSize", maxSize);
+            familyGraphCache.invalidateAll();
+        }
+    }
+
+    @Test
+    @DisplayName("Reporting aggregates follow single and batch payments")
+    void testLedgerAggregates_UpdatedOnCommit() {
+        LocalDate today = LocalDate.now();
+        long successBefore = dailyTotal(today, TransactionStatus.SUCCESS);
+        long failedBefore = dailyCount(today, TransactionStatus.FAILED);
+
+        paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("100.00"));   // 52.5 from A and B
+        paymentService.processBatch(List.of(
+                request(parentA.getId(), studentA.getStudentId(), Money.of("20.00")),                    // 21 from A
+                request(parentB.getId(), studentA.getStudentId(), Money.of("20.00"))));                  // not associated
+        assertThrows(IllegalArgumentException.class, () ->
+                paymentService.processPayment(parentB.getId(), studentB.getStudentId(), Money.of("1000.00")));
+        paymentLogService.flush();
+
+        assertEquals(Money.of("73.50"), ledgerAggregates.accountTotal(AccountType.PARENT, parentA.getId()).getTotalAmount());
+        assertEquals(2L, ledgerAggregates.accountTotal(AccountType.PARENT, parentA.getId()).getPaymentCount());
+        assertEquals(Money.of("52.50"), ledgerAggregates.accountTotal(AccountType.PARENT, parentB.getId()).getTotalAmount());
+        assertEquals(Money.of("100.00"), ledgerAggregates.accountTotal(AccountType.STUDENT, sharedStudent.getStudentId()).getTotalAmount());
+        assertEquals(Money.of("20.00"), ledgerAggregates.accountTotal(AccountType.STUDENT, studentA.getStudentId()).getTotalAmount());
+        assertEquals(0L, ledgerAggregates.accountTotal(AccountType.STUDENT, studentB.getStudentId()).getPaymentCount());
+
+        assertEquals(successBefore + Money.of("120.00"), dailyTotal(today, TransactionStatus.SUCCESS));
+        assertEquals(failedBefore + 2, dailyCount(today, TransactionStatus.FAILED));
+    }
+
+    @Test
+    @DisplayName("Payment metrics count results by reason and time every stage")
+    void testPaymentMetrics() {
+        double successBefore = requestCount("success", "none");
+        double notAssociatedBefore = requestCount("failed", "not_associated");
+        double insufficientBefore = requestCount("failed", "insufficient_balance");
+        long debitsBefore = meterRegistry.get("payment.stage").tag("stage", "parent_debit").timer().count();
+
+        paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("10.00"));
+        paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("10.00"));
+        assertThrows(IllegalArgumentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentB.getStudentId(), Money.of("10.00")));
+        paymentLogService.flush();
+        paymentService.processBatch(List.of(
+                request(parentB.getId(), studentB.getStudentId(), Money.of("10.00")),
+                request(parentB.getId(), studentB.getStudentId(), Money.of("10000.00"))));
+
+        assertEquals(successBefore + 3, requestCount("success", "none"));
+        assertEquals(notAssociatedBefore + 1, requestCount("failed", "not_associated"));
+        assertEquals(insufficientBefore + 1, requestCount("failed", "insufficient_balance"));
+        assertEquals(debitsBefore + 2, meterRegistry.get("payment.stage").tag("stage", "parent_debit").timer().count());
+        assertEquals(0.0, meterRegistry.get("payment.inflight").tag("operation", "payment").gauge().value());
+        assertTrue(meterRegistry.get("payment.audit.log").timer().count() >= 1);
+    }
+
+    @Test
+    @DisplayName("Payment log: one structured event per outcome, stack traces only for unexpected failures")
+    void testPaymentEvents_StructuredOutcomes() {
+        Logger eventsLogger = (Logger) LoggerFactory.getLogger(PaymentEvents.class);
+        ListAppender<ILoggingEvent> events = new ListAppender<>();
+        events.start();
+        eventsLogger.addAppender(events);
+        try {
+            Payment payment = paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("100.00"));
+            assertEquals(1, events.list.size());
+            ILoggingEvent succeeded = events.list.get(0);
+            assertEquals(Level.INFO, succeeded.getLevel());
+            assertEquals("payment succeeded", succeeded.getMessage());
+            Map<String, Object> pairs = keyValues(succeeded);
+            assertEquals(payment.getId(), pairs.get("paymentId"));
+            assertEquals(parentA.getId(), pairs.get("parentId"));
+            assertEquals(studentA.getStudentId(), pairs.get("studentId"));
+            assertEquals(Money.of("100.00"), pairs.get("amount"));
+            assertEquals(Money.of("105.00"), pairs.get("charged"));
+            assertNotNull(pairs.get("debits"));
+
+            // An expected rejection: WARN with the reason, no stack trace
+            events.list.clear();
+            assertThrows(PaymentException.class, () ->
+                    paymentService.processPayment(parentA.getId(), studentB.getStudentId(), Money.of("10.00")));
+            assertEquals(1, events.list.size());
+            ILoggingEvent rejected = events.list.get(0);
+            assertEquals(Level.WARN, rejected.getLevel());
+            assertEquals("payment rejected", rejected.getMessage());
+            assertEquals(PaymentFailureReason.NOT_ASSOCIATED, keyValues(rejected).get("reason"));
+            assertEquals(parentA.getId(), keyValues(rejected).get("parentId"));
+            assertEquals(studentB.getStudentId(), keyValues(rejected).get("studentId"));
+            assertNull(rejected.getThrowableProxy());
+
+            // A validation rejection is logged the same way
+            events.list.clear();
+            assertThrows(PaymentException.class, () ->
+                    paymentService.processPayment(parentA.getId(), studentA.getStudentId(), null));
+            assertEquals(1, events.list.size());
+            assertEquals(Level.WARN, events.list.get(0).getLevel());
+            assertEquals(PaymentFailureReason.INVALID_AMOUNT, keyValues(events.list.get(0)).get("reason"));
+            assertNull(events.list.get(0).getThrowableProxy());
+        } finally {
+            eventsLogger.detachAppender(events);
+        }
+    }
+
+    @Test
+    @DisplayName("A repeated Idempotency-Key returns the first payment and charges once")
+    void testIdempotencyKey_ChargesOnce() throws Exception {
+        long amount = Money.of("10.00");
+        Payment first = paymentService.processPayment(parentA.getId(), studentA.getStudentId(), amount, "order-1");
+        Payment retried = paymentService.processPayment(parentA.getId(), studentA.getStudentId(), amount, "order-1");
+        assertEquals(first.getId(), retried.getId());
+
+        // Same key for a different payment is rejected, not replayed
+        assertThrows(IllegalArgumentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("20.00"), "order-1"));
+        assertThrows(IllegalArgumentException.class, () ->
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), amount, "not a key"));
+
+        // Concurrent duplicates: exactly one of them pays
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<Payment>> duplicates = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            duplicates.add(pool.submit(() ->
+                    paymentService.processPayment(parentB.getId(), studentB.getStudentId(), amount, "order-2")));
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Future<Payment> duplicate : duplicates) {
+            ids.add(duplicate.get(1, TimeUnit.MINUTES).getId());
+        }
+        pool.shutdown();
+        assertEquals(1, ids.size());
+
+        // Without the in-memory index (as after a restart) the unique column still finds the payment
+        idempotencyIndex.clear();
+        assertEquals(first.getId(),
+                paymentService.processPayment(parentA.getId(), studentA.getStudentId(), amount, "order-1").getId());
+
+        assertEquals(Money.of("489.50"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("489.50"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(2, paymentRepository.findAll().size());
+    }
+
+    @Test
+    @DisplayName("Amounts are exact to the cent: half-even fee rounding, splits that add up, decimal JSON")
+    void testMoney_ExactCents() throws Exception {
+        // 10.01 * 1.05 = 10.5105 -> 10.51, split 5.26 (lower id) + 5.25
+        paymentService.processPayment(parentB.getId(), sharedStudent.getStudentId(), Money.of("10.01"));
+        assertEquals(Money.of("494.74"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("494.75"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("10.01"), studentRepository.findById(sharedStudent.getStudentId()).orElseThrow().getBalance());
+
+        // Ten payments of 0.10 add up to exactly 1.00 (0.105 -> 0.10 each, half-even)
+        for (int i = 0; i < 10; i++) {
+            paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("0.10"));
+        }
+        assertEquals(Money.of("1.00"), studentRepository.findById(studentA.getStudentId()).orElseThrow().getBalance());
+        assertEquals(Money.of("493.74"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+
+        // JSON carries decimal amounts; numbers and numeric strings are read without a double in between
+        assertEquals(Money.of("0.30"), objectMapper.readValue("{\"paymentAmount\": 0.3}", PaymentRequest.class).getPaymentAmount());
+        assertEquals(Money.of("12.34"), objectMapper.readValue("{\"paymentAmount\": \"12.345\"}", PaymentRequest.class).getPaymentAmount());
+        Payment payment = paymentRepository.findAll().get(0);
+        assertTrue(objectMapper.writeValueAsString(payment).contains("\"amount\":10.01"));
+    }
+
+    @Test
+    @DisplayName("Payment history per parent and per student - newest first, keyset pages, indexed")
+    void testPaymentHistory_KeysetByDate() {
+        // Inserted out of date order, with two payments sharing a timestamp
+        LocalDateTime base = LocalDateTime.of(2026, 1, 10, 9, 0);
+        long[] dayOffsets = {3, 1, 4, 1, 5, 0};
+        List<Payment> payments = new ArrayList<>();
+        for (int i = 0; i < dayOffsets.length; i++) {
+            Payment payment = new Payment();
+            payment.setParentId(parentA.getId());
+            payment.setStudentId(i % 2 == 0 ? studentA.getStudentId() : sharedStudent.getStudentId());
+            payment.setAmount(Money.ofMajor(i + 1));
+            payment.setStatus(TransactionStatus.SUCCESS);
+            payment.setPaymentDate(base.plusDays(dayOffsets[i]));
+            payments.add(paymentRepository.save(payment));
+        }
+        Payment other = new Payment();
+        other.setParentId(parentB.getId());
+        other.setStudentId(studentB.getStudentId());
+        other.setStatus(TransactionStatus.SUCCESS);
+        other.setPaymentDate(base.plusDays(9));
+        paymentRepository.save(other);
+
+        // Newest first; the tie on day 1 is broken by id, descending
+        List<Long> expected = List.of(payments.get(4).getId(), payments.get(2).getId(), payments.get(0).getId(),
+                payments.get(3).getId(), payments.get(1).getId(), payments.get(5).getId());
+        List<Long> seen = new ArrayList<>();
+        Long cursor = null;
+        int pages = 0;
+        do {
+            PageResponse<Payment> page = paymentService.getParentPayments(parentA.getId(), cursor, 2);
+            page.getItems().forEach(payment -> seen.add(payment.getId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+        assertEquals(expected, seen);
+        assertEquals(4, pages);
+
+        PageResponse<Payment> studentPage = paymentService.getStudentPayments(studentA.getStudentId(), null, 50);
+        assertEquals(List.of(payments.get(4).getId(), payments.get(2).getId(), payments.get(0).getId()),
+                studentPage.getItems().stream().map(Payment::getId).toList());
+        assertNull(studentPage.getNextCursor());
+        // A cursor from another account's history yields nothing
+        assertTrue(paymentService.getStudentPayments(studentA.getStudentId(), other.getId(), 50).getItems().isEmpty());
+
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT index_name FROM information_schema.indexes WHERE table_name = 'PAYMENT'", String.class);
+        assertTrue(indexes.stream().anyMatch(name -> name.equalsIgnoreCase("idx_payment_parent_date")));
+        assertTrue(indexes.stream().anyMatch(name -> name.equalsIgnoreCase("idx_payment_student_date")));
+    }
+
+    @Test
+    @DisplayName("Blended family - weighted split across four guardians, all or nothing")
+    void testProcessPayment_WeightedGuardians() {
+        Parent parentC = new Parent();
+        parentC.setName("Parent C");
+        parentC.setBalance(Money.of("50.00"));
+        parentRepository.save(parentC);
+        Parent parentD = new Parent();
+        parentD.setName("Parent D");
+        parentD.setBalance(Money.of("500.00"));
+        parentRepository.save(parentD);
+        Student blended = new Student();
+        blended.setStudentName("Blended Student");
+        blended.setParents(List.of(parentA, parentB, parentC, parentD));
+        studentRepository.save(blended);
+        guardianShareRepository.saveAll(List.of(
+                new GuardianShare(null, blended.getStudentId(), parentA.getId(), 3),
+                new GuardianShare(null, blended.getStudentId(), parentB.getId(), 3),
+                new GuardianShare(null, blended.getStudentId(), parentC.getId(), 2),
+                new GuardianShare(null, blended.getStudentId(), parentD.getId(), 2)));
+
+        // 105.00 split 3:3:2:2; C pays only its own share, so it need not cover the whole amount
+        paymentService.processPayment(parentC.getId(), blended.getStudentId(), Money.of("100.00"));
+
+        // D exempted (weight 0): 10.50 split 3:3:2 -> 3.94 + 3.94 + 2.62, leftover cents to the first parents
+        GuardianShare shareD = guardianShareRepository.findAll().stream()
+                .filter(share -> share.getParentId().equals(parentD.getId())).findFirst().orElseThrow();
+        shareD.setWeight(0);
+        guardianShareRepository.save(shareD);
+        paymentService.processPayment(parentA.getId(), blended.getStudentId(), Money.of("10.00"));
+
+        // C's 52.50 share of 210.00 exceeds its 26.38: nobody is charged
+        PaymentException ex = assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentA.getId(), blended.getStudentId(), Money.of("200.00")));
+        assertEquals(PaymentFailureReason.SHARED_PARENT_INSUFFICIENT_BALANCE, ex.getReason());
+        assertTrue(ex.getMessage().contains("ID=" + parentC.getId()));
+        paymentLogService.flush();
+
+        assertEquals(Money.of("464.56"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("464.56"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("26.38"), parentRepository.findById(parentC.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("479.00"), parentRepository.findById(parentD.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("110.00"), studentRepository.findById(blended.getStudentId()).orElseThrow().getBalance());
+
+        // The batch path splits the same way: 21.00 split 3:3:2
+        paymentService.processBatch(List.of(request(parentB.getId(), blended.getStudentId(), Money.of("20.00"))));
+        assertEquals(Money.of("456.69"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("21.13"), parentRepository.findById(parentC.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("Three guardians - the short parent is named even when the payer's own share was debited first")
+    void testProcessPayment_NonPayingParentShort() {
+        Parent payer = parentRepository.findById(parentA.getId()).orElseThrow();
+        payer.setBalance(Money.of("40.00"));
+        parentRepository.save(payer);
+        Parent parentC = new Parent();
+        parentC.setName("Parent C");
+        parentC.setBalance(Money.of("10.00"));
+        parentRepository.save(parentC);
+        Student threeParents = new Student();
+        threeParents.setStudentName("Three Parents");
+        threeParents.setBalance(0L);
+        threeParents.setParents(List.of(parentA, parentB, parentC));
+        studentRepository.save(threeParents);
+
+        // 105.00 split 35.00 each: A and B can pay theirs, C cannot
+        PaymentException ex = assertThrows(PaymentException.class, () ->
+                paymentService.processPayment(parentA.getId(), threeParents.getStudentId(), Money.of("100.00")));
+        assertEquals(PaymentFailureReason.SHARED_PARENT_INSUFFICIENT_BALANCE, ex.getReason());
+        assertEquals("Insufficient balance in one of the shared parents (ID=" + parentC.getId() + ").", ex.getMessage());
+
+        assertEquals(Money.of("40.00"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("500.00"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+        assertEquals(Money.of("10.00"), parentRepository.findById(parentC.getId()).orElseThrow().getBalance());
+        assertEquals(0L, studentRepository.findById(threeParents.getStudentId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("Fee rules: most specific rule covering today wins, otherwise the configured default")
+    void testFeeRules_PerSchoolTierAndTerm() {
+        LocalDate today = LocalDate.now();
+        setSchool(sharedStudent, "North", "premium");
+        setSchool(studentA, "North", "basic");
+        try {
+            feeRuleRepository.saveAll(List.of(
+                    new FeeRule(null, "North", "premium", null, null, 200, 0),
+                    // Higher priority but only from next term
+                    new FeeRule(null, "North", "premium", today.plusDays(1), null, 900, 1),
+                    new FeeRule(null, "North", null, today, today, 300, 0),
+                    new FeeRule(null, null, "premium", null, null, 700, 0),
+                    // Expired catch-all: students without a rule fall back to the 5% default
+                    new FeeRule(null, null, null, null, today.minusDays(1), 100, 0)
+            ));
+            assertEquals(5, feeRuleEngine.reload());
+
+            // North/premium 2%: 100.00 -> 102.00, 51.00 per shared parent
+            paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("100.00"));
+            // North, any tier 3%: 50.00 -> 51.50
+            paymentService.processPayment(parentA.getId(), studentA.getStudentId(), Money.of("50.00"));
+            // The batch path uses the same rates; no school, default 5%: 20.00 -> 21.00
+            paymentService.processBatch(List.of(request(parentB.getId(), studentB.getStudentId(), Money.of("20.00"))));
+
+            assertEquals(Money.of("397.50"), parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+            assertEquals(Money.of("428.00"), parentRepository.findById(parentB.getId()).orElseThrow().getBalance());
+            assertEquals(200, feeRuleEngine.rateBasisPoints("North", "premium", today.toEpochDay()));
+            assertEquals(900, feeRuleEngine.rateBasisPoints("North", "premium", today.plusDays(1).toEpochDay()));
+            assertEquals(700, feeRuleEngine.rateBasisPoints("South", "premium", today.toEpochDay()));
+            assertEquals(500, feeRuleEngine.rateBasisPoints("North", "basic", today.plusDays(1).toEpochDay()));
+
+            // A negative rate (a discount) is refused instead of falling through to a less specific rule
+            feeRuleRepository.save(new FeeRule(null, "North", "premium", null, null, -100, 5));
+            assertThrows(IllegalArgumentException.class, () -> feeRuleEngine.reload());
+            assertEquals(200, feeRuleEngine.rateBasisPoints("North", "premium", today.toEpochDay()));
+        } finally {
+            feeRuleRepository.deleteAll();
+            feeRuleEngine.reload();
+        }
+    }
+
+    @Test
+    @DisplayName("Credential cache: a repeated Basic login skips BCrypt and keeps ROLE_ADMIN; failures are never cached")
+    void testAuthentication_CachedCredentials() {
+        CachingAuthenticationProvider cache = assertInstanceOf(CachingAuthenticationProvider.class, authenticationProvider);
+        cache.invalidateAll();
+        long hits = cache.hits();
+        long misses = cache.misses();
+
+        Authentication first = authenticationProvider.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("admin", "adminPass"));
+        Authentication second = authenticationProvider.authenticate(
+                UsernamePasswordAuthenticationToken.unauthenticated("admin", "adminPass"));
+        assertEquals(misses + 1, cache.misses());
+        assertEquals(hits + 1, cache.hits());
+        assertEquals(1, cache.size());
+        assertTrue(second.isAuthenticated());
+        assertEquals(first.getName(), second.getName());
+        assertNull(second.getCredentials());
+        assertEquals(Set.of("ROLE_ADMIN"), second.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).collect(Collectors.toSet()));
+
+        // A wrong password goes through BCrypt every time and leaves the cache as it was
+        for (int i = 0; i < 2; i++) {
+            assertThrows(BadCredentialsException.class, () -> authenticationProvider.authenticate(
+                    UsernamePasswordAuthenticationToken.unauthenticated("admin", "wrongPass")));
+        }
+        assertEquals(misses + 3, cache.misses());
+        assertEquals(hits + 1, cache.hits());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    @DisplayName("Async submission: queued at once, settled by a worker, shed when the queue is full")
+    void testAsyncSubmission_BoundedQueue() throws Exception {
+        double shedBefore = meterRegistry.get("payment.async.submissions").tag("result", "shed").counter().count();
+
+        // Failures surface in the status with the synchronous path's reason
+        PaymentSubmission unknown = submissionService.submit(request(parentB.getId(), 999_999L, Money.of("1.00")), null);
+        PaymentSubmission failed = awaitFinal(unknown.getId());
+        assertEquals(SubmissionStatus.FAILED, failed.getStatus());
+        assertEquals(PaymentFailureReason.STUDENT_NOT_FOUND, failed.getReason());
+        paymentLogService.flush();
+        assertThrows(PaymentException.class, () -> submissionService.submit(request(parentA.getId(), null, Money.of("1.00")), null));
+
+        // Holding the accounts stalls the workers, so submissions pile up until the queue sheds one
+        List<PaymentSubmission> accepted = new ArrayList<>();
+        boolean shed = false;
+        try (AccountLockManager.Held ignored = lockManager.lock(
+                List.of(parentA.getId()), List.of(studentA.getStudentId()))) {
+            while (!shed && accepted.size() < 10_000) {
+                try {
+                    PaymentSubmission submission = submissionService.submit(
+                            request(parentA.getId(), studentA.getStudentId(), Money.of("0.20")), null);
+                    assertEquals(SubmissionStatus.QUEUED, submission.getStatus());
+                    accepted.add(submission);
+                } catch (RejectedExecutionException ex) {
+                    shed = true;
+                }
+            }
+            assertTrue(shed);
+            // The queue was full when it shed; a worker that only now polls takes one item and stalls
+            int queued = submissionService.queued();
+            assertTrue(queued >= ASYNC_QUEUE_CAPACITY - ASYNC_WORKERS && queued <= ASYNC_QUEUE_CAPACITY, "queued " + queued);
+        }
+        assertEquals(shedBefore + 1, meterRegistry.get("payment.async.submissions").tag("result", "shed").counter().count());
+
+        for (PaymentSubmission submission : accepted) {
+            PaymentSubmission done = awaitFinal(submission.getId());
+            assertEquals(SubmissionStatus.SUCCEEDED, done.getStatus(), done.getMessage());
+            assertNotNull(done.getPaymentId());
+        }
+        // 0.20 + 5% fee per accepted submission, none for the shed one
+        assertEquals(Money.of("500.00") - accepted.size() * Money.of("0.21"),
+                parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+    }
+
+    @Test
+    @DisplayName("Per-parent rate limit answers 429 before any database work")
+    @WithMockUser(roles = "ADMIN")
+    void testRateLimit_PerParent() {
+        double rejectedBefore = meterRegistry.get("payment.ratelimit.rejected").tag("scope", "parent").counter().count();
+
+        long started = System.nanoTime();
+        int accepted = 0;
+        int rejected = 0;
+        for (int i = 0; i < 4 * PARENT_BURST; i++) {
+            ResponseEntity<String> response = paymentController.processPayment(
+                    request(parentA.getId(), studentA.getStudentId(), Money.of("1.00")), null);
+            if (response.getStatusCode().value() == 200) {
+                accepted++;
+            } else {
+                assertEquals(HttpStatus.TOO_MANY_REQUESTS, response.getStatusCode());
+                assertNotNull(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+                rejected++;
+            }
+        }
+        // The burst, plus at most one token refilled per second the loop took
+        long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started);
+        assertTrue(accepted >= PARENT_BURST && accepted <= PARENT_BURST + elapsedSeconds + 1, "accepted " + accepted);
+
+        // Rejected requests never reached PaymentService: no FAILED record, no debit
+        paymentLogService.flush();
+        assertEquals(accepted, paymentRepository.count());
+        assertEquals(Money.of("500.00") - accepted * Money.of("1.05"),
+                parentRepository.findById(parentA.getId()).orElseThrow().getBalance());
+        assertEquals(rejectedBefore + rejected,
+                meterRegistry.get("payment.ratelimit.rejected").tag("scope", "parent").counter().count());
+
+        // Other families are not held back
+        assertEquals(HttpStatus.OK, paymentController.processPayment(
+                request(parentB.getId(), studentB.getStudentId(), Money.of("1.00")), null).getStatusCode());
+    }
+
+    @Test
+    @DisplayName("Batch items count against their parents' limits; oversized batches are refused outright")
+    @WithMockUser(roles = "ADMIN")
+    void testRateLimit_BatchPerParent() {
+        // Past payment.batch.max-size the request is refused before anything else
+        List<PaymentRequest> oversized = new ArrayList<>();
+        for (int i = 0; i <= MAX_BATCH_SIZE; i++) {
+            oversized.add(request((long) i, studentA.getStudentId(), Money.of("1.00")));
+        }
+        assertEquals(HttpStatus.BAD_REQUEST, paymentController.processBatch(oversized).getStatusCode());
+
+        // More items for one parent than its burst can never pass
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, paymentController.processBatch(Collections.nCopies(PARENT_BURST + 1,
+                request(parentA.getId(), studentA.getStudentId(), Money.of("1.00")))).getStatusCode());
+
+        // A whole burst in one batch, then the parent is out of tokens
+        assertEquals(HttpStatus.OK, paymentController.processBatch(Collections.nCopies(PARENT_BURST,
+                request(parentA.getId(), studentA.getStudentId(), Money.of("1.00")))).getStatusCode());
+        List<PaymentRequest> mixed = new ArrayList<>(Collections.nCopies(PARENT_BURST,
+                request(parentB.getId(), studentB.getStudentId(), Money.of("1.00"))));
+        // Two of A's tokens, so a token refilled while the test runs does not let it through
+        mixed.addAll(Collections.nCopies(2, request(parentA.getId(), studentA.getStudentId(), Money.of("1.00"))));
+        ResponseEntity<?> limited = paymentController.processBatch(mixed);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, limited.getStatusCode());
+        assertNotNull(limited.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+
+        // The refused batch gave B's tokens back
+        assertEquals(HttpStatus.OK, paymentController.processBatch(Collections.nCopies(PARENT_BURST,
+                request(parentB.getId(), studentB.getStudentId(), Money.of("1.00")))).getStatusCode());
+        paymentLogService.flush();
+        assertEquals(2L * PARENT_BURST, paymentRepository.count());
+    }
+
+    @Test
+    @DisplayName("Reconciliation verifies the ledger in full and from the watermark, and reports tampered accounts")
+    void testReconciliation_LedgerInvariants() {
+        // Totals left behind by other tests refer to payments setUp deleted
+        jdbcTemplate.update("DELETE FROM account_payment_total");
+        jdbcTemplate.update("DELETE FROM reconciliation_watermark");
+
+        Payment shared = paymentService.processPayment(parentA.getId(), sharedStudent.getStudentId(), Money.of("100.00"));
+        List<Payment> batch = paymentService.processBatch(List.of(
+                request(parentA.getId(), studentA.getStudentId(), Money.of("20.00")),
+                request(parentB.getId(), studentA.getStudentId(), Money.of("20.00"))));             // not associated
+        assertThrows(IllegalArgumentException.class, () ->
+                paymentService.processPayment(parentB.getId(), studentB.getStudentId(), Money.of("1000.00")));
+        paymentLogService.flush();
+        long fees = shared.getFee() + batch.get(0).getFee();
+        assertTrue(fees > 0);
+
+        ReconciliationReport full = reconciliationService.reconcile(true);
+        assertTrue(full.isFull());
+        assertEquals(0, full.getDiscrepancyCount(), () -> full.getDiscrepancies().toString());
+        assertEquals(2, full.getPaymentsChecked());
+        assertEquals(3, full.getStudentsChecked());
+        assertEquals(2, full.getParentsChecked());
+        assertEquals(Money.of("120.00"), full.getCreditedAmount());
+        assertEquals(fees, full.getFeeAmount());
+        assertEquals(full.getCreditedAmount() + full.getFeeAmount(), full.getDebitedAmount());
+
+        // Incremental: only the new payment, its student and that student's parent
+        Payment next = paymentService.processPayment(parentB.getId(), studentB.getStudentId(), Money.of("10.00"));
+        ReconciliationReport incremental = reconciliationService.reconcile(false);
+        assertFalse(incremental.isFull());
+        assertEquals(full.getToPaymentId(), incremental.getFromPaymentId());
+        assertEquals(next.getId(), incremental.getToPaymentId());
+        assertEquals(1, incremental.getPaymentsChecked());
+        assertEquals(1, incremental.getStudentsChecked());
+        assertEquals(1, incremental.getParentsChecked());
+        assertEquals(3, incremental.getSuccessfulPayments());
+        assertEquals(Money.of("130.00"), incremental.getCreditedAmount());
+        assertEquals(0, incremental.getDiscrepancyCount(), () -> incremental.getDiscrepancies().toString());
+
+        // A student total off by one cent and an overdrawn parent
+        jdbcTemplate.update("UPDATE account_payment_total SET total_amount = total_amount + 0.01 " +
+                "WHERE account_type = 'STUDENT' AND account_id = ?", studentA.getStudentId());
+        jdbcTemplate.update("UPDATE parent SET balance = -1 WHERE id = ?", parentB.getId());
+
+        // Nothing new since the watermark: only the ledger-wide student total notices
+        ReconciliationReport quiet = reconciliationService.reconcile(false);
+        assertEquals(0, quiet.getPaymentsChecked());
+        assertEquals(List.of(ReconciliationCheck.LEDGER_CREDITS),
+                quiet.getDiscrepancies().stream().map(d -> d.getCheck()).toList());
+
+        ReconciliationReport audit = reconciliationService.reconcile(true);
+        assertTrue(audit.getDiscrepancies().stream().anyMatch(d -> d.getCheck() == ReconciliationCheck.STUDENT_CREDITS
+                && studentA.getStudentId().equals(d.getAccountId())
+                && Money.fromDecimal(d.getActual()) - Money.fromDecimal(d.getExpected()) == 1));
+        assertTrue(audit.getDiscrepancies().stream().anyMatch(d -> d.getCheck() == ReconciliationCheck.PARENT_BALANCE
+                && parentB.getId().equals(d.getAccountId())));
+        assertEquals(3, audit.getDiscrepancyCount(), () -> audit.getDiscrepancies().toString());
+    }
+
+    private PaymentSubmission awaitFinal(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        PaymentSubmission submission = submissionService.find(id);
+        while (!submission.getStatus().isFinal() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            submission = submissionService.find(id);
+        }
+        return submission;
+    }
+
+    private Payment failedRecord(String description) {
+        Payment payment = new Payment();
+        payment.setParentId(parentA.getId());
+        payment.setStudentId(studentA.getStudentId());
+        payment.setAmount(Money.of("1.00"));
+        payment.setStatus(TransactionStatus.FAILED);
+        payment.setPaymentDate(LocalDateTime.now());
+        payment.setDescription(description);
+        return payment;
+    }
+
+    private void setSchool(Student student, String school, String tier) {
+        Student stored = studentRepository.findById(student.getStudentId()).orElseThrow();
+        stored.setSchool(school);
+        stored.setTier(tier);
+        studentRepository.save(stored);
+    }
+
+    private double requestCount(String result, String reason) {
+        return meterRegistry.get("payment.requests").tag("result", result).tag("reason", reason).counter().count();
+    }
+
+    private long dailyTotal(LocalDate day, TransactionStatus status) {
+        return ledgerAggregates.dailySummary(day, day).stream()
+                .filter(s -> s.getStatus() == status).mapToLong(DailyPaymentSummary::getTotalAmount).sum();
+    }
+
+    private long dailyCount(LocalDate day, TransactionStatus status) {
+        return ledgerAggregates.dailySummary(day, day).stream()
+                .filter(s -> s.getStatus() == status).mapToLong(DailyPaymentSummary::getPaymentCount).sum();
+    }
+
+    private static Map<String, Object> keyValues(ILoggingEvent event) {
+        Map<String, Object> pairs = new HashMap<>();
+        for (KeyValuePair pair : event.getKeyValuePairs()) {
+            pairs.put(pair.key, pair.value);
+        }
+        return pairs;
+    }
+
+    private static PaymentRequest request(Long parentId, Long studentId, Long amount) {
+        PaymentRequest request = new PaymentRequest();
+        request.setParentId(parentId);
+        request.setStudentId(studentId);
+        request.setPaymentAmount(amount);
+        return request;
+    }
 }
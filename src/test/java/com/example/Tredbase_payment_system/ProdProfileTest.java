@@ -0,0 +1,44 @@
+package com.example.Tredbase_payment_system;
+
+import com.example.Tredbase_payment_system.Entity.Payment;
+import com.example.Tredbase_payment_system.Enums.TransactionStatus;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Utils.Money;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("prod")
+class ProdProfileTest {
+
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Test
+    @DisplayName("Prod profile: lazy framework beans, eager application beans, payments work after the warm-up")
+    void testProdProfile() {
+        // Started at boot although nothing injects them before the first request
+        assertNotNull(beanFactory.getSingleton("paymentSubmissionService"));
+        assertNotNull(beanFactory.getSingleton("journalManager"));
+        assertNotNull(beanFactory.getSingleton("startupWarmup"));
+        assertFalse(beanFactory.getBeanDefinition("paymentService").isLazyInit());
+        // Framework beans no one asked for are still only definitions
+        assertTrue(Arrays.stream(beanFactory.getBeanDefinitionNames())
+                .anyMatch(name -> beanFactory.getBeanDefinition(name).isLazyInit() && !beanFactory.containsSingleton(name)));
+
+        // import.sql: Student 2 is Parent A's
+        Payment payment = paymentService.processPayment(1L, 2L, Money.of("10.00"));
+        assertEquals(TransactionStatus.SUCCESS, payment.getStatus());
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.Tredbase_payment_system;
+
+import com.example.Tredbase_payment_system.Dto.PageResponse;
+import com.example.Tredbase_payment_system.Dto.PaymentRequest;
+import com.example.Tredbase_payment_system.Entity.Parent;
+import com.example.Tredbase_payment_system.Entity.Student;
+import com.example.Tredbase_payment_system.Repository.GuardianShareRepository;
+import com.example.Tredbase_payment_system.Repository.ParentRepository;
+import com.example.Tredbase_payment_system.Repository.PaymentRepository;
+import com.example.Tredbase_payment_system.Repository.StudentRepository;
+import com.example.Tredbase_payment_system.Service.FamilyGraphCache;
+import com.example.Tredbase_payment_system.Service.PaymentService;
+import com.example.Tredbase_payment_system.Utils.Money;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/*
+  Guards the read paths against N+1 loading of Student.parents: the number of statements Hibernate
+  prepares must not grow with the number of students or parents involved.
+  Counts come from Hibernate statistics, so they cover JPA queries (where N+1 happens), not JdbcTemplate.
+ */
+@SpringBootTest
+public class QueryCountRegressionTest {
+
+    private static final int FEW = 3;
+    private static final int MANY = 40;
+
+    @Autowired
+    private PaymentService paymentService;
+
+    @Autowired
+    private FamilyGraphCache familyGraphCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ParentRepository parentRepository;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private PaymentRepository paymentRepository;
+
+    @Autowired
+    private GuardianShareRepository guardianShareRepository;
+
+    private Statistics statistics;
+    private List<Parent> parents;
+    private List<Student> students;
+
+    @BeforeEach
+    void setUp() {
+        paymentRepository.deleteAll();
+        guardianShareRepository.deleteAll();
+        studentRepository.deleteAll();
+        parentRepository.deleteAll();
+        familyGraphCache.invalidateAll();
+
+        // MANY families: two parents and one shared student each, plus one student of four guardians
+        parents = new ArrayList<>();
+        for (int i = 0; i < 2 * MANY + 2; i++) {
+            Parent parent = new Parent();
+            parent.setName("Parent " + i);
+            parent.setBalance(Money.of("1000.00"));
+            parents.add(parent);
+        }
+        parentRepository.saveAll(parents);
+        students = new ArrayList<>();
+        for (int i = 0; i < MANY; i++) {
+            Student student = new Student();
+            student.setStudentName("Student " + i);
+            student.setParents(List.of(parents.get(2 * i), parents.get(2 * i + 1)));
+            students.add(student);
+        }
+        Student blended = new Student();
+        blended.setStudentName("Blended Student");
+        blended.setParents(List.of(parents.get(0), parents.get(1), parents.get(2 * MANY), parents.get(2 * MANY + 1)));
+        students.add(blended);
+        studentRepository.saveAll(students);
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        statistics.setStatisticsEnabled(false);
+    }
+
+    @Test
+    @DisplayName("Student listing loads a page and its parents in two queries")
+    void testStudentListing_NoNPlusOne() throws Exception {
+        long few = statements(() -> serialize(paymentService.getStudents(null, FEW)));
+        long many = statements(() -> serialize(paymentService.getStudents(null, MANY)));
+
+        assertEquals(2, many);
+        assertEquals(few, many);
+        PageResponse<Student> page = paymentService.getStudents(null, MANY);
+        assertEquals(MANY, page.getItems().size());
+        assertEquals(2, page.getItems().get(0).getParents().size());
+    }
+
+    @Test
+    @DisplayName("Student export costs two queries per page, not one per student")
+    void testStudentExport_NoNPlusOne() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long count = statements(() -> paymentService.exportStudents(out));
+
+        // One page of ids and students, then the empty page that ends the export
+        assertEquals(3, count);
+        assertEquals(MANY + 1, out.toString().lines().count());
+    }
+
+    @Test
+    @DisplayName("A payment's queries do not depend on the number of guardians")
+    void testProcessPayment_FlatInFamilySize() {
+        Student shared = students.get(1);
+        Student blended = students.get(MANY);
+
+        long twoParents = statements(() -> paymentService.processPayment(
+                parents.get(2).getId(), shared.getStudentId(), Money.of("10.00")));
+        long fourParents = statements(() -> paymentService.processPayment(
+                parents.get(0).getId(), blended.getStudentId(), Money.of("10.00")));
+
+        assertEquals(twoParents, fourParents);
+        // Warm family graph: the association check no longer queries
+        long warm = statements(() -> paymentService.processPayment(
+                parents.get(0).getId(), blended.getStudentId(), Money.of("10.00")));
+        assertEquals(fourParents - 1, warm);
+    }
+
+    @Test
+    @DisplayName("A batch's queries do not depend on the number of students")
+    void testProcessBatch_FlatInBatchSize() {
+        long few = statements(() -> paymentService.processBatch(requests(0, FEW)));
+        long many = statements(() -> paymentService.processBatch(requests(FEW, MANY)));
+
+        assertEquals(few, many);
+    }
+
+    private List<PaymentRequest> requests(int from, int to) {
+        List<PaymentRequest> requests = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            PaymentRequest request = new PaymentRequest();
+            request.setParentId(parents.get(2 * i).getId());
+            request.setStudentId(students.get(i).getStudentId());
+            request.setPaymentAmount(Money.of("10.00"));
+            requests.add(request);
+        }
+        return requests;
+    }
+
+    private void serialize(Object value) {
+        try {
+            objectMapper.writeValueAsBytes(value);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // Statements Hibernate prepared while running work
+    private long statements(ThrowingRunnable work) {
+        statistics.clear();
+        try {
+            work.run();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        return statistics.getPrepareStatementCount();
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}